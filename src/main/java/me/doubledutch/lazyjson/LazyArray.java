@@ -1,9 +1,17 @@
 package me.doubledutch.lazyjson;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.math.BigInteger;
+import java.math.BigDecimal;
+
 /**
  * An array used to parse and inspect JSON data given in the form of a string.
  */
 public class LazyArray extends LazyElement{
+	// The number of elements a lookup may walk before an index is built
+	protected static final int CHILD_INDEX_THRESHOLD=16;
+
 	// Stored traversal location for fast in order traversals
 	private LazyNode selectToken=null;
 	private int selectInt=-1;
@@ -15,12 +23,82 @@ public class LazyArray extends LazyElement{
 	 * @throws LazyException if the string could not be parsed as a JSON array
 	 */
 	public LazyArray(String raw) throws LazyException{
-		LazyParser parser=new LazyParser(raw);
-		parser.tokenize();	
+		this(new LazyParser(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the JSON representation in the given
+	 * string using the given parser options.
+	 *
+	 * @param raw the input string
+	 * @param options the parser options to use, or null for the defaults
+	 * @throws LazyException if the string could not be parsed as a JSON array
+	 */
+	public LazyArray(String raw,LazyParserOptions options) throws LazyException{
+		this(new LazyParser(raw,options));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on UTF-8 encoded JSON data. The data is
+	 * parsed in place, so the given array must not be modified while this array
+	 * is in use.
+	 *
+	 * @param utf8 the input data
+	 * @param offset the index of the first byte of json data
+	 * @param len the number of bytes of json data
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(byte[] utf8,int offset,int len) throws LazyException{
+		this(new LazyParser(utf8,offset,len));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on UTF-8 encoded JSON data using the
+	 * given parser options.
+	 *
+	 * @param utf8 the input data
+	 * @param offset the index of the first byte of json data
+	 * @param len the number of bytes of json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(byte[] utf8,int offset,int len,LazyParserOptions options) throws LazyException{
+		this(new LazyParser(utf8,offset,len,options));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON data between
+	 * the position and limit of the given buffer. The buffer may be a heap
+	 * buffer, a direct buffer or a memory mapped file. The data is parsed in
+	 * place, so the buffer contents must not be modified while this array is
+	 * in use.
+	 *
+	 * @param buf the input data
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(ByteBuffer buf) throws LazyException{
+		this(new LazyParser(buf));
+	}
+
+	/**
+	 * Create a new Lazy JSON array based on the UTF-8 encoded JSON data between
+	 * the position and limit of the given buffer using the given parser options.
+	 *
+	 * @param buf the input data
+	 * @param options the parser options to use, or null for the defaults
+	 * @throws LazyException if the data could not be parsed as a JSON array
+	 */
+	public LazyArray(ByteBuffer buf,LazyParserOptions options) throws LazyException{
+		this(new LazyParser(buf,options));
+	}
+
+	private LazyArray(LazyParser parser) throws LazyException{
+		parser.tokenize();
 		if(parser.root.type!=LazyNode.ARRAY){
 			throw new LazyException("JSON Array must start with [",0);
 		}
 		root=parser.root;
+		root.expand();
 	}
 
 	public LazyArray() throws LazyException{
@@ -32,49 +110,17 @@ public class LazyArray extends LazyElement{
 	protected LazyArray(LazyNode root){
 		super(root);
 	}
+
+	protected void setRoot(LazyNode root) throws LazyException{
+		super.setRoot(root);
+		selectToken=null;
+		selectInt=-1;
+	}
 	/*
 	protected LazyArray(LazyNode root,char[] source){
 		super(root,source,null);
 	}*/
 
-	protected String serializeElementToString(){
-		StringBuilder buf=new StringBuilder();
-		buf.append("[");
-		LazyNode pointer=root.child;
-		boolean first=true;
-		while(pointer!=null){
-			if(first){
-				first=false;
-			}else{
-				buf.append(",");
-			}
-			if(pointer.type==LazyNode.OBJECT){
-				buf.append(new LazyObject(pointer).toString());
-			}else if(pointer.type==LazyNode.ARRAY){
-				buf.append(new LazyArray(pointer).toString());
-			}else if(pointer.type==LazyNode.VALUE_STRING){
-				buf.append("\"");
-				buf.append(pointer.getStringValue());
-				buf.append("\"");
-			}else if (pointer.type==LazyNode.VALUE_ESTRING){
-				buf.append("\"");
-				buf.append(pointer.getRawStringValue());
-				buf.append("\"");
-			}else if(pointer.type==LazyNode.VALUE_TRUE){
-				buf.append("true");
-			}else if(pointer.type==LazyNode.VALUE_FALSE){
-				buf.append("false");
-			}else if(pointer.type==LazyNode.VALUE_NULL){
-				buf.append("null");
-			}else{
-				buf.append(pointer.getStringValue());
-			}
-			pointer=pointer.next;
-		}
-		buf.append("]");
-		return buf.toString();
-	}
-
 	/**
 	 * Returns the type of this element.
 	 *
@@ -122,19 +168,7 @@ public class LazyArray extends LazyElement{
 	 * @throws LazyException if the requested index did not exist
 	 */
 	public LazyType getType(int index) throws LazyException{
-		LazyNode token=getValueToken(index);
-		switch(token.type){
-			case LazyNode.OBJECT: return LazyType.OBJECT;
-			case LazyNode.ARRAY: return LazyType.ARRAY;
-			case LazyNode.VALUE_TRUE: return LazyType.BOOLEAN;
-			case LazyNode.VALUE_FALSE: return LazyType.BOOLEAN;
-			case LazyNode.VALUE_NULL: return LazyType.NULL;
-			case LazyNode.VALUE_STRING: return LazyType.STRING;
-			case LazyNode.VALUE_ESTRING: return LazyType.STRING;
-			case LazyNode.VALUE_INTEGER: return LazyType.INTEGER;
-			case LazyNode.VALUE_FLOAT: return LazyType.FLOAT;
-		}
-		return null;
+		return getValueToken(index).getLazyType();
 	}
 
 	public Object get(int index) throws LazyException{
@@ -183,37 +217,80 @@ public class LazyArray extends LazyElement{
 	}
 
 	private void appendChild(LazyNode token) throws LazyException{
-		if(root.child==null){
-			root.child=token;
-			root.lastChild=token;
-		}else{
-			root.lastChild.next=token;
-			root.lastChild=token;
+		if(token.parent!=null && token.parent.type==LazyNode.ARRAY){
+			// Elements of an array can not be linked into a second one
+			token=token.copy();
 		}
-		root.dirty=true;
+		root.appendChild(token);
+		if(root.childIndex!=null){
+			if(root.childCount==root.childIndex.length){
+				root.childIndex=Arrays.copyOf(root.childIndex,root.childCount*2+1);
+			}
+			root.childIndex[root.childCount++]=token;
+		}
+		root.markModified();
 		selectToken=null;
 		selectInt=-1;
 	}
 
 	private void insertChild(int index,LazyNode token) throws LazyException{
-		root.dirty=true;
-		if(index==0){
-			token.next=root.child;
-			root.child=token;
-			return;
-		}
-		int current=1;
-		LazyNode pointer=root.child;
-		if(pointer==null)throw new LazyException("Trying to put at index "+index+" on an empty LazyArray");
-		while(current<index){
-			current++;
-			pointer=pointer.next;
-			if(pointer==null)throw new LazyException("Index out of bounds "+index);
-		}
-		token.next=pointer.next;
-		pointer.next=token;
 		selectToken=null;
 		selectInt=-1;
+		if(index<0)throw new LazyException("Array index can not be negative");
+		LazyNode pointer=null;
+		if(index>0){
+			if(root.childIndex!=null){
+				if(root.child==null)throw new LazyException("Trying to put at index "+index+" on an empty LazyArray");
+				if(index>root.childCount)throw new LazyException("Index out of bounds "+index);
+				pointer=root.childIndex[index-1];
+			}else{
+				int current=1;
+				pointer=root.child;
+				if(pointer==null)throw new LazyException("Trying to put at index "+index+" on an empty LazyArray");
+				while(current<index){
+					current++;
+					pointer=pointer.next;
+					if(pointer==null)throw new LazyException("Index out of bounds "+index);
+				}
+			}
+		}
+		if(token.parent!=null && token.parent.type==LazyNode.ARRAY){
+			// Elements of an array can not be linked into a second one
+			token=token.copy();
+		}
+		root.insertChild(pointer,token);
+		if(root.childIndex!=null){
+			LazyNode[] children=root.childIndex;
+			if(root.childCount==children.length){
+				children=Arrays.copyOf(children,root.childCount*2+1);
+			}
+			System.arraycopy(children,index,children,index+1,root.childCount-index);
+			children[index]=token;
+			root.childIndex=children;
+			root.childCount++;
+		}
+		root.markModified();
+	}
+
+	/**
+	 * Build an index of all elements of an expanded array token for constant
+	 * time access by index. The index is published only once it is complete,
+	 * so threads reading the same array never see a partial one.
+	 *
+	 * @param array the array token
+	 * @return the new index, holding exactly all elements
+	 */
+	protected static LazyNode[] buildChildIndex(LazyNode array){
+		int count=array.getChildCount();
+		LazyNode[] children=new LazyNode[count];
+		LazyNode pointer=array.child;
+		for(int i=0;i<count;i++){
+			children[i]=pointer;
+			pointer=pointer.next;
+		}
+		array.childCount=count;
+		array.childIndex=children;
+		return children;
 	}
 
 	public LazyArray put(String value) throws LazyException{
@@ -406,20 +483,15 @@ public class LazyArray extends LazyElement{
 		Object obj=opt(index); // TODO: should this be get instead of opt?
 		LazyNode token=getOptionalValueToken(index);
 		if(token!=null){
-			// System.out.println("found the token!");
-			LazyNode pointer=this.root.child;
-			if(pointer==token){
-				// System.out.println("yes, it was the first");
-				root.child=token.next;
-			}else{
-				while(pointer!=null){
-					if(pointer.next==token){
-						pointer.next=token.next;
-					}
-					pointer=pointer.next;
-				}
+			if(root.childIndex!=null){
+				root.childCount--;
+				System.arraycopy(root.childIndex,index+1,root.childIndex,index,root.childCount-index);
+				root.childIndex[root.childCount]=null;
 			}
-			root.dirty=true;
+			root.removeChild(token);
+			root.markModified();
+			root.discard(token);
+			root.compactIfWasteful();
 		}
 		selectToken=null;
 		selectInt=-1;
@@ -578,6 +650,51 @@ public class LazyArray extends LazyElement{
 		return token.getStringValue();
 	}
 
+	/**
+	 * Returns the string value stored at the given index as a sequence of
+	 * characters. If the value has no escaped characters and was parsed from
+	 * a character source, the characters are not copied. The returned
+	 * sequence is only valid until the source is reused.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the requested characters or null for a null value
+	 * @throws LazyException if the index is out of bounds
+	 */
+	public CharSequence getCharSequence(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		return token.getCharSequenceValue();
+	}
+
+	/**
+	 * Returns true if the value stored at the given index is equal to the
+	 * given string. No string is created for the value unless it contains
+	 * escaped characters.
+	 *
+	 * @param index the location of the value in this array
+	 * @param value the string to compare with, or null to check for a null value
+	 * @return true if the value equals the string, false otherwise or if there is no such value
+	 */
+	public boolean stringEquals(int index,String value){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return false;
+		return token.valueEquals(value);
+	}
+
+	/**
+	 * Returns true if the value stored at the given index starts with the
+	 * given prefix. No string is created for the value unless it contains
+	 * escaped characters.
+	 *
+	 * @param index the location of the value in this array
+	 * @param prefix the prefix to look for
+	 * @return true if the value starts with the prefix, false otherwise or if there is no such value
+	 */
+	public boolean startsWith(int index,String prefix){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return false;
+		return token.valueStartsWith(prefix);
+	}
+
 	/**
 	 * Returns the int value stored at the given index.
 	 *
@@ -701,6 +818,84 @@ public class LazyArray extends LazyElement{
 		return token.getDoubleValue();
 	}
 
+	/**
+	 * Returns the BigInteger value stored at the given index.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the value if it could be parsed as a number
+	 * @throws LazyException if the index is out of bounds or the value is not a number
+	 */
+	public BigInteger getBigInteger(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the BigInteger value stored at the given index or null if there was no such value.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the value if it could be parsed as a number or null if there was no such value
+	 */
+	public BigInteger optBigInteger(int index){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the BigInteger value stored at the given index or the default value if there was no such value.
+	 *
+	 * @param index the location of the value in this array
+	 * @param defaultValue the default value
+	 * @return the value if it could be parsed as a number or the default value if there was no such value
+	 */
+	public BigInteger optBigInteger(int index,BigInteger defaultValue){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the BigDecimal value stored at the given index.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the value if it could be parsed as a number
+	 * @throws LazyException if the index is out of bounds or the value is not a number
+	 */
+	public BigDecimal getBigDecimal(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		return token.getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the BigDecimal value stored at the given index or null if there was no such value.
+	 *
+	 * @param index the location of the value in this array
+	 * @return the value if it could be parsed as a number or null if there was no such value
+	 */
+	public BigDecimal optBigDecimal(int index){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return null;
+		if(token.type==LazyNode.VALUE_NULL)return null;
+		return token.getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the BigDecimal value stored at the given index or the default value if there was no such value.
+	 *
+	 * @param index the location of the value in this array
+	 * @param defaultValue the default value
+	 * @return the value if it could be parsed as a number or the default value if there was no such value
+	 */
+	public BigDecimal optBigDecimal(int index,BigDecimal defaultValue){
+		LazyNode token=getOptionalValueToken(index);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigDecimalValue();
+	}
+
 	/**
 	 * Returns true if the value stored at the given index is null.
 	 *
@@ -724,6 +919,9 @@ public class LazyArray extends LazyElement{
 	 * for the most common case, we maintain a traversal index and pointer into
 	 * the children - meaning that if you traverse the array from the beginning
 	 * the complexity will be O(1) for each access request instead.
+	 * Any other access that would have to walk more than
+	 * CHILD_INDEX_THRESHOLD children builds an index of all children on the
+	 * array token, after which every access is O(1).
 	 *
 	 * @param index the location of the desired value
 	 * @return the child for the given index
@@ -731,6 +929,13 @@ public class LazyArray extends LazyElement{
 	 */
 	private LazyNode getValueToken(int index) throws LazyException{
 		if(index<0)throw new LazyException("Array undex can not be negative");
+		LazyNode[] children=root.childIndex;
+		if(children!=null){
+			if(index<root.childCount){
+				return children[index];
+			}
+			throw new LazyException("Array index out of bounds "+index);
+		}
 		int num=0;
 		LazyNode child=root.child;
 		// If the value we are looking for is past our previous traversal point
@@ -739,6 +944,14 @@ public class LazyArray extends LazyElement{
 			num=selectInt;
 			child=selectToken;
 		}
+		// Anything but short forward steps gets an index instead
+		if(index-num>CHILD_INDEX_THRESHOLD){
+			children=buildChildIndex(root);
+			if(index<children.length){
+				return children[index];
+			}
+			throw new LazyException("Array index out of bounds "+index);
+		}
 		while(child!=null){
 			if(num==index){
 				// Store the traversal point and return the current token
@@ -762,6 +975,9 @@ public class LazyArray extends LazyElement{
 	 * for the most common case, we maintain a traversal index and pointer into
 	 * the children - meaning that if you traverse the array from the beginning
 	 * the complexity will be O(1) for each access request instead.
+	 * Any other access that would have to walk more than
+	 * CHILD_INDEX_THRESHOLD children builds an index of all children on the
+	 * array token, after which every access is O(1).
 	 *
 	 * @param index the location of the desired value
 	 * @return the child for the given index or null if the index does not exist
@@ -769,6 +985,13 @@ public class LazyArray extends LazyElement{
 	 */
 	private LazyNode getOptionalValueToken(int index) throws LazyException{
 		if(index<0)throw new LazyException("Array undex can not be negative");
+		LazyNode[] children=root.childIndex;
+		if(children!=null){
+			if(index<root.childCount){
+				return children[index];
+			}
+			return null;
+		}
 		int num=0;
 		LazyNode child=root.child;
 		// If the value we are looking for is past our previous traversal point
@@ -777,6 +1000,14 @@ public class LazyArray extends LazyElement{
 			num=selectInt;
 			child=selectToken;
 		}
+		// Anything but short forward steps gets an index instead
+		if(index-num>CHILD_INDEX_THRESHOLD){
+			children=buildChildIndex(root);
+			if(index<children.length){
+				return children[index];
+			}
+			return null;
+		}
 		while(child!=null){
 			if(num==index){
 				// Store the traversal point and return the current token
@@ -0,0 +1,320 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * Walks the values of an object or array in place, without creating a
+ * LazyObject or LazyArray for every nested value or a String for every
+ * field name. The cursor starts before the first value of the element it
+ * was created for, and next moves it forward one value at a time. Nested
+ * objects and arrays are walked by calling enter on them, and exit returns
+ * to the container they were found in.
+ *
+ * <pre>
+ * LazyCursor cursor=new LazyCursor(array);
+ * while(cursor.next()){
+ *     cursor.enter();
+ *     while(cursor.next()){
+ *         if(cursor.keyEquals(AMOUNT)){
+ *             total+=cursor.getLong();
+ *         }
+ *     }
+ *     cursor.exit();
+ * }
+ * </pre>
+ *
+ * Only the methods that explicitly return a String or element allocate. A
+ * cursor can be moved to another element with reset, and must not be used
+ * while the element it walks is being modified.
+ */
+public final class LazyCursor{
+	private static final int STACK_SIZE=16;
+
+	// The object or array whose values are walked, and the current child of
+	// it: a field token for objects, the value itself for arrays
+	private LazyNode container;
+	private LazyNode current;
+	private boolean started;
+
+	// The containers and positions entered from
+	private LazyNode[] containers=new LazyNode[STACK_SIZE];
+	private LazyNode[] positions=new LazyNode[STACK_SIZE];
+	private int depth=0;
+
+	/**
+	 * Create a cursor positioned before the first value of the given element.
+	 *
+	 * @param element the object or array to walk
+	 */
+	public LazyCursor(LazyElement element){
+		reset(element);
+	}
+
+	/**
+	 * Move this cursor to before the first value of another element,
+	 * reusing the memory allocated for it.
+	 *
+	 * @param element the object or array to walk
+	 * @return this cursor
+	 */
+	public LazyCursor reset(LazyElement element){
+		while(depth>0){
+			depth--;
+			containers[depth]=null;
+			positions[depth]=null;
+		}
+		container=element.root;
+		current=null;
+		started=false;
+		return this;
+	}
+
+	/**
+	 * Move to the next value of the current object or array.
+	 *
+	 * @return false if there are no more values
+	 */
+	public boolean next(){
+		if(!started){
+			current=container.child;
+			started=true;
+		}else if(current!=null){
+			current=current.next;
+		}
+		return current!=null;
+	}
+
+	// The value at the current position
+	private LazyNode value() throws LazyException{
+		if(current==null){
+			throw new LazyException("The cursor is not positioned on a value");
+		}
+		if(container.type==LazyNode.OBJECT){
+			return current.child;
+		}
+		return current;
+	}
+
+	/**
+	 * Start walking the values of the object or array at the current
+	 * position. The cursor is placed before its first value.
+	 *
+	 * @throws LazyException if the current value is not an object or array
+	 */
+	public void enter() throws LazyException{
+		LazyNode token=value();
+		if(!(token.type==LazyNode.OBJECT || token.type==LazyNode.ARRAY)){
+			throw new LazyException("Requested value is not an object or array",token);
+		}
+		token.expand();
+		if(depth==containers.length){
+			LazyNode[] newContainers=new LazyNode[depth*2];
+			System.arraycopy(containers,0,newContainers,0,depth);
+			containers=newContainers;
+			LazyNode[] newPositions=new LazyNode[depth*2];
+			System.arraycopy(positions,0,newPositions,0,depth);
+			positions=newPositions;
+		}
+		containers[depth]=container;
+		positions[depth]=current;
+		depth++;
+		container=token;
+		current=null;
+		started=false;
+	}
+
+	/**
+	 * Stop walking the current object or array and return to the position
+	 * it was entered from.
+	 *
+	 * @throws LazyException if the cursor is at the element it was created for
+	 */
+	public void exit() throws LazyException{
+		if(depth==0){
+			throw new LazyException("The cursor is at the top level");
+		}
+		depth--;
+		container=containers[depth];
+		current=positions[depth];
+		containers[depth]=null;
+		positions[depth]=null;
+		started=true;
+	}
+
+	/**
+	 * Returns the number of objects and arrays entered.
+	 *
+	 * @return the nesting depth of the cursor
+	 */
+	public int getDepth(){
+		return depth;
+	}
+
+	/**
+	 * Returns true if the values being walked are the fields of an object.
+	 *
+	 * @return true inside an object, false inside an array
+	 */
+	public boolean isObject(){
+		return container.type==LazyNode.OBJECT;
+	}
+
+	/**
+	 * Returns true if the field at the current position has the given name.
+	 *
+	 * @param key the name to compare with
+	 * @return true if the names match, false otherwise or inside an array
+	 */
+	public boolean keyEquals(String key){
+		if(current==null || container.type!=LazyNode.OBJECT){
+			return false;
+		}
+		return LazyObject.keyMatch(key,current);
+	}
+
+	/**
+	 * Returns true if the field at the current position has the name of the
+	 * given key.
+	 *
+	 * @param key the prepared name to compare with
+	 * @return true if the names match, false otherwise or inside an array
+	 */
+	public boolean keyEquals(LazyKey key){
+		if(current==null || container.type!=LazyNode.OBJECT){
+			return false;
+		}
+		return LazyObject.keyMatch(key,current);
+	}
+
+	/**
+	 * Returns the name of the field at the current position. This creates a
+	 * new String, use keyEquals to look for specific fields.
+	 *
+	 * @return the field name or null inside an array
+	 * @throws LazyException if the cursor is not positioned on a value
+	 */
+	public String getKey() throws LazyException{
+		value();
+		if(container.type!=LazyNode.OBJECT){
+			return null;
+		}
+		return current.getStringValue();
+	}
+
+	/**
+	 * Returns the type of the value at the current position.
+	 *
+	 * @return the type of the value
+	 * @throws LazyException if the cursor is not positioned on a value
+	 */
+	public LazyType getType() throws LazyException{
+		return value().getLazyType();
+	}
+
+	/**
+	 * Returns true if the value at the current position is null.
+	 *
+	 * @return true if the value is null
+	 * @throws LazyException if the cursor is not positioned on a value
+	 */
+	public boolean isNull() throws LazyException{
+		return value().type==LazyNode.VALUE_NULL;
+	}
+
+	/**
+	 * Returns the string value at the current position.
+	 *
+	 * @return the string value
+	 * @throws LazyException if the cursor is not positioned on a value
+	 */
+	public String getString() throws LazyException{
+		return value().getStringValue();
+	}
+
+	/**
+	 * Returns true if the value at the current position equals the given
+	 * string, without creating a string for the value.
+	 *
+	 * @param value the string to compare with
+	 * @return true if the value equals the string
+	 * @throws LazyException if the cursor is not positioned on a value
+	 */
+	public boolean stringEquals(String value) throws LazyException{
+		return value().valueEquals(value);
+	}
+
+	/**
+	 * Returns true if the value at the current position starts with the
+	 * given prefix, without creating a string for the value.
+	 *
+	 * @param prefix the prefix to look for
+	 * @return true if the value starts with the prefix
+	 * @throws LazyException if the cursor is not positioned on a value
+	 */
+	public boolean startsWith(String prefix) throws LazyException{
+		return value().valueStartsWith(prefix);
+	}
+
+	/**
+	 * Returns the integer value at the current position.
+	 *
+	 * @return the integer value
+	 * @throws LazyException if the value is not an integer
+	 */
+	public int getInt() throws LazyException{
+		return value().getIntValue();
+	}
+
+	/**
+	 * Returns the long value at the current position.
+	 *
+	 * @return the long value
+	 * @throws LazyException if the value is not an integer
+	 */
+	public long getLong() throws LazyException{
+		return value().getLongValue();
+	}
+
+	/**
+	 * Returns the double value at the current position.
+	 *
+	 * @return the double value
+	 * @throws LazyException if the value is not a number
+	 */
+	public double getDouble() throws LazyException{
+		return value().getDoubleValue();
+	}
+
+	/**
+	 * Returns the boolean value at the current position. Strings holding true
+	 * or false are accepted, just like for LazyObject.
+	 *
+	 * @return the boolean value
+	 * @throws LazyException if the value is not a boolean
+	 */
+	public boolean getBoolean() throws LazyException{
+		return value().getBooleanValue();
+	}
+
+	/**
+	 * Returns the object at the current position as a new LazyObject.
+	 *
+	 * @return the object value
+	 * @throws LazyException if the value is not an object
+	 */
+	public LazyObject getJSONObject() throws LazyException{
+		LazyNode token=value();
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		return new LazyObject(token);
+	}
+
+	/**
+	 * Returns the array at the current position as a new LazyArray.
+	 *
+	 * @return the array value
+	 * @throws LazyException if the value is not an array
+	 */
+	public LazyArray getJSONArray() throws LazyException{
+		LazyNode token=value();
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		return new LazyArray(token);
+	}
+}
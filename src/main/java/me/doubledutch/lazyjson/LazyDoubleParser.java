@@ -0,0 +1,216 @@
+package me.doubledutch.lazyjson;
+
+import java.math.BigInteger;
+
+/**
+ * Converts the characters of a number token to a double without creating a
+ * String. The result is correctly rounded, just like Double.parseDouble.
+ *
+ * Numbers with at most 15 significant digits and a small exponent are
+ * converted with a single exact multiplication or division. Other numbers
+ * with up to 19 significant digits use the algorithm by Daniel Lemire
+ * (Number Parsing at a Gigabyte per Second, 2021), which multiplies the
+ * digits with a 128 bit approximation of the power of ten. In the rare cases
+ * where neither gives a result that is known to be correctly rounded, NaN is
+ * returned and the caller must fall back to Double.parseDouble.
+ */
+final class LazyDoubleParser{
+	private static final int SMALLEST_POWER=-342;
+	private static final int LARGEST_POWER=308;
+
+	// Powers of ten that are exactly representable as a double
+	private static final double[] POWERS={
+		1e0,1e1,1e2,1e3,1e4,1e5,1e6,1e7,1e8,1e9,1e10,1e11,
+		1e12,1e13,1e14,1e15,1e16,1e17,1e18,1e19,1e20,1e21,1e22
+	};
+
+	// Upper and lower 64 bits of 5^q for SMALLEST_POWER<=q<=LARGEST_POWER,
+	// normalized so the highest bit is set. Powers below zero are rounded
+	// up, the others truncated.
+	private static final long[] HIGH=new long[LARGEST_POWER-SMALLEST_POWER+1];
+	private static final long[] LOW=new long[LARGEST_POWER-SMALLEST_POWER+1];
+
+	static{
+		BigInteger five=BigInteger.valueOf(5);
+		BigInteger mask=BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for(int q=SMALLEST_POWER;q<=LARGEST_POWER;q++){
+			BigInteger value;
+			if(q<0){
+				BigInteger power=five.pow(-q);
+				int z=power.bitLength();
+				int b=q>=-27?z+127:2*z+128;
+				value=BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+			}else{
+				value=five.pow(q);
+			}
+			int shift=value.bitLength()-128;
+			value=shift>0?value.shiftRight(shift):value.shiftLeft(-shift);
+			HIGH[q-SMALLEST_POWER]=value.shiftRight(64).longValue();
+			LOW[q-SMALLEST_POWER]=value.and(mask).longValue();
+		}
+	}
+
+	private LazyDoubleParser(){
+
+	}
+
+	/**
+	 * Convert the characters of a token to a double.
+	 *
+	 * @param token the token holding the characters
+	 * @param start the index of the first character
+	 * @param end the index one past the last character
+	 * @return the value, or NaN if it must be found with Double.parseDouble
+	 */
+	protected static double parse(LazyNode token,int start,int end){
+		int i=start;
+		boolean negative=false;
+		if(i<end && token.charAt(i)=='-'){
+			negative=true;
+			i++;
+		}
+		long digits=0;
+		int count=0;
+		int exponent=0;
+		boolean found=false;
+		char c=0;
+		for(;i<end;i++){
+			c=token.charAt(i);
+			if(c<'0' || c>'9'){
+				break;
+			}
+			found=true;
+			if(count>0 || c!='0'){
+				if(count==19){
+					return Double.NaN;
+				}
+				digits=digits*10+(c-'0');
+				count++;
+			}
+		}
+		if(i<end && c=='.'){
+			for(i++;i<end;i++){
+				c=token.charAt(i);
+				if(c<'0' || c>'9'){
+					break;
+				}
+				found=true;
+				if(count>0 || c!='0'){
+					if(count==19){
+						return Double.NaN;
+					}
+					digits=digits*10+(c-'0');
+					count++;
+				}
+				exponent--;
+			}
+		}
+		if(!found){
+			return Double.NaN;
+		}
+		if(i<end && (c=='e' || c=='E')){
+			i++;
+			boolean negativeExponent=false;
+			if(i<end && (token.charAt(i)=='-' || token.charAt(i)=='+')){
+				negativeExponent=token.charAt(i)=='-';
+				i++;
+			}
+			if(i==end){
+				return Double.NaN;
+			}
+			int value=0;
+			for(;i<end;i++){
+				c=token.charAt(i);
+				if(c<'0' || c>'9'){
+					return Double.NaN;
+				}
+				if(value<100000){
+					value=value*10+(c-'0');
+				}
+			}
+			exponent+=negativeExponent?-value:value;
+		}
+		if(i<end){
+			return Double.NaN;
+		}
+		if(digits==0){
+			return negative?-0.0:0.0;
+		}
+		if(digits>0 && digits<=(1L<<53) && exponent>=-22 && exponent<=22){
+			double d=(double)digits;
+			if(exponent<0){
+				d=d/POWERS[-exponent];
+			}else{
+				d=d*POWERS[exponent];
+			}
+			return negative?-d:d;
+		}
+		return compute(digits,exponent,negative);
+	}
+
+	// True if a is less than b when both are read as unsigned numbers
+	private static boolean below(long a,long b){
+		return (a+Long.MIN_VALUE)<(b+Long.MIN_VALUE);
+	}
+
+	// The upper 64 bits of the unsigned 128 bit product of a and b
+	private static long multiplyHigh(long a,long b){
+		long a0=a & 0xFFFFFFFFL;
+		long a1=a>>>32;
+		long b0=b & 0xFFFFFFFFL;
+		long b1=b>>>32;
+		long p01=a0*b1;
+		long middle=a1*b0+((a0*b0)>>>32)+(p01 & 0xFFFFFFFFL);
+		return a1*b1+(middle>>>32)+(p01>>>32);
+	}
+
+	// Computes digits*10^exponent for a non zero number of digits
+	private static double compute(long digits,int exponent,boolean negative){
+		if(exponent<SMALLEST_POWER || exponent>LARGEST_POWER){
+			return Double.NaN;
+		}
+		int index=exponent-SMALLEST_POWER;
+		int lz=Long.numberOfLeadingZeros(digits);
+		digits<<=lz;
+		long factor=HIGH[index];
+		long upper=multiplyHigh(digits,factor);
+		long lower=digits*factor;
+		if((upper & 0x1FF)==0x1FF && below(lower+digits,lower)){
+			// The truncated product may be off in the bits that matter, so
+			// include the next 64 bits of the power
+			long factorLow=LOW[index];
+			long productLow=digits*factorLow;
+			long productMiddle=lower+multiplyHigh(digits,factorLow);
+			if(below(productMiddle,lower)){
+				upper++;
+			}
+			if(productMiddle+1==0 && (upper & 0x1FF)==0x1FF && below(productLow+digits,productLow)){
+				return Double.NaN;
+			}
+			lower=productMiddle;
+		}
+		long upperBit=upper>>>63;
+		long mantissa=upper>>>(upperBit+9);
+		lz+=(int)(1 ^ upperBit);
+		if(lower==0 && (upper & 0x1FF)==0 && (mantissa & 3)==1){
+			// Exactly halfway between two doubles
+			return Double.NaN;
+		}
+		mantissa+=mantissa & 1;
+		mantissa>>>=1;
+		if(mantissa>=(1L<<53)){
+			mantissa=1L<<52;
+			lz--;
+		}
+		mantissa&=~(1L<<52);
+		long realExponent=(((152170+65536)*(long)exponent)>>16)+1024+63-lz;
+		if(realExponent<1 || realExponent>2046){
+			return Double.NaN;
+		}
+		long bits=mantissa | (realExponent<<52);
+		if(negative){
+			bits|=1L<<63;
+		}
+		return Double.longBitsToDouble(bits);
+	}
+}
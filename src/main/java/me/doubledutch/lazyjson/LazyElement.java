@@ -1,17 +1,35 @@
 package me.doubledutch.lazyjson;
 
 import me.doubledutch.lazyjson.compressor.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.BufferOverflowException;
+import java.nio.channels.FileChannel;
 
+/**
+ * The common base of LazyObject and LazyArray.
+ *
+ * An element that is not being modified may be read from several threads at
+ * the same time. Reading a wide object indexes its fields and reading a long
+ * array indexes its elements, but these indexes are only published once fully
+ * built, so concurrent readers never see a partial one. A LazyArray instance
+ * also remembers the position of the last element read to speed up walking
+ * it in order, so each thread should read an array through its own instance,
+ * as returned by getJSONArray. Modifying an element while it is read by other
+ * threads, or from several threads at once, requires external
+ * synchronization. Elements parsed with the tape, deferred parsing or the
+ * value cache enabled change as they are read and must not be read from
+ * multiple threads at the same time.
+ */
 public abstract class LazyElement{
 	protected LazyNode root;
 	protected LazyElement parent;
 
-	// Cache value for length
-	private int length=-1;
-
 	protected LazyElement(LazyNode root){
+		root.expand();
 		this.root=root;
 	}
 
@@ -19,6 +37,14 @@ public abstract class LazyElement{
 
 	}
 
+	// Point this element at the root of another document, dropping all
+	// state cached for the previous one
+	protected void setRoot(LazyNode root) throws LazyException{
+		root.expand();
+		this.root=root;
+		parent=null;
+	}
+
 	protected LazyNode appendAndSetDirtyString(byte type,String value) throws LazyException{
 		StringBuilder dirtyBuf=root.getDirtyBuf();
 		LazyNode child=new LazyNode(type,dirtyBuf.length());
@@ -50,20 +76,164 @@ public abstract class LazyElement{
 	 * @throws LazyException if the string could not be parsed
 	 */
 	public static LazyElement parse(String str) throws LazyException{
+		return parse(str,null);
+	}
+
+	/**
+	 * Parses a string using the given options and returns either a LazyObject
+	 * or LazyArray
+	 *
+	 * @param str the source json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the string could not be parsed
+	 */
+	public static LazyElement parse(String str,LazyParserOptions options) throws LazyException{
 		int index=0;
 		while(index<str.length()){
 			char ch=str.charAt(index);
 			if(ch=='['){
-				return new LazyArray(str);
+				return new LazyArray(str,options);
 			}
 			if(ch=='{'){
-				return new LazyObject(str);
+				return new LazyObject(str,options);
 			}
 			index++;
 		}
 		throw new LazyException("The given string is not a JSON object or array");
 	}
 
+	/**
+	 * Parses UTF-8 encoded data and returns either a LazyObject or LazyArray.
+	 * The data is parsed in place without being decoded to a string first.
+	 *
+	 * @param utf8 the source json data
+	 * @param offset the index of the first byte of json data
+	 * @param len the number of bytes of json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(byte[] utf8,int offset,int len) throws LazyException{
+		return parse(utf8,offset,len,null);
+	}
+
+	/**
+	 * Parses UTF-8 encoded data using the given options and returns either a
+	 * LazyObject or LazyArray.
+	 *
+	 * @param utf8 the source json data
+	 * @param offset the index of the first byte of json data
+	 * @param len the number of bytes of json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(byte[] utf8,int offset,int len,LazyParserOptions options) throws LazyException{
+		int index=offset;
+		while(index<offset+len){
+			byte ch=utf8[index];
+			if(ch=='['){
+				return new LazyArray(utf8,offset,len,options);
+			}
+			if(ch=='{'){
+				return new LazyObject(utf8,offset,len,options);
+			}
+			index++;
+		}
+		throw new LazyException("The given data is not a JSON object or array");
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of the
+	 * given buffer and returns either a LazyObject or LazyArray. The buffer
+	 * may be a heap buffer, a direct buffer or a memory mapped file - in all
+	 * cases the data is parsed in place. The buffer contents must not be
+	 * modified while the returned element is in use.
+	 *
+	 * @param buf the source json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(ByteBuffer buf) throws LazyException{
+		return parse(buf,null);
+	}
+
+	/**
+	 * Parses the UTF-8 encoded data between the position and limit of the
+	 * given buffer using the given options and returns either a LazyObject or
+	 * LazyArray.
+	 *
+	 * @param buf the source json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(ByteBuffer buf,LazyParserOptions options) throws LazyException{
+		int index=buf.position();
+		while(index<buf.limit()){
+			byte ch=buf.get(index);
+			if(ch=='['){
+				return new LazyArray(buf,options);
+			}
+			if(ch=='{'){
+				return new LazyObject(buf,options);
+			}
+			index++;
+		}
+		throw new LazyException("The given data is not a JSON object or array");
+	}
+
+	/**
+	 * Memory maps the given file and parses it in place. The JSON data is
+	 * never copied onto the heap, strings and numbers are read directly from
+	 * the mapped file when they are requested.
+	 *
+	 * @param file a file containing UTF-8 encoded json data
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws IOException if the file could not be mapped
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(File file) throws IOException,LazyException{
+		return parse(map(file),null);
+	}
+
+	/**
+	 * Memory maps the given file and parses it in place using the given
+	 * options.
+	 *
+	 * @param file a file containing UTF-8 encoded json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @return either a LazyObject or LazyArray instance
+	 * @throws IOException if the file could not be mapped
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public static LazyElement parse(File file,LazyParserOptions options) throws IOException,LazyException{
+		return parse(map(file),options);
+	}
+
+	/**
+	 * Memory maps the given file read only.
+	 *
+	 * @param file the file to map
+	 * @return a buffer holding the full contents of the file
+	 * @throws IOException if the file could not be mapped
+	 * @throws LazyException if the file is too large to be indexed
+	 */
+	protected static ByteBuffer map(File file) throws IOException,LazyException{
+		RandomAccessFile raf=new RandomAccessFile(file,"r");
+		try{
+			FileChannel channel=raf.getChannel();
+			long size=channel.size();
+			if(size>Integer.MAX_VALUE){
+				throw new LazyException("File too large to map, size is "+size+" bytes");
+			}
+			// The mapping stays valid after the channel has been closed
+			return channel.map(FileChannel.MapMode.READ_ONLY,0,size);
+		}finally{
+			raf.close();
+		}
+	}
+
 	protected static boolean shouldQuoteString(String str){
 		if(str==null)return false;
 		boolean found=false;
@@ -139,14 +309,27 @@ public abstract class LazyElement{
 		if(root.child==null){
 			return 0;
 		}
-		if(length>-1){
-			return length;
+		// Cached on the token, so every element sharing it sees changes
+		if(root.length<0){
+			root.length=root.getChildCount();
 		}
-		length=root.getChildCount();
-		return length;
+		return root.length;
 	}
 
-	protected abstract String serializeElementToString();
+	protected String serializeElementToString(){
+		int size=root.endIndex-root.startIndex;
+		if(root.dirtyBuf!=null){
+			size+=root.dirtyBuf.length();
+		}
+		StringBuilder buf=new StringBuilder(size+16);
+		try{
+			root.serialize(new LazyOutput.CharOutput(buf));
+		}catch(IOException e){
+			// A StringBuilder never throws
+			throw new LazyException(e.getMessage());
+		}
+		return buf.toString();
+	}
 
 	/**
 	 * Returns a raw string extracted from the source string that covers the
@@ -158,12 +341,78 @@ public abstract class LazyElement{
 		if(root.isDirty()){
 			return serializeElementToString();
 		}else{
-			return new String(root.cbuf,root.startIndex,root.endIndex-root.startIndex);
+			return root.getRawStringValue();
 		}
 	}
 
 	/**
-	 * Returns the character count of the source string.
+	 * Writes the JSON representation of this element to the given target
+	 * without first creating a string for it. Unmodified parts of the
+	 * document are copied from the source as they are.
+	 *
+	 * @param out the target to write to
+	 * @throws IOException if the target could not be written to
+	 */
+	public void writeTo(Appendable out) throws IOException{
+		root.serialize(new LazyOutput.CharOutput(out));
+	}
+
+	/**
+	 * Writes the JSON representation of this element to the given stream as
+	 * UTF-8 encoded bytes. Unmodified parts of documents parsed from UTF-8
+	 * data are copied without decoding them. The stream is not flushed or
+	 * closed.
+	 *
+	 * @param out the stream to write to
+	 * @throws IOException if the stream could not be written to
+	 */
+	public void writeTo(OutputStream out) throws IOException{
+		LazyOutput output=new LazyOutput.ByteOutput(out);
+		root.serialize(output);
+		output.flush();
+	}
+
+	/**
+	 * Writes the JSON representation of this element to the given buffer as
+	 * UTF-8 encoded bytes, starting at its current position. The position is
+	 * moved past the written bytes.
+	 *
+	 * @param buf the buffer to write to
+	 * @throws BufferOverflowException if the buffer does not have enough room
+	 * left, in which case the contents of the buffer after its original
+	 * position are undefined
+	 */
+	public void writeTo(ByteBuffer buf) throws BufferOverflowException{
+		LazyOutput output=new LazyOutput.ByteOutput(buf);
+		try{
+			root.serialize(output);
+			output.flush();
+		}catch(IOException e){
+			// Writing to a buffer never throws
+			throw new LazyException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Rewrites this element into a new contiguous buffer. Every change made
+	 * with put appends to a buffer that is never reclaimed, so an element
+	 * that is changed over and over keeps growing. Compacting drops the
+	 * values that were removed or replaced and makes the element clean
+	 * again, so toString goes back to returning its source directly.
+	 * Elements taken from this one before compacting stay valid.
+	 *
+	 * Elements are also compacted automatically once the removed and
+	 * replaced values take up more room than the rest of the element.
+	 *
+	 * @throws LazyException if a deferred value could not be parsed
+	 */
+	public void compact() throws LazyException{
+		root.compact();
+	}
+
+	/**
+	 * Returns the character count of the source string. For elements parsed
+	 * from UTF-8 encoded data this is the byte count of the source.
 	 * 
 	 * @return the length of the source string for this element
 	 */
@@ -0,0 +1,167 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * A hash table over the field tokens of an object, used to look up fields by
+ * name without walking the linked list of fields. The table uses open
+ * addressing with linear probing and is kept at most half full. Field hashes
+ * are equal to the hash code of the decoded field name, so a lookup only
+ * needs the hash code of the key String, which the String caches itself.
+ *
+ * If an object has several fields with the same name, the first one is found,
+ * just like when walking the list of fields.
+ */
+final class LazyFieldIndex{
+	private LazyNode[] table;
+	private int size=0;
+	// Set when the object has several fields with the same name, in which
+	// case only the first one is in the table
+	private boolean duplicates=false;
+
+	/**
+	 * Build an index over all current fields of an object token.
+	 *
+	 * @param object the object token
+	 */
+	protected LazyFieldIndex(LazyNode object){
+		int count=0;
+		LazyNode pointer=object.child;
+		while(pointer!=null){
+			count++;
+			pointer=pointer.next;
+		}
+		table=new LazyNode[capacity(count)];
+		pointer=object.child;
+		while(pointer!=null){
+			if(get(pointer)==null){
+				insert(pointer);
+			}else{
+				duplicates=true;
+			}
+			pointer=pointer.next;
+		}
+	}
+
+	// The smallest power of two that holds twice the given number of fields
+	private static int capacity(int count){
+		int capacity=16;
+		while(capacity<count*2){
+			capacity<<=1;
+		}
+		return capacity;
+	}
+
+	private static int spread(int hash){
+		return hash ^ (hash>>>16);
+	}
+
+	/**
+	 * Returns the first field with the given name.
+	 *
+	 * @param name the name of the field
+	 * @param key the prepared key for the name or null
+	 * @return the field token or null if there is no such field
+	 */
+	protected LazyNode get(String name,LazyKey key){
+		int hash=key!=null?key.hash:name.hashCode();
+		int mask=table.length-1;
+		int i=spread(hash) & mask;
+		LazyNode field=table[i];
+		while(field!=null){
+			if(field.getFieldHash()==hash && LazyObject.keyMatch(name,key,hash,field)){
+				return field;
+			}
+			i=(i+1) & mask;
+			field=table[i];
+		}
+		return null;
+	}
+
+	// Returns a field already in the table with the same name as the given
+	// field, or null if there is none
+	private LazyNode get(LazyNode token){
+		int hash=token.getFieldHash();
+		int mask=table.length-1;
+		int i=spread(hash) & mask;
+		LazyNode field=table[i];
+		while(field!=null){
+			if(field.getFieldHash()==hash && field.getStringValue().equals(token.getStringValue())){
+				return field;
+			}
+			i=(i+1) & mask;
+			field=table[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Add a new field that is known not to be in the index yet.
+	 *
+	 * @param field the field token
+	 */
+	protected void add(LazyNode field){
+		if((size+1)*2>table.length){
+			LazyNode[] old=table;
+			table=new LazyNode[old.length*2];
+			size=0;
+			for(LazyNode token:old){
+				if(token!=null){
+					insert(token);
+				}
+			}
+		}
+		insert(field);
+	}
+
+	/**
+	 * Remove a field that is being removed from the object. Later entries
+	 * are moved back into the freed slot where needed, so lookups never
+	 * stop early at it.
+	 *
+	 * @param field the field token
+	 * @return false if the index can not be kept up to date because the
+	 * object has several fields with the same name
+	 */
+	protected boolean remove(LazyNode field){
+		if(duplicates){
+			return false;
+		}
+		int mask=table.length-1;
+		int i=spread(field.getFieldHash()) & mask;
+		while(table[i]!=field){
+			if(table[i]==null){
+				// Not in the table
+				return true;
+			}
+			i=(i+1) & mask;
+		}
+		table[i]=null;
+		size--;
+		int j=i;
+		while(true){
+			j=(j+1) & mask;
+			LazyNode token=table[j];
+			if(token==null){
+				return true;
+			}
+			int home=spread(token.getFieldHash()) & mask;
+			// Move the entry back unless its home slot lies cyclically
+			// between the freed slot and its current slot
+			boolean between=i<=j?(i<home && home<=j):(i<home || home<=j);
+			if(!between){
+				table[i]=token;
+				table[j]=null;
+				i=j;
+			}
+		}
+	}
+
+	private void insert(LazyNode field){
+		int mask=table.length-1;
+		int i=spread(field.getFieldHash()) & mask;
+		while(table[i]!=null){
+			i=(i+1) & mask;
+		}
+		table[i]=field;
+		size++;
+	}
+}
@@ -0,0 +1,141 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * A fixed set of field names that are read from an object together. Instead
+ * of walking the fields of an object once for every name, all fields in the
+ * set are found in a single walk. Like LazyKey, a field set is immutable and
+ * best kept in a static field:
+ *
+ * <pre>
+ * private static final LazyFieldSet EVENT=LazyFieldSet.of("id","ts","user","amount");
+ * ...
+ * LazyFieldValues values=EVENT.newValues();
+ * obj.getFields(EVENT,values);
+ * long ts=values.getLong(1);
+ * </pre>
+ *
+ * Values are read from the holder by the position of their name in the set.
+ */
+public final class LazyFieldSet{
+	protected final LazyKey[] keys;
+	// Positions of the keys by hash, using open addressing with linear
+	// probing. Slots hold the position plus one, 0 marks an empty slot.
+	private final int[] table;
+
+	private LazyFieldSet(String[] names){
+		keys=new LazyKey[names.length];
+		int capacity=16;
+		while(capacity<names.length*2){
+			capacity<<=1;
+		}
+		table=new int[capacity];
+		for(int i=0;i<names.length;i++){
+			keys[i]=LazyKey.of(names[i]);
+			for(int j=0;j<i;j++){
+				if(keys[j].equals(keys[i])){
+					throw new IllegalArgumentException("Duplicate field name '"+names[i]+"'");
+				}
+			}
+			int slot=spread(keys[i].hash) & (capacity-1);
+			while(table[slot]!=0){
+				slot=(slot+1) & (capacity-1);
+			}
+			table[slot]=i+1;
+		}
+	}
+
+	/**
+	 * Create a field set for the given field names.
+	 *
+	 * @param names the names of the fields
+	 * @return the field set
+	 */
+	public static LazyFieldSet of(String... names){
+		return new LazyFieldSet(names);
+	}
+
+	private static int spread(int hash){
+		return hash ^ (hash>>>16);
+	}
+
+	/**
+	 * Returns the number of fields in this set.
+	 *
+	 * @return the number of fields
+	 */
+	public int size(){
+		return keys.length;
+	}
+
+	/**
+	 * Returns the position of the given field name in this set.
+	 *
+	 * @param name the name of the field
+	 * @return the position of the field or -1 if it is not part of this set
+	 */
+	public int indexOf(String name){
+		for(int i=0;i<keys.length;i++){
+			if(keys[i].name.equals(name)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Create a holder for values of this set. A holder can be filled again
+	 * for every object read.
+	 *
+	 * @return a new value holder
+	 */
+	public LazyFieldValues newValues(){
+		return new LazyFieldValues(this);
+	}
+
+	/**
+	 * Find the values of all fields in this set on the given object token.
+	 * If an object has several fields with the same name, the first one is
+	 * used, just like for single field lookups.
+	 *
+	 * @param object the object token
+	 * @param values the holder to store the value tokens in
+	 */
+	protected void resolve(LazyNode object,LazyNode[] values){
+		int missing=keys.length;
+		for(int i=0;i<missing;i++){
+			values[i]=null;
+		}
+		LazyFieldIndex index=object.fieldIndex;
+		if(index!=null){
+			// Wide objects already have their fields indexed
+			for(int i=0;i<keys.length;i++){
+				LazyNode field=index.get(keys[i].name,keys[i]);
+				if(field!=null){
+					values[i]=field.child;
+				}
+			}
+			return;
+		}
+		int mask=table.length-1;
+		LazyNode field=object.child;
+		while(field!=null){
+			int hash=field.getFieldHash();
+			int slot=spread(hash) & mask;
+			int position=table[slot];
+			while(position!=0){
+				LazyKey key=keys[position-1];
+				if(key.hash==hash && values[position-1]==null && LazyObject.keyMatch(key,field)){
+					values[position-1]=field.child;
+					missing--;
+					if(missing==0){
+						return;
+					}
+					break;
+				}
+				slot=(slot+1) & mask;
+				position=table[slot];
+			}
+			field=field.next;
+		}
+	}
+}
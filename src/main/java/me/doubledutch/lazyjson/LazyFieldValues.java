@@ -0,0 +1,260 @@
+package me.doubledutch.lazyjson;
+
+/**
+ * Holds the values of the fields in a LazyFieldSet, as found on an object by
+ * LazyObject.getFields. Values are read by the position of their name in the
+ * field set. The holder can be filled again for the next object, so reading
+ * many objects only allocates for the values that are actually requested as
+ * strings, objects or arrays.
+ *
+ * The holder refers to the tokens of the last object it was filled from and
+ * reflects the values of that object at the time it was filled.
+ */
+public final class LazyFieldValues{
+	private final LazyFieldSet fields;
+	private final LazyNode[] values;
+	private LazyObject source;
+
+	protected LazyFieldValues(LazyFieldSet fields){
+		this.fields=fields;
+		values=new LazyNode[fields.keys.length];
+	}
+
+	/**
+	 * Fill this holder with the values of the given object.
+	 *
+	 * @param fields the field set this holder was created for
+	 * @param obj the object to read the fields of
+	 */
+	protected void fill(LazyFieldSet fields,LazyObject obj){
+		if(fields!=this.fields){
+			throw new IllegalArgumentException("Values were created for another field set");
+		}
+		source=obj;
+		fields.resolve(obj.root,values);
+	}
+
+	/**
+	 * Returns the field set this holder was created for.
+	 *
+	 * @return the field set
+	 */
+	public LazyFieldSet getFieldSet(){
+		return fields;
+	}
+
+	private LazyNode getValueToken(int index) throws LazyException{
+		LazyNode token=values[index];
+		if(token==null){
+			throw new LazyException("Unknown field '"+fields.keys[index].name+"'");
+		}
+		return token;
+	}
+
+	/**
+	 * Returns true if the object had the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return true if the field was found, false otherwise
+	 */
+	public boolean has(int index){
+		return values[index]!=null;
+	}
+
+	/**
+	 * Returns true if the value of the field at the given position is null.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return true if the value is null, false otherwise
+	 * @throws LazyException if the field was not found
+	 */
+	public boolean isNull(int index) throws LazyException{
+		return getValueToken(index).type==LazyNode.VALUE_NULL;
+	}
+
+	/**
+	 * Returns the type of the value of the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the type of the value
+	 * @throws LazyException if the field was not found
+	 */
+	public LazyType getType(int index) throws LazyException{
+		return getValueToken(index).getLazyType();
+	}
+
+	/**
+	 * Returns the string value of the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the string value or null for a null value
+	 * @throws LazyException if the field was not found
+	 */
+	public String getString(int index) throws LazyException{
+		return getValueToken(index).getStringValue();
+	}
+
+	/**
+	 * Returns the string value of the field at the given position or the
+	 * default value if the field was not found or is null.
+	 *
+	 * @param index the position of the field in the field set
+	 * @param defaultValue the default value
+	 * @return the string value or the default value
+	 */
+	public String optString(int index,String defaultValue){
+		LazyNode token=values[index];
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getStringValue();
+	}
+
+	/**
+	 * Returns true if the value of the field at the given position equals
+	 * the given string, without creating a string for the value.
+	 *
+	 * @param index the position of the field in the field set
+	 * @param value the string to compare with
+	 * @return true if the value equals the string, false otherwise or if the field was not found
+	 */
+	public boolean stringEquals(int index,String value){
+		LazyNode token=values[index];
+		if(token==null)return false;
+		return token.valueEquals(value);
+	}
+
+	/**
+	 * Returns the integer value of the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the integer value
+	 * @throws LazyException if the field was not found or is not a number
+	 */
+	public int getInt(int index) throws LazyException{
+		return getValueToken(index).getIntValue();
+	}
+
+	/**
+	 * Returns the integer value of the field at the given position or the
+	 * default value if the field was not found or is null.
+	 *
+	 * @param index the position of the field in the field set
+	 * @param defaultValue the default value
+	 * @return the integer value or the default value
+	 */
+	public int optInt(int index,int defaultValue){
+		LazyNode token=values[index];
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getIntValue();
+	}
+
+	/**
+	 * Returns the long value of the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the long value
+	 * @throws LazyException if the field was not found or is not a number
+	 */
+	public long getLong(int index) throws LazyException{
+		return getValueToken(index).getLongValue();
+	}
+
+	/**
+	 * Returns the long value of the field at the given position or the
+	 * default value if the field was not found or is null.
+	 *
+	 * @param index the position of the field in the field set
+	 * @param defaultValue the default value
+	 * @return the long value or the default value
+	 */
+	public long optLong(int index,long defaultValue){
+		LazyNode token=values[index];
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getLongValue();
+	}
+
+	/**
+	 * Returns the double value of the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the double value
+	 * @throws LazyException if the field was not found or is not a number
+	 */
+	public double getDouble(int index) throws LazyException{
+		return getValueToken(index).getDoubleValue();
+	}
+
+	/**
+	 * Returns the double value of the field at the given position or the
+	 * default value if the field was not found or is null.
+	 *
+	 * @param index the position of the field in the field set
+	 * @param defaultValue the default value
+	 * @return the double value or the default value
+	 */
+	public double optDouble(int index,double defaultValue){
+		LazyNode token=values[index];
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getDoubleValue();
+	}
+
+	/**
+	 * Returns the boolean value of the field at the given position. Strings
+	 * holding true or false are accepted, just like for LazyObject.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the boolean value
+	 * @throws LazyException if the field was not found or is not a boolean
+	 */
+	public boolean getBoolean(int index) throws LazyException{
+		return getValueToken(index).getBooleanValue();
+	}
+
+	/**
+	 * Returns the boolean value of the field at the given position or the
+	 * default value if the field was not found or is null.
+	 *
+	 * @param index the position of the field in the field set
+	 * @param defaultValue the default value
+	 * @return the boolean value or the default value
+	 */
+	public boolean optBoolean(int index,boolean defaultValue){
+		LazyNode token=values[index];
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBooleanValue();
+	}
+
+	/**
+	 * Returns the object value of the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the object value
+	 * @throws LazyException if the field was not found or is not an object
+	 */
+	public LazyObject getJSONObject(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		LazyObject obj=new LazyObject(token);
+		obj.parent=source;
+		return obj;
+	}
+
+	/**
+	 * Returns the array value of the field at the given position.
+	 *
+	 * @param index the position of the field in the field set
+	 * @return the array value
+	 * @throws LazyException if the field was not found or is not an array
+	 */
+	public LazyArray getJSONArray(int index) throws LazyException{
+		LazyNode token=getValueToken(index);
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		LazyArray arr=new LazyArray(token);
+		arr.parent=source;
+		return arr;
+	}
+}
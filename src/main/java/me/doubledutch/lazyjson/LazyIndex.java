@@ -0,0 +1,303 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A structural index over a JSON source, built in a single pass before the
+ * parser runs. The source is processed in blocks of 64 characters, each block
+ * producing one bit per character in a set of long bitmaps. Escaped quotes and
+ * string contents are masked out with plain word arithmetic, leaving a bitmap
+ * with a bit set for every position the parser actually has to look at:
+ * structural characters, quotes and the first character of every number or
+ * literal. Whitespace and the contents of strings are never visited again.
+ *
+ * For UTF-8 sources the bytes are compared eight at a time inside a long. A
+ * block that lies entirely inside a string only needs the quote and
+ * backslash comparisons, which is what makes long strings cheap.
+ */
+final class LazyIndex{
+	private static final long EVEN_BITS=0x5555555555555555L;
+	private static final long ODD_BITS=~EVEN_BITS;
+
+	private static final long LOW_BITS=0x7F7F7F7F7F7F7F7FL;
+	private static final long QUOTES=0x2222222222222222L;
+	private static final long BACKSLASHES=0x5C5C5C5C5C5C5C5CL;
+	private static final long CASE_BITS=0x2020202020202020L;
+	private static final long BEGIN_BRACES=0x7B7B7B7B7B7B7B7BL;
+	private static final long END_BRACES=0x7D7D7D7D7D7D7D7DL;
+	private static final long COLONS=0x3A3A3A3A3A3A3A3AL;
+	private static final long COMMAS=0x2C2C2C2C2C2C2C2CL;
+	private static final long SPACES=0x2020202020202020L;
+	private static final long TABS=0x0909090909090909L;
+	private static final long LINEFEEDS=0x0A0A0A0A0A0A0A0AL;
+	private static final long CARRIAGE_RETURNS=0x0D0D0D0D0D0D0D0DL;
+
+	// Character classes for the character by character scan
+	private static final byte OTHER=0;
+	private static final byte OPERATOR=1;
+	private static final byte WHITESPACE=2;
+	private static final byte[] CLASS=new byte[128];
+	static{
+		CLASS['{']=OPERATOR;
+		CLASS['}']=OPERATOR;
+		CLASS['[']=OPERATOR;
+		CLASS[']']=OPERATOR;
+		CLASS[':']=OPERATOR;
+		CLASS[',']=OPERATOR;
+		CLASS[' ']=WHITESPACE;
+		CLASS['\t']=WHITESPACE;
+		CLASS['\n']=WHITESPACE;
+		CLASS['\r']=WHITESPACE;
+	}
+
+	// One bit per source character, bit 0 of word 0 is the start index
+	protected final long[] structural;
+	protected final long[] backslash;
+	private final int start;
+	private final int end;
+
+	// State carried from one block to the next
+	private long prevEscaped=0;
+	private long prevInString=0;
+	private long prevScalar=0;
+
+	// The raw classification of the current block
+	private long quote;
+	private long bs;
+	private long op;
+	private long ws;
+
+	protected LazyIndex(char[] cbuf,ByteBuffer bbuf,int start,int end){
+		this.start=start;
+		this.end=end;
+		int words=(end-start+63)>>>6;
+		structural=new long[words];
+		backslash=new long[words];
+		ByteBuffer lbuf=null;
+		if(bbuf!=null){
+			// Read words so that the first byte ends up in the low bits
+			lbuf=bbuf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		}
+		int index=start;
+		for(int w=0;w<words;w++){
+			if(end-index<64){
+				classifyTail(cbuf,bbuf,index);
+				combine(w,true);
+			}else if(lbuf!=null){
+				scanBytes(lbuf,index);
+				if(!combine(w,false)){
+					classifyBytes(lbuf,index);
+					combine(w,true);
+				}
+			}else{
+				scanChars(cbuf,index);
+				if(!combine(w,false)){
+					classifyChars(cbuf,index);
+					combine(w,true);
+				}
+			}
+			index+=64;
+		}
+	}
+
+	// Returns a mask with the high bit set in every byte of x equal to the
+	// byte repeated in pattern
+	private static long equal(long x,long pattern){
+		long t=x^pattern;
+		return ~(((t & LOW_BITS)+LOW_BITS) | t | LOW_BITS);
+	}
+
+	// Gather the high bit of each byte into the low eight bits
+	private static long gather(long mask){
+		return ((mask>>>7)*0x0102040810204080L)>>>56;
+	}
+
+	private void scanBytes(ByteBuffer lbuf,int index){
+		quote=0;
+		bs=0;
+		for(int k=0;k<64;k+=8){
+			long x=lbuf.getLong(index+k);
+			quote|=gather(equal(x,QUOTES))<<k;
+			bs|=gather(equal(x,BACKSLASHES))<<k;
+		}
+	}
+
+	private void classifyBytes(ByteBuffer lbuf,int index){
+		op=0;
+		ws=0;
+		for(int k=0;k<64;k+=8){
+			long x=lbuf.getLong(index+k);
+			// Setting bit 5 maps [ and ] onto { and }
+			long y=x | CASE_BITS;
+			op|=gather(equal(y,BEGIN_BRACES) | equal(y,END_BRACES) | equal(x,COLONS) | equal(x,COMMAS))<<k;
+			ws|=gather(equal(x,SPACES) | equal(x,TABS) | equal(x,LINEFEEDS) | equal(x,CARRIAGE_RETURNS))<<k;
+		}
+	}
+
+	private void scanChars(char[] cbuf,int index){
+		quote=0;
+		bs=0;
+		for(int k=0;k<64;k++){
+			char c=cbuf[index+k];
+			if(c=='"'){
+				quote|=1L<<k;
+			}else if(c=='\\'){
+				bs|=1L<<k;
+			}
+		}
+	}
+
+	private void classifyChars(char[] cbuf,int index){
+		op=0;
+		ws=0;
+		for(int k=0;k<64;k++){
+			char c=cbuf[index+k];
+			if(c<128){
+				byte cls=CLASS[c];
+				if(cls==OPERATOR){
+					op|=1L<<k;
+				}else if(cls==WHITESPACE){
+					ws|=1L<<k;
+				}
+			}
+		}
+	}
+
+	// Classify the last partial block. Positions past the end are treated as
+	// whitespace.
+	private void classifyTail(char[] cbuf,ByteBuffer bbuf,int index){
+		quote=0;
+		bs=0;
+		op=0;
+		ws=0;
+		int count=end-index;
+		for(int k=0;k<64;k++){
+			if(k>=count){
+				ws|=1L<<k;
+				continue;
+			}
+			char c;
+			if(cbuf!=null){
+				c=cbuf[index+k];
+			}else{
+				c=(char)(bbuf.get(index+k) & 0xFF);
+			}
+			if(c=='"'){
+				quote|=1L<<k;
+			}else if(c=='\\'){
+				bs|=1L<<k;
+			}else if(c<128){
+				byte cls=CLASS[c];
+				if(cls==OPERATOR){
+					op|=1L<<k;
+				}else if(cls==WHITESPACE){
+					ws|=1L<<k;
+				}
+			}
+		}
+	}
+
+	// Turn the raw classification of a block into structural positions. When
+	// classified is false only the quote and backslash bitmaps are known. If
+	// the block turns out to contain anything outside a string, the carried
+	// state is left untouched and false is returned so the caller can classify
+	// the full block and try again.
+	private boolean combine(int w,boolean classified){
+		// Find the characters escaped by an odd length run of backslashes
+		long startEdges=bs & ~(bs<<1);
+		long evenStartMask=EVEN_BITS ^ prevEscaped;
+		long evenStarts=startEdges & evenStartMask;
+		long oddStarts=startEdges & ~evenStartMask;
+		long evenCarries=bs+evenStarts;
+		long oddCarries=bs+oddStarts;
+		// Unsigned overflow means an odd run continues into the next block
+		long escapedOut=((oddCarries^Long.MIN_VALUE)<(bs^Long.MIN_VALUE))?1:0;
+		oddCarries|=prevEscaped;
+		long escaped=(evenCarries & ~bs & ODD_BITS) | (oddCarries & ~bs & EVEN_BITS);
+
+		long q=quote & ~escaped;
+		// Prefix xor marks every position from an opening quote up to but
+		// not including the closing quote
+		long inString=q;
+		inString^=inString<<1;
+		inString^=inString<<2;
+		inString^=inString<<4;
+		inString^=inString<<8;
+		inString^=inString<<16;
+		inString^=inString<<32;
+		inString^=prevInString;
+
+		if(!classified){
+			if(inString!=-1L){
+				return false;
+			}
+			op=0;
+			ws=0;
+		}
+		// Numbers and literals start at the first character of a run of
+		// anything that is not whitespace, structural or part of a string
+		long scalar=~(op | ws | q | inString);
+		long scalarStarts=scalar & ~((scalar<<1) | prevScalar);
+
+		structural[w]=(op & ~inString) | q | scalarStarts;
+		backslash[w]=bs;
+
+		prevEscaped=escapedOut;
+		prevInString=inString>>63;
+		prevScalar=scalar>>>63;
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first structural position after the given
+	 * index, or the end index of the source if there are no more.
+	 *
+	 * @param from the source index to search from
+	 * @return the index of the next structural position
+	 */
+	protected int next(int from){
+		int offset=from+1-start;
+		int w=offset>>>6;
+		if(w>=structural.length){
+			return end;
+		}
+		long bits=structural[w] & (-1L<<offset);
+		while(bits==0){
+			if(++w==structural.length){
+				return end;
+			}
+			bits=structural[w];
+		}
+		return start+(w<<6)+Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * Returns the index of the first backslash after the given index and
+	 * before the limit, or -1 if there is none.
+	 *
+	 * @param from the source index to search from
+	 * @param limit the source index to stop searching at
+	 * @return the index of the next backslash or -1
+	 */
+	protected int nextBackslash(int from,int limit){
+		int offset=from+1-start;
+		if(offset>=limit-start){
+			return -1;
+		}
+		int w=offset>>>6;
+		int last=(limit-1-start)>>>6;
+		long bits=backslash[w] & (-1L<<offset);
+		while(bits==0){
+			if(++w>last){
+				return -1;
+			}
+			bits=backslash[w];
+		}
+		int index=start+(w<<6)+Long.numberOfTrailingZeros(bits);
+		if(index>=limit){
+			return -1;
+		}
+		return index;
+	}
+}
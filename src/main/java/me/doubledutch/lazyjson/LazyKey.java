@@ -0,0 +1,67 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A field name prepared for repeated lookups on LazyObject instances. The
+ * hash code and UTF-8 encoding of the name are computed once, so lookups only
+ * have to compare them against the source. Keys are immutable and are best
+ * kept in static fields:
+ *
+ * <pre>
+ * private static final LazyKey USER_ID=LazyKey.of("userId");
+ * ...
+ * long id=obj.getLong(USER_ID);
+ * </pre>
+ */
+public final class LazyKey{
+	protected final String name;
+	protected final int hash;
+	protected final byte[] utf8;
+
+	private LazyKey(String name){
+		this.name=name;
+		hash=name.hashCode();
+		utf8=name.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create a key for the given field name.
+	 *
+	 * @param name the name of the field
+	 * @return the key for the field
+	 */
+	public static LazyKey of(String name){
+		if(name==null){
+			throw new NullPointerException();
+		}
+		return new LazyKey(name);
+	}
+
+	/**
+	 * Returns the name of the field.
+	 *
+	 * @return the name of the field
+	 */
+	public String getName(){
+		return name;
+	}
+
+	public int hashCode(){
+		return hash;
+	}
+
+	public boolean equals(Object obj){
+		if(obj==this){
+			return true;
+		}
+		if(!(obj instanceof LazyKey)){
+			return false;
+		}
+		return name.equals(((LazyKey)obj).name);
+	}
+
+	public String toString(){
+		return name;
+	}
+}
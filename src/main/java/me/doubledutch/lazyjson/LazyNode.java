@@ -1,10 +1,14 @@
 package me.doubledutch.lazyjson;
 
 import java.util.*;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.BufferOverflowException;
 import me.doubledutch.lazyjson.compressor.*;
 import java.nio.charset.StandardCharsets;
+import java.math.BigInteger;
+import java.math.BigDecimal;
 /**
  * The LazyNode is the primary output of the LazyParser.
  */
@@ -25,10 +29,24 @@ public final class LazyNode{
 
 	protected static final byte END_MARKER=11;
 
+	// The number of unused characters in the dirty buffer of an element
+	// before it is considered for compaction
+	private static final int COMPACT_THRESHOLD=4096;
+
+	// Kinds of primitive value held in the value cache
+	private static final byte CACHED_LONG=1;
+	private static final byte CACHED_DOUBLE=2;
+
+	// The smallest code point that may be encoded with each number of bytes
+	// of UTF-8, anything smaller is an invalid overlong encoding
+	private static final int[] MIN_CODE={0,0,0x80,0x800,0x10000};
+
 	protected byte type;
 
 	protected boolean dirty=false;
 	protected char[] cbuf=null;
+	// Set instead of cbuf when the source was given as UTF-8 encoded bytes
+	protected ByteBuffer bbuf=null;
 	protected StringBuilder dirtyBuf=null;
 
 	// Start and end index into source string for this token.
@@ -42,6 +60,67 @@ public final class LazyNode{
 	protected LazyNode child;
 	protected LazyNode lastChild;
 	protected LazyNode next;
+	// The previous sibling, so a child can be unlinked without walking the
+	// list to find it
+	protected LazyNode prev;
+	// The array or field holding this token, used to mark the containers of
+	// a change. A token held in more than one place is linked to the array
+	// holding it if there is one, otherwise to the field it was last put in.
+	protected LazyNode parent;
+	// Set on a token that was put in a second place while still held by the
+	// first. Changes below it only reach the containers it is linked to, so
+	// everything above it stays marked as changed from then on.
+	protected boolean shared=false;
+
+	// The number of children of an object or array, -1 until counted. Kept
+	// up to date by changes once counted.
+	protected int length=-1;
+
+	// Set on objects and arrays that were changed or contain a changed token.
+	// It is set on all containing tokens at the time of the change, so
+	// finding out whether a subtree was changed does not have to walk it.
+	protected boolean modified=false;
+
+	// The number of characters in dirtyBuf that belong to tokens which were
+	// removed or replaced, kept on the root of the element owning dirtyBuf
+	protected int garbage=0;
+
+	// Set on objects and arrays created from a tape until their children
+	// have been created by a call to expand
+	protected LazyTape tape;
+	protected int tapeIndex;
+
+	// Direct access to the children of an array, when available. The first
+	// childCount entries are in use. Must be kept up to date or cleared
+	// whenever the children are changed. Reads create it, so childCount is
+	// always set before the volatile childIndex, and readers read childIndex
+	// before childCount.
+	protected volatile LazyNode[] childIndex;
+	protected int childCount;
+
+	// Index over the fields of an object for lookups by name, created once an
+	// object is found to have many fields. Must be kept up to date or cleared
+	// whenever the fields are changed. Lookups create it while reading, so it
+	// is only assigned once fully built and is volatile, letting threads that
+	// read the same document see either no index or a complete one.
+	protected volatile LazyFieldIndex fieldIndex;
+
+	// The hash code of the name of a field token, 0 if not computed yet
+	protected int hash;
+
+	// Set on objects and arrays whose contents have not been tokenized yet,
+	// holding the options to parse them with
+	protected LazyParserOptions deferred;
+
+	// When cache is set, decoded values are kept on the token the first time
+	// they are read. The primitive slot holds either a long or the bits of a
+	// double, as given by cached. Value tokens are never changed in place,
+	// modifications replace them, so the cache only has to be dropped when
+	// a node is reused.
+	protected boolean cache;
+	protected byte cached;
+	protected long cachedValue;
+	protected String cachedString;
 
 	/**
 	 * Construct a new LazyNode with the given type and index into the source string
@@ -54,6 +133,154 @@ public final class LazyNode{
 		this.type=type;
 	}
 
+	/**
+	 * Drop all state and references held by this node so it can be reused
+	 * for another token. The type and start index are set on reuse.
+	 */
+	protected void clear(){
+		dirty=false;
+		cbuf=null;
+		bbuf=null;
+		dirtyBuf=null;
+		endIndex=-1;
+		child=null;
+		lastChild=null;
+		next=null;
+		prev=null;
+		parent=null;
+		shared=false;
+		length=-1;
+		modified=false;
+		garbage=0;
+		tape=null;
+		tapeIndex=0;
+		childIndex=null;
+		childCount=0;
+		fieldIndex=null;
+		hash=0;
+		deferred=null;
+		cache=false;
+		cached=0;
+		cachedValue=0;
+		cachedString=null;
+	}
+
+	/**
+	 * Returns the hash code of the name of a field token. This is the same
+	 * value as the hash code of the decoded name as a String.
+	 *
+	 * The hash is cached on the token the first time it is needed. Just like
+	 * String.hashCode this is a benign race when a document is read from
+	 * several threads: the field is read once, every thread computes the same
+	 * value and an int is always written as a whole.
+	 *
+	 * @return the hash code of the field name
+	 */
+	protected int getFieldHash(){
+		int h=hash;
+		if(h!=0){
+			return h;
+		}
+		if(type==EFIELD){
+			h=getStringValue().hashCode();
+		}else if(dirty){
+			for(int i=startIndex;i<endIndex;i++){
+				h=31*h+dirtyBuf.charAt(i);
+			}
+		}else if(cbuf!=null){
+			for(int i=startIndex;i<endIndex;i++){
+				h=31*h+cbuf[i];
+			}
+		}else{
+			for(int i=startIndex;i<endIndex;i++){
+				byte b=bbuf.get(i);
+				if(b<0){
+					// Multi byte characters have to be decoded first
+					h=getStringValue().hashCode();
+					break;
+				}
+				h=31*h+b;
+			}
+		}
+		hash=h;
+		return h;
+	}
+
+	/**
+	 * Returns the character at the given index of whichever buffer currently
+	 * holds the data for this token. For byte backed tokens the raw UTF-8 byte
+	 * is returned, which is only meaningful for ASCII data such as numbers.
+	 *
+	 * @param i the index into the buffer
+	 * @return the character at the given index
+	 */
+	protected char charAt(int i){
+		if(dirty){
+			return dirtyBuf.charAt(i);
+		}
+		if(cbuf!=null){
+			return cbuf[i];
+		}
+		return (char)(bbuf.get(i) & 0xFF);
+	}
+
+	/**
+	 * Decodes a range of UTF-8 encoded bytes into a string.
+	 *
+	 * @param buf the buffer holding the encoded data
+	 * @param start the index of the first byte
+	 * @param end the index one past the last byte
+	 * @return the decoded string
+	 */
+	protected static String decodeUTF8(ByteBuffer buf,int start,int end){
+		if(buf.hasArray()){
+			return new String(buf.array(),buf.arrayOffset()+start,end-start,StandardCharsets.UTF_8);
+		}
+		byte[] data=new byte[end-start];
+		// Use a duplicate so we never touch the position of a shared buffer
+		ByteBuffer view=buf.duplicate();
+		view.position(start);
+		view.get(data);
+		return new String(data,StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create the child nodes of an object or array that was parsed into a
+	 * tape or deferred by the parser. This must be called before accessing
+	 * the children of a node. Calling it on a node that has already been
+	 * expanded does nothing.
+	 *
+	 * @throws LazyException if a deferred value could not be parsed
+	 */
+	protected void expand() throws LazyException{
+		if(tape!=null){
+			LazyTape source=tape;
+			tape=null;
+			source.expand(this,tapeIndex);
+		}else if(deferred!=null){
+			LazyParser parser;
+			if(cbuf!=null){
+				parser=new LazyParser(cbuf,startIndex,endIndex,deferred);
+			}else{
+				ByteBuffer view=bbuf.duplicate();
+				view.limit(endIndex);
+				view.position(startIndex);
+				parser=new LazyParser(view,deferred);
+			}
+			parser.tokenize();
+			LazyNode token=parser.root;
+			token.expand();
+			child=token.child;
+			lastChild=token.lastChild;
+			LazyNode pointer=child;
+			while(pointer!=null){
+				pointer.parent=this;
+				pointer=pointer.next;
+			}
+			deferred=null;
+		}
+	}
+
 	protected StringBuilder getDirtyBuf(){
 		if(dirtyBuf==null){
 			dirtyBuf=new StringBuilder();
@@ -77,19 +304,304 @@ public final class LazyNode{
 		}
 	}*/
 
+	/**
+	 * Returns true if this token or any token below it was changed.
+	 *
+	 * @return true if the subtree of this token was changed
+	 */
 	protected boolean isDirty(){
+		return dirty || modified;
+	}
+
+	/**
+	 * Mark this object or array as changed, along with every object, array
+	 * and field containing it. Stops at the first token that is already
+	 * marked, since everything above it is marked as well.
+	 */
+	protected void markModified(){
+		LazyNode pointer=this;
+		while(pointer!=null && !pointer.modified){
+			pointer.modified=true;
+			pointer=pointer.parent;
+		}
+	}
+
+	/**
+	 * Write the JSON representation of this token to the given output.
+	 * Objects and arrays that contain no modifications are copied from their
+	 * source as a single range, so only the parts of a document that were
+	 * actually changed are rendered token by token.
+	 *
+	 * @param out the output to write to
+	 * @throws IOException if the output could not be written to
+	 */
+	protected void serialize(LazyOutput out) throws IOException{
+		switch(type){
+			case OBJECT:
+			case ARRAY:
+				if(!isDirty()){
+					writeRawValue(out);
+					return;
+				}
+				out.write(type==OBJECT?'{':'[');
+				LazyNode pointer=child;
+				while(pointer!=null){
+					if(pointer!=child){
+						out.write(',');
+					}
+					pointer.serialize(out);
+					pointer=pointer.next;
+				}
+				out.write(type==OBJECT?'}':']');
+				return;
+			case FIELD:
+			case EFIELD:
+				out.write('"');
+				writeRawValue(out);
+				out.write("\":");
+				child.serialize(out);
+				return;
+			case VALUE_STRING:
+			case VALUE_ESTRING:
+				out.write('"');
+				writeRawValue(out);
+				out.write('"');
+				return;
+			case VALUE_TRUE:
+				out.write("true");
+				return;
+			case VALUE_FALSE:
+				out.write("false");
+				return;
+			case VALUE_NULL:
+				out.write("null");
+				return;
+		}
+		writeRawValue(out);
+	}
+
+	/**
+	 * Write the source characters of this token to the given output without
+	 * creating an intermediate string.
+	 *
+	 * @param out the output to write to
+	 * @throws IOException if the output could not be written to
+	 */
+	protected void writeRawValue(LazyOutput out) throws IOException{
 		if(dirty){
-			return true;
+			out.write(dirtyBuf,startIndex,endIndex);
+		}else if(cbuf!=null){
+			out.write(cbuf,startIndex,endIndex);
+		}else{
+			out.write(bbuf,startIndex,endIndex);
 		}
-		if(child==null){
-			return false;
+	}
+
+	/**
+	 * Rewrite this object or array and everything below it into a single new
+	 * character buffer, dropping the characters of removed and replaced
+	 * values held in dirty buffers. Tokens keep their identity, only their
+	 * indices and source change, so elements already taken from the subtree
+	 * stay valid. Afterwards the subtree is clean again.
+	 *
+	 * @throws LazyException if a deferred value could not be parsed
+	 */
+	protected void compact() throws LazyException{
+		int size=endIndex-startIndex;
+		if(dirtyBuf!=null){
+			size+=dirtyBuf.length()-garbage;
+		}
+		StringBuilder buf=new StringBuilder(Math.max(size,16));
+		try{
+			rewrite(new LazyOutput.CharOutput(buf),buf);
+		}catch(IOException e){
+			// A StringBuilder never throws
+			throw new LazyException(e.getMessage());
+		}
+		char[] data=new char[buf.length()];
+		buf.getChars(0,data.length,data,0);
+		settle(data);
+	}
+
+	/**
+	 * Create a copy of this token and everything below it, reading from the
+	 * same buffers. An element of an array is copied when it is put in an
+	 * array, since the links to its siblings belong to the first one.
+	 *
+	 * @return the copy, not attached anywhere
+	 * @throws LazyException if a deferred value could not be parsed
+	 */
+	protected LazyNode copy() throws LazyException{
+		expand();
+		LazyNode node=new LazyNode(type,startIndex);
+		node.endIndex=endIndex;
+		node.dirty=dirty;
+		node.cbuf=cbuf;
+		node.bbuf=bbuf;
+		node.dirtyBuf=dirtyBuf;
+		node.modified=modified;
+		node.length=length;
+		node.hash=hash;
+		node.cache=cache;
+		node.cached=cached;
+		node.cachedValue=cachedValue;
+		node.cachedString=cachedString;
+		if(type==FIELD || type==EFIELD){
+			// The value may also be an element of an array, whose siblings
+			// are not part of this subtree
+			node.addChild(child.copy());
+			return node;
 		}
 		LazyNode pointer=child;
 		while(pointer!=null){
-			if(pointer.isDirty())return true;
+			node.addChild(pointer.copy());
 			pointer=pointer.next;
 		}
-		return false;
+		return node;
+	}
+
+	/**
+	 * Link a token that is put in this array or field back to it. A token
+	 * that is still held somewhere else becomes shared: the containers it is
+	 * held by are marked as changed, since a later change below the token
+	 * will only be marked on the containers it is linked to. A token that is
+	 * an element of an array stays linked to that array.
+	 *
+	 * @param token the token being put in this array or field
+	 */
+	protected void adopt(LazyNode token){
+		LazyNode previous=token.parent;
+		if(previous!=null && previous!=this){
+			previous.markModified();
+			token.shared=true;
+			if(previous.type==ARRAY){
+				return;
+			}
+		}
+		token.parent=this;
+	}
+
+	// Write this token to the new buffer and point it at the written range.
+	// Until settled, rewritten tokens read from the new buffer as if it was
+	// their dirty buffer, so a token attached in two places is still
+	// rewritten correctly the second time.
+	private void rewrite(LazyOutput out,StringBuilder buf) throws IOException{
+		int start=buf.length();
+		switch(type){
+			case OBJECT:
+			case ARRAY:
+				if(deferred!=null){
+					// Not tokenized yet, so the range can be copied as it is
+					writeRawValue(out);
+					break;
+				}
+				expand();
+				out.write(type==OBJECT?'{':'[');
+				LazyNode pointer=child;
+				while(pointer!=null){
+					if(pointer!=child){
+						out.write(',');
+					}
+					pointer.rewrite(out,buf);
+					pointer=pointer.next;
+				}
+				out.write(type==OBJECT?'}':']');
+				break;
+			case FIELD:
+			case EFIELD:
+				out.write('"');
+				start=buf.length();
+				writeRawValue(out);
+				int end=buf.length();
+				out.write("\":");
+				child.rewrite(out,buf);
+				startIndex=start;
+				endIndex=end;
+				dirty=true;
+				dirtyBuf=buf;
+				return;
+			case VALUE_STRING:
+			case VALUE_ESTRING:
+				out.write('"');
+				start=buf.length();
+				writeRawValue(out);
+				startIndex=start;
+				endIndex=buf.length();
+				dirty=true;
+				dirtyBuf=buf;
+				out.write('"');
+				return;
+			case VALUE_TRUE:
+				out.write("true");
+				break;
+			case VALUE_FALSE:
+				out.write("false");
+				break;
+			case VALUE_NULL:
+				out.write("null");
+				break;
+			default:
+				writeRawValue(out);
+		}
+		startIndex=start;
+		endIndex=buf.length();
+		dirty=true;
+		dirtyBuf=buf;
+	}
+
+	// Make the rewritten subtree use the new buffer as its clean source.
+	// Tokens above a shared token stay marked as changed. Returns true if
+	// this token is or contains a shared token.
+	private boolean settle(char[] data){
+		cbuf=data;
+		bbuf=null;
+		dirty=false;
+		dirtyBuf=null;
+		garbage=0;
+		if(type==FIELD || type==EFIELD){
+			// The value may also be an element of an array, whose siblings
+			// are not part of this subtree
+			modified=child.settle(data);
+			return modified;
+		}
+		boolean sharing=false;
+		LazyNode pointer=child;
+		while(pointer!=null){
+			if(pointer.settle(data)){
+				sharing=true;
+			}
+			pointer=pointer.next;
+		}
+		modified=sharing;
+		return sharing || shared;
+	}
+
+	/**
+	 * Account for a token that was removed from this element or replaced,
+	 * counting the characters it leaves behind in the dirty buffer.
+	 *
+	 * @param token the token that is no longer part of the element
+	 */
+	protected void discard(LazyNode token){
+		if(token.dirty && token.dirtyBuf==dirtyBuf && dirtyBuf!=null){
+			garbage+=token.endIndex-token.startIndex;
+		}
+		if(token.type==FIELD || token.type==EFIELD){
+			discard(token.child);
+		}
+	}
+
+	/**
+	 * Compact this element once the unused part of its dirty buffer is
+	 * larger than both a fixed threshold and the source of the element, so
+	 * the cost of compacting is spread over the changes that caused it.
+	 *
+	 * @throws LazyException if a deferred value could not be parsed
+	 */
+	protected void compactIfWasteful() throws LazyException{
+		if(garbage>COMPACT_THRESHOLD && garbage>endIndex-startIndex){
+			compact();
+		}
 	}
 
 	/**
@@ -98,6 +610,8 @@ public final class LazyNode{
 	 * @param token the child to add
 	 */
 	protected void addChild(LazyNode token){
+		token.parent=this;
+		token.prev=lastChild;
 		// If no children have been added yet, lastChild will be null
 		if(lastChild==null){
 			child=token;
@@ -109,12 +623,89 @@ public final class LazyNode{
 		lastChild=token;
 	}
 
+	/**
+	 * Add a new child to the end of the children as part of a change,
+	 * keeping the count of children up to date.
+	 *
+	 * @param token the child to add
+	 */
+	protected void appendChild(LazyNode token){
+		adopt(token);
+		addChild(token);
+		if(length>-1){
+			length++;
+		}
+	}
+
+	/**
+	 * Insert a new child after the given child as part of a change, keeping
+	 * the count of children up to date.
+	 *
+	 * @param previous the child to insert after or null to insert first
+	 * @param token the child to insert
+	 */
+	protected void insertChild(LazyNode previous,LazyNode token){
+		adopt(token);
+		LazyNode following=previous==null?child:previous.next;
+		token.prev=previous;
+		token.next=following;
+		if(previous==null){
+			child=token;
+		}else{
+			previous.next=token;
+		}
+		if(following==null){
+			lastChild=token;
+		}else{
+			following.prev=token;
+		}
+		if(length>-1){
+			length++;
+		}
+	}
+
+	/**
+	 * Unlink a child as part of a change, keeping the last child and the
+	 * count of children up to date. The previous sibling is found through
+	 * the back link, so this takes constant time. A token is only ever in
+	 * the list of children of one object or array, so its sibling links
+	 * always belong to this list.
+	 *
+	 * @param token the child to remove
+	 */
+	protected void removeChild(LazyNode token){
+		LazyNode previous=token.prev;
+		LazyNode following=token.next;
+		if(previous==null){
+			child=following;
+		}else{
+			previous.next=following;
+		}
+		if(following==null){
+			lastChild=previous;
+		}else{
+			following.prev=previous;
+		}
+		token.next=null;
+		token.prev=null;
+		if(token.parent==this){
+			token.parent=null;
+		}
+		if(length>-1){
+			length--;
+		}
+	}
+
 	/**
 	 * Count the children attached to this token. Be aware that this requires actual linked list traversal!
 	 *
 	 * @return the number of child tokens attached to this token
 	 */
 	protected int getChildCount(){
+		expand();
+		if(childIndex!=null){
+			return childCount;
+		}
 		int num=0;
 		LazyNode token=child;
 		while(token!=null){
@@ -211,6 +802,45 @@ public final class LazyNode{
 	protected static LazyNode cValueNull(int index){
 		return new LazyNode(VALUE_NULL,index);
 	}
+	/**
+	 * Returns the type of the value held by this token.
+	 *
+	 * @return the type of the value, or null for tokens that are not values
+	 */
+	protected LazyType getLazyType(){
+		switch(type){
+			case OBJECT: return LazyType.OBJECT;
+			case ARRAY: return LazyType.ARRAY;
+			case VALUE_TRUE: return LazyType.BOOLEAN;
+			case VALUE_FALSE: return LazyType.BOOLEAN;
+			case VALUE_NULL: return LazyType.NULL;
+			case VALUE_STRING: return LazyType.STRING;
+			case VALUE_ESTRING: return LazyType.STRING;
+			case VALUE_INTEGER: return LazyType.INTEGER;
+			case VALUE_FLOAT: return LazyType.FLOAT;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the boolean value held by this token. Strings holding true or
+	 * false, ignoring case and surrounding whitespace, are read as booleans
+	 * as well.
+	 *
+	 * @return the boolean value
+	 * @throws LazyException if the value is not a boolean
+	 */
+	protected boolean getBooleanValue() throws LazyException{
+		if(type==VALUE_TRUE)return true;
+		if(type==VALUE_FALSE)return false;
+		if(type==VALUE_STRING || type==VALUE_ESTRING){
+			String str=getStringValue().toLowerCase().trim();
+			if(str.equals("true"))return true;
+			if(str.equals("false"))return false;
+		}
+		throw new LazyException("Requested value is not a boolean",this);
+	}
+
 	/*
 	protected int getIntValue(char[] source) throws LazyException{
 		return getIntValue(source,null);
@@ -218,80 +848,17 @@ public final class LazyNode{
 
 	/**
 	 * Parses the characters of this token and attempts to construct an integer
-	 * value from them.
+	 * value from them. Values outside the range of an integer are narrowed
+	 * like a cast from long to int.
 	 *
 	 * @return the integer value if it could be parsed
 	 * @throws LazyException if the value could not be parsed
 	 */
 	protected int getIntValue() throws LazyException{
-		int i=startIndex;
-		boolean sign=false;
-		int value=0;
 		if(type==VALUE_FLOAT){
 			return (int)getDoubleValue();
-		}else if(type==VALUE_STRING || type==VALUE_ESTRING){
-			// Attempt to parse as an int, throw if impossible
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}
-			return sign?value:-value;
-		}else if(type==VALUE_INTEGER){
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}
-			return sign?value:-value;
 		}
-		throw new LazyException("Not an integer",startIndex);
+		return (int)getLongValue();
 	}
 
 	/**
@@ -299,77 +866,142 @@ public final class LazyNode{
 	 * value from them.
 	 *
 	 * @return the long value if it could be parsed
-	 * @throws LazyException if the value could not be parsed
+	 * @throws LazyException if the value could not be parsed or does not fit in a long
 	 */
 	protected long getLongValue() throws LazyException{
+		if(cached==CACHED_LONG){
+			return cachedValue;
+		}
+		long value;
+		if(type==VALUE_FLOAT){
+			value=(long)getDoubleValue();
+		}else if(type==VALUE_INTEGER || type==VALUE_STRING || type==VALUE_ESTRING){
+			value=parseLongValue();
+		}else{
+			throw new LazyException("Not an integer",startIndex);
+		}
+		if(cache && cached==0){
+			cachedValue=value;
+			cached=CACHED_LONG;
+		}
+		return value;
+	}
+
+	// Decodes the characters of this token as a long, two digits at a time
+	// when the value can not overflow. The value is accumulated as a negative
+	// number so the full range of long can be represented.
+	private long parseLongValue() throws LazyException{
 		int i=startIndex;
-		boolean sign=false;
+		int end=endIndex;
+		boolean negative=false;
+		if(i<end && charAt(i)=='-'){
+			negative=true;
+			i++;
+		}
+		if(i==end){
+			// Only string values can be empty, they have always read as 0
+			return 0;
+		}
 		long value=0;
-		if(type==VALUE_FLOAT){
-			return (long)getDoubleValue();
-		}else if(type==VALUE_STRING || type==VALUE_ESTRING){
-			// Attempt to parse as an int, throw if impossible
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid long",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					if(c<'0'||c>'9')throw new LazyException("'"+getStringValue()+"' is not a valid long",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
+		if(end-i<=18){
+			if(((end-i) & 1)==1){
+				int digit=charAt(i)-'0';
+				if(digit<0 || digit>9)throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
+				value=-digit;
+				i++;
 			}
-			return sign?value:-value;
-		}else if(type==VALUE_INTEGER){
-			if(dirty){
-				if(dirtyBuf.charAt(i)=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=dirtyBuf.charAt(i);
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
-				}
-			}else{	
-				if(cbuf[i]=='-'){
-					sign=true;
-					i++;
-				}
-				for(;i<endIndex;i++){
-					char c=cbuf[i];
-					// If we only allow this to be called on integer values, the parsing is pre done!
-					// if(c<'0'||c>'9')throw new LazyException("'"+getStringValue(source)+"' is not a valid integer",startIndex);
-					value+='0'-c;
-					if(i+1<endIndex){
-						value*=10;
-					}
+			for(;i<end;i+=2){
+				int high=charAt(i)-'0';
+				int low=charAt(i+1)-'0';
+				if(high<0 || high>9 || low<0 || low>9)throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
+				value=value*100-(high*10+low);
+			}
+		}else{
+			long limit=negative?Long.MIN_VALUE:-Long.MAX_VALUE;
+			long multiplyLimit=limit/10;
+			for(;i<end;i++){
+				int digit=charAt(i)-'0';
+				if(digit<0 || digit>9)throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
+				if(value<multiplyLimit || value*10<limit+digit){
+					throw new LazyException("'"+getStringValue()+"' does not fit in a long, use getBigInteger",startIndex);
 				}
+				value=value*10-digit;
 			}
-			return sign?value:-value;
 		}
-		throw new LazyException("Not a long",startIndex);
+		return negative?value:-value;
+	}
+
+	/**
+	 * Returns the number of bytes needed to store the value of this integer
+	 * token, or 0 if it does not fit in a long. For most values this is found
+	 * from the number of digits alone, without decoding them.
+	 *
+	 * @return 1, 2, 4 or 8 bytes, or 0 if the value does not fit in a long
+	 */
+	protected int getIntegerSize(){
+		int digits=endIndex-startIndex;
+		if(digits>0 && charAt(startIndex)=='-'){
+			digits--;
+		}
+		if(digits<=2)return 1;
+		if(digits==4)return 2;
+		if(digits>5 && digits<10)return 4;
+		if(digits>10 && digits<19)return 8;
+		if(digits>19)return 0;
+		long l;
+		try{
+			l=getLongValue();
+		}catch(LazyException e){
+			return 0;
+		}
+		if(l<128 && l>=-128)return 1;
+		if(l<32768 && l>=-32768)return 2;
+		if(l<=2147483647 && l>=-2147483648)return 4;
+		return 8;
+	}
+
+	/**
+	 * Parses the characters of this token as an arbitrarily large integer.
+	 * Fractional parts of floating point values are discarded.
+	 *
+	 * @return the integer value if it could be parsed
+	 * @throws LazyException if the value could not be parsed
+	 */
+	protected BigInteger getBigIntegerValue() throws LazyException{
+		if(type==VALUE_FLOAT){
+			return getBigDecimalValue().toBigInteger();
+		}
+		if(endIndex-startIndex<19){
+			return BigInteger.valueOf(getLongValue());
+		}
+		if(!(type==VALUE_INTEGER || type==VALUE_STRING || type==VALUE_ESTRING)){
+			throw new LazyException("Not an integer",startIndex);
+		}
+		try{
+			return new BigInteger(getStringValue());
+		}catch(NumberFormatException nfe){
+			throw new LazyException("'"+getStringValue()+"' is not a valid integer",startIndex);
+		}
+	}
+
+	/**
+	 * Parses the characters of this token as an exact decimal number.
+	 *
+	 * @return the decimal value if it could be parsed
+	 * @throws LazyException if the value could not be parsed
+	 */
+	protected BigDecimal getBigDecimalValue() throws LazyException{
+		if(type==VALUE_INTEGER && endIndex-startIndex<19){
+			return BigDecimal.valueOf(getLongValue());
+		}
+		if(!(type==VALUE_INTEGER || type==VALUE_FLOAT || type==VALUE_STRING || type==VALUE_ESTRING)){
+			throw new LazyException("Not a number",startIndex);
+		}
+		try{
+			return new BigDecimal(getStringValue());
+		}catch(NumberFormatException nfe){
+			throw new LazyException("'"+getStringValue()+"' is not a valid number",startIndex);
+		}
 	}
 
 	// protected double getDoubleValue(char[] source) throws LazyException{
@@ -384,13 +1016,24 @@ public final class LazyNode{
 	 * @throws LazyException if the value could not be parsed
 	 */
 	protected double getDoubleValue() throws LazyException{
-		double d=0.0;
-		String str=getStringValue();
-		try{
-			d=Double.parseDouble(str);
-		}catch(NumberFormatException nfe){
-			// This basically can't happen since we already validate the numeric format when parsing
-			// throw new LazyException("'"+str+"' is not a valid double",startIndex);
+		if(cached==CACHED_DOUBLE){
+			return Double.longBitsToDouble(cachedValue);
+		}
+		double d=LazyDoubleParser.parse(this,startIndex,endIndex);
+		if(d!=d){
+			// Not handled without creating a string
+			d=0.0;
+			String str=getStringValue();
+			try{
+				d=Double.parseDouble(str);
+			}catch(NumberFormatException nfe){
+				// This basically can't happen since we already validate the numeric format when parsing
+				// throw new LazyException("'"+str+"' is not a valid double",startIndex);
+			}
+		}
+		if(cache && cached==0){
+			cachedValue=Double.doubleToRawLongBits(d);
+			cached=CACHED_DOUBLE;
 		}
 		return d;
 	}
@@ -407,13 +1050,21 @@ public final class LazyNode{
 	 * @return the string value held by this token
 	 */
 	protected String getStringValue(){
+		if(cachedString!=null){
+			return cachedString;
+		}
+		String value=decodeStringValue();
+		if(cache){
+			cachedString=value;
+		}
+		return value;
+	}
+
+	private String decodeStringValue(){
 		if(type==VALUE_NULL){
 			return null;
 		}else if(!(type==VALUE_ESTRING||type==EFIELD)){
-			if(dirty){
-				return dirtyBuf.substring(startIndex,endIndex);
-			}
-			return new String(cbuf,startIndex,endIndex-startIndex);
+			return getRawStringValue();
 		}else{
 			StringBuilder buf=new StringBuilder(endIndex-startIndex);
 			if(dirty){
@@ -443,6 +1094,39 @@ public final class LazyNode{
 						buf.append(c);
 					}
 				}
+			}else if(cbuf==null){
+				// Byte backed token, decode runs of unescaped bytes as UTF-8
+				int run=startIndex;
+				for(int i=startIndex;i<endIndex;i++){
+					if(bbuf.get(i)=='\\'){
+						if(run<i){
+							buf.append(decodeUTF8(bbuf,run,i));
+						}
+						i++;
+						char c=(char)bbuf.get(i);
+						if(c=='"' || c=='\\' || c=='/'){
+							buf.append(c);
+						}else if(c=='b'){
+							buf.append('\b');
+						}else if(c=='f'){
+							buf.append('\f');
+						}else if(c=='n'){
+							buf.append('\n');
+						}else if(c=='r'){
+							buf.append('\r');
+						}else if(c=='t'){
+							buf.append('\t');
+						}else if(c=='u'){
+							String code=decodeUTF8(bbuf,i+1,i+5);
+							buf.append((char)Integer.parseInt(code, 16));
+							i+=4;
+						}
+						run=i+1;
+					}
+				}
+				if(run<endIndex){
+					buf.append(decodeUTF8(bbuf,run,endIndex));
+				}
 			}else{
 				for(int i=startIndex;i<endIndex;i++){
 					char c=cbuf[i];
@@ -478,9 +1162,184 @@ public final class LazyNode{
 	protected String getRawStringValue(){
 		if(dirty){
 			return dirtyBuf.substring(startIndex,endIndex);
-		}else{
+		}else if(cbuf!=null){
 			return new String(cbuf,startIndex,endIndex-startIndex);
+		}else{
+			return decodeUTF8(bbuf,startIndex,endIndex);
+		}
+	}
+
+	/**
+	 * Returns the characters of this token without copying them when
+	 * possible. Tokens without escaped characters in a character source are
+	 * returned as a read only view of the source, anything else as the string
+	 * value. A view reflects the source, so it is only valid as long as the source
+	 * is not reused.
+	 *
+	 * @return the characters of this token or null for a null value
+	 */
+	protected CharSequence getCharSequenceValue(){
+		if(cachedString!=null){
+			return cachedString;
+		}
+		if(type==VALUE_NULL || type==VALUE_ESTRING || type==EFIELD){
+			return getStringValue();
+		}
+		if(dirty){
+			return CharBuffer.wrap(dirtyBuf,startIndex,endIndex);
+		}else if(cbuf!=null){
+			return CharBuffer.wrap(cbuf,startIndex,endIndex-startIndex).asReadOnlyBuffer();
+		}
+		return getStringValue();
+	}
+
+	/**
+	 * Compares the string value of this token to the given string, without
+	 * creating a string unless the token contains escaped characters.
+	 *
+	 * @param str the string to compare with
+	 * @return true if the string value of this token equals the given string
+	 */
+	protected boolean valueEquals(String str){
+		if(type==VALUE_NULL){
+			return str==null;
+		}
+		if(str==null){
+			return false;
+		}
+		if(cachedString!=null){
+			return cachedString.equals(str);
+		}
+		if(type==VALUE_ESTRING || type==EFIELD){
+			return getStringValue().equals(str);
+		}
+		int length=str.length();
+		if(dirty || cbuf!=null){
+			if(endIndex-startIndex!=length){
+				return false;
+			}
+			return regionMatches(str,length);
+		}
+		return matchUTF8(str,length)==endIndex;
+	}
+
+	/**
+	 * Checks if the string value of this token starts with the given prefix,
+	 * without creating a string unless the token contains escaped characters.
+	 *
+	 * @param prefix the prefix to look for
+	 * @return true if the string value of this token starts with the prefix
+	 */
+	protected boolean valueStartsWith(String prefix){
+		if(type==VALUE_NULL){
+			return false;
+		}
+		if(cachedString!=null){
+			return cachedString.startsWith(prefix);
+		}
+		if(type==VALUE_ESTRING || type==EFIELD){
+			return getStringValue().startsWith(prefix);
+		}
+		int length=prefix.length();
+		if(dirty || cbuf!=null){
+			if(endIndex-startIndex<length){
+				return false;
+			}
+			return regionMatches(prefix,length);
+		}
+		return matchUTF8(prefix,length)>-1;
+	}
+
+	// Compares the first characters of a character backed token
+	private boolean regionMatches(String str,int length){
+		if(dirty){
+			for(int i=0;i<length;i++){
+				if(str.charAt(i)!=dirtyBuf.charAt(startIndex+i)){
+					return false;
+				}
+			}
+		}else{
+			for(int i=0;i<length;i++){
+				if(str.charAt(i)!=cbuf[startIndex+i]){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Decodes the UTF-8 bytes of this token while comparing them to the
+	// first characters of the given string. Returns the index of the first
+	// byte after the matched characters, or -1 if they do not match.
+	private int matchUTF8(String str,int length){
+		int n=startIndex;
+		int i=0;
+		while(i<length){
+			if(n>=endIndex){
+				return -1;
+			}
+			int b=bbuf.get(n) & 0xFF;
+			if(b<0x80){
+				if(str.charAt(i)!=b){
+					return -1;
+				}
+				n++;
+				i++;
+				continue;
+			}
+			int code;
+			int size;
+			if((b & 0xE0)==0xC0){
+				code=b & 0x1F;
+				size=2;
+			}else if((b & 0xF0)==0xE0){
+				code=b & 0x0F;
+				size=3;
+			}else if((b & 0xF8)==0xF0){
+				code=b & 0x07;
+				size=4;
+			}else{
+				return fallbackMatch(str,length);
+			}
+			if(n+size>endIndex){
+				return fallbackMatch(str,length);
+			}
+			for(int j=1;j<size;j++){
+				int c=bbuf.get(n+j) & 0xFF;
+				if((c & 0xC0)!=0x80){
+					return fallbackMatch(str,length);
+				}
+				code=(code<<6) | (c & 0x3F);
+			}
+			if(code<MIN_CODE[size] || code>0x10FFFF || (code>=0xD800 && code<=0xDFFF)){
+				// Overlong or invalid sequences are replaced when decoding
+				return fallbackMatch(str,length);
+			}
+			if(code>0xFFFF){
+				if(i+1>=length || str.charAt(i)!=Character.highSurrogate(code) || str.charAt(i+1)!=Character.lowSurrogate(code)){
+					return fallbackMatch(str,length);
+				}
+				i+=2;
+			}else{
+				if(str.charAt(i)!=code){
+					return fallbackMatch(str,length);
+				}
+				i++;
+			}
+			n+=size;
+		}
+		return n;
+	}
+
+	// Compares the decoded string value for data that is not simply valid
+	// UTF-8, or where a character may be split between the string and the
+	// rest of the value
+	private int fallbackMatch(String str,int length){
+		String value=getStringValue();
+		if(!value.regionMatches(0,str,0,length)){
+			return -1;
 		}
+		return value.length()==length?endIndex:endIndex-1;
 	}
 
 	/**
@@ -496,6 +1355,7 @@ public final class LazyNode{
 	// Debug method used for development purposes only
 
 	protected String toString(int pad){
+		expand();
 		String out="";
 		for(int i=0;i<pad;i++)out+=" ";
 		if(type==OBJECT){
@@ -518,7 +1378,7 @@ public final class LazyNode{
 		out+=":["+startIndex+","+endIndex+"]";
 		if(dirty)out+="d";
 		out+="\n";
-		if(child!=null){
+		if(type==OBJECT || type==ARRAY){
 			LazyNode token=child;
 			while(token!=null){
 				out+=token.toString(pad+2);
@@ -537,6 +1397,7 @@ public final class LazyNode{
 		private LazyNode next;
 
 		protected StringIterator(LazyNode token){
+			token.expand();
 			next=token.child;
 		}
 
@@ -559,6 +1420,7 @@ public final class LazyNode{
 	}
 	// Functionality for extracting templates
 	private void addCommaSeparatedChildren(Template template){
+		expand();
 		LazyNode next=child;
 		boolean first=true;
 		while(next!=null){
@@ -595,6 +1457,7 @@ public final class LazyNode{
 
 	protected void writeSegmentValues(ByteBuffer buf,DictionaryCache dict) throws BufferOverflowException{
 		if(type==OBJECT || type==ARRAY){
+			expand();
 			LazyNode next=child;
 			while(next!=null){
 				next.writeSegmentValues(buf,dict);
@@ -605,19 +1468,10 @@ public final class LazyNode{
 				buf.put((byte)1);
 			}else if(child.type==VALUE_FALSE){
 				buf.put((byte)0);
-			}else if(child.type==VALUE_STRING || type==VALUE_ESTRING){
+			}else if(child.type==VALUE_STRING || child.type==VALUE_ESTRING){
 				child.putString(buf,dict);
 			}else if(child.type==VALUE_INTEGER){
-				long l=child.getLongValue();
-				if(l<128 && l>=-128){
-					buf.put((byte)l);
-				}else if(l<32768 && l>=-32768){
-					buf.putShort((short)l);
-				}else if(l<=2147483647 && l>=-2147483648){
-					buf.putInt((int)l);
-				}else{
-					buf.putLong(l);
-				}
+				child.putInteger(buf);
 			}else if(child.type==VALUE_FLOAT){
 				buf.putDouble(child.getDoubleValue());
 			}else{
@@ -630,21 +1484,27 @@ public final class LazyNode{
 		}else if(type==VALUE_STRING || type==VALUE_ESTRING){
 			putString(buf,dict);
 		}else if(type==VALUE_INTEGER){
-			long l=getLongValue();
-			if(l<128 && l>=-128){
-				buf.put((byte)l);
-			}else if(l<32768 && l>=-32768){
-				buf.putShort((short)l);
-			}else if(l<=2147483647 && l>=-2147483648){
-				buf.putInt((int)l);
-			}else{
-				buf.putLong(l);
-			}
+			putInteger(buf);
 		}else if(type==VALUE_FLOAT){
 			buf.putDouble(getDoubleValue());
 		}
 	}
 
+	// Write the value of an integer token using the size chosen for it by
+	// addSegments. Integers too large for a long are part of the template.
+	private void putInteger(ByteBuffer buf) throws BufferOverflowException{
+		int size=getIntegerSize();
+		if(size==1){
+			buf.put((byte)getLongValue());
+		}else if(size==2){
+			buf.putShort((short)getLongValue());
+		}else if(size==4){
+			buf.putInt((int)getLongValue());
+		}else if(size==8){
+			buf.putLong(getLongValue());
+		}
+	}
+
 	protected void addSegments(Template template){
 		if(type==OBJECT){
 			template.addConstant("{");
@@ -661,13 +1521,13 @@ public final class LazyNode{
 				template.addString(getFieldString());
 			}else if(child.type==VALUE_NULL){
 				template.addNull(getFieldString());
-			}else if(child.type==VALUE_INTEGER){
-				long l=child.getLongValue();
-				if(l<128 && l>=-128){
+			}else if(child.type==VALUE_INTEGER && child.getIntegerSize()>0){
+				int size=child.getIntegerSize();
+				if(size==1){
 					template.addByte(getFieldString());
-				}else if(l<32768 && l>=-32768){
+				}else if(size==2){
 					template.addShort(getFieldString());
-				}else if(l<=2147483647 && l>=-2147483648){
+				}else if(size==4){
 					template.addInt(getFieldString());
 				}else{
 					template.addLong(getFieldString());
@@ -686,15 +1546,17 @@ public final class LazyNode{
 		}else if(type==VALUE_STRING){
 			template.addString();
 		}else if(type==VALUE_INTEGER){
-			long l=getLongValue();
-			if(l<128 && l>=-128){
+			int size=getIntegerSize();
+			if(size==1){
 				template.addByte();
-			}else if(l<32768 && l>=-32768){
+			}else if(size==2){
 				template.addShort();
-			}else if(l<=2147483647 && l>=-2147483648){
+			}else if(size==4){
 				template.addInt();
-			}else{
+			}else if(size==8){
 				template.addLong();
+			}else{
+				template.addConstant(getRawStringValue());
 			}
 		}else if(type==VALUE_FLOAT){
 			template.addDouble();
@@ -717,18 +1579,15 @@ public final class LazyNode{
 		node.endIndex=endIndex; 
 		if(type==OBJECT || type==ARRAY){
 			LazyNode child=readFromBuffer(buf);
-			node.child=child;
-			node.lastChild=child;
-			child=readFromBuffer(buf);
 			while(child!=null){
-				node.lastChild.next=child;
-				node.lastChild=child;
+				node.addChild(child);
 				child=readFromBuffer(buf);
 			}
 		}else if(type==FIELD){
 			LazyNode child=readFromBuffer(buf);
 			node.child=child;
 			node.lastChild=child;
+			child.parent=node;
 		}
 		return node;
 	}
@@ -739,6 +1598,7 @@ public final class LazyNode{
 		buf.putInt(startIndex);
 		buf.putInt(endIndex);
 		if(type==OBJECT || type==ARRAY){
+			expand();
 			LazyNode n=child;
 			while(n!=null){
 				n.writeToBuffer(buf);
@@ -753,6 +1613,7 @@ public final class LazyNode{
 	protected int getBufferSize(){
 		int size=1+4+4; // type, start and end index, modifier
 		if(type==OBJECT || type==ARRAY){
+			expand();
 			LazyNode n=child;
 			while(n!=null){
 				size+=n.getBufferSize();
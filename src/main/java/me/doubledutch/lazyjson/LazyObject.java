@@ -6,12 +6,17 @@ import java.util.Iterator;
 import java.util.HashSet;
 import java.util.Set;
 import java.nio.ByteBuffer;
+import java.math.BigInteger;
+import java.math.BigDecimal;
 
 /**
  * An object used to parse and inspect JSON data given in the form of a string.
  */
 public class LazyObject extends LazyElement{
 	public static final Object NULL=new Object();
+
+	// The number of fields a lookup may walk before an index is built
+	private static final int FIELD_INDEX_THRESHOLD=16;
 	/**
 	 * Create a new Lazy JSON object based on the JSON representation in the given string.
 	 *
@@ -19,13 +24,82 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the string could not be parsed as a JSON object
 	 */
 	public LazyObject(String raw) throws LazyException{
-		LazyParser parser=new LazyParser(raw);
-		parser.tokenize();	
+		this(new LazyParser(raw));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the JSON representation in the given
+	 * string using the given parser options.
+	 *
+	 * @param raw the input string
+	 * @param options the parser options to use, or null for the defaults
+	 * @throws LazyException if the string could not be parsed as a JSON object
+	 */
+	public LazyObject(String raw,LazyParserOptions options) throws LazyException{
+		this(new LazyParser(raw,options));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on UTF-8 encoded JSON data. The data is
+	 * parsed in place, so the given array must not be modified while this object
+	 * is in use.
+	 *
+	 * @param utf8 the input data
+	 * @param offset the index of the first byte of json data
+	 * @param len the number of bytes of json data
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(byte[] utf8,int offset,int len) throws LazyException{
+		this(new LazyParser(utf8,offset,len));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on UTF-8 encoded JSON data using the
+	 * given parser options.
+	 *
+	 * @param utf8 the input data
+	 * @param offset the index of the first byte of json data
+	 * @param len the number of bytes of json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(byte[] utf8,int offset,int len,LazyParserOptions options) throws LazyException{
+		this(new LazyParser(utf8,offset,len,options));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON data between
+	 * the position and limit of the given buffer. The buffer may be a heap
+	 * buffer, a direct buffer or a memory mapped file. The data is parsed in
+	 * place, so the buffer contents must not be modified while this object is
+	 * in use.
+	 *
+	 * @param buf the input data
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(ByteBuffer buf) throws LazyException{
+		this(new LazyParser(buf));
+	}
+
+	/**
+	 * Create a new Lazy JSON object based on the UTF-8 encoded JSON data between
+	 * the position and limit of the given buffer using the given parser options.
+	 *
+	 * @param buf the input data
+	 * @param options the parser options to use, or null for the defaults
+	 * @throws LazyException if the data could not be parsed as a JSON object
+	 */
+	public LazyObject(ByteBuffer buf,LazyParserOptions options) throws LazyException{
+		this(new LazyParser(buf,options));
+	}
+
+	private LazyObject(LazyParser parser) throws LazyException{
+		parser.tokenize();
 		if(parser.root.type!=LazyNode.OBJECT){
 			throw new LazyException("JSON Object must start with {",0);
 		}
 		root=parser.root;
-		// source=raw;
+		root.expand();
 	}
 
 	public LazyObject() throws LazyException{
@@ -60,125 +134,55 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the requested field did not exist
 	 */
 	public LazyType getType(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		switch(token.type){
-			case LazyNode.OBJECT: return LazyType.OBJECT;
-			case LazyNode.ARRAY: return LazyType.ARRAY;
-			case LazyNode.VALUE_TRUE: return LazyType.BOOLEAN;
-			case LazyNode.VALUE_FALSE: return LazyType.BOOLEAN;
-			case LazyNode.VALUE_NULL: return LazyType.NULL;
-			case LazyNode.VALUE_STRING: return LazyType.STRING;
-			case LazyNode.VALUE_ESTRING: return LazyType.STRING;
-			case LazyNode.VALUE_INTEGER: return LazyType.INTEGER;
-			case LazyNode.VALUE_FLOAT: return LazyType.FLOAT;
-		}
-		return null;
+		return getFieldToken(key).getLazyType();
+	}
+
+	/**
+	 * Returns the value type of the given field.
+	 *
+	 * @param key the prepared name of the requested field
+	 * @return the type of the value for the given field
+	 * @throws LazyException if the requested field did not exist
+	 */
+	public LazyType getType(LazyKey key) throws LazyException{
+		return getFieldToken(key).getLazyType();
 	}
 
 	public Object opt(String key) throws LazyException{
-		LazyNode token=getOptionalFieldToken(key);
-		if(token!=null){
-			switch(token.type){
-				case LazyNode.OBJECT: LazyObject obj=new LazyObject(token);
-									  obj.parent=this;
-									  return obj;
-				case LazyNode.ARRAY: LazyArray arr= new LazyArray(token);
-									 arr.parent=this;
-									 return arr;
-				case LazyNode.VALUE_TRUE: return (Boolean)true;
-				case LazyNode.VALUE_FALSE: return (Boolean)false;
-				case LazyNode.VALUE_NULL: return LazyObject.NULL;
-				case LazyNode.VALUE_STRING: return token.getStringValue();
-				case LazyNode.VALUE_ESTRING: return token.getStringValue();
-				case LazyNode.VALUE_INTEGER: return (Long)token.getLongValue();
-				case LazyNode.VALUE_FLOAT: return (Double)token.getDoubleValue();
-			}
-		}
-		return null;
+		return getValue(getOptionalFieldToken(key));
+	}
+
+	public Object opt(LazyKey key) throws LazyException{
+		return getValue(getOptionalFieldToken(key));
 	}
 
 	public Object get(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		if(token!=null){
-			switch(token.type){
-				case LazyNode.OBJECT: LazyObject obj=new LazyObject(token);
-									  obj.parent=this;
-									  return obj;
-				case LazyNode.ARRAY: LazyArray arr= new LazyArray(token);
-									 arr.parent=this;
-									 return arr;
-				case LazyNode.VALUE_TRUE: return (Boolean)true;
-				case LazyNode.VALUE_FALSE: return (Boolean)false;
-				case LazyNode.VALUE_NULL: return LazyObject.NULL;
-				case LazyNode.VALUE_STRING: return token.getStringValue();
-				case LazyNode.VALUE_ESTRING: return token.getStringValue();
-				case LazyNode.VALUE_INTEGER: return (Long)token.getLongValue();
-				case LazyNode.VALUE_FLOAT: return (Double)token.getDoubleValue();
-			}
-		}
-		// Should never happen
-		return null;
+		return getValue(getFieldToken(key));
+	}
+
+	public Object get(LazyKey key) throws LazyException{
+		return getValue(getFieldToken(key));
 	}
 
 	public Object remove(String key) throws LazyException{
 		Object obj=opt(key); // TODO: should this be get instead of opt?
 		LazyNode token=getOptionalField(key);
 		if(token!=null){
-			// System.out.println("found the token!");
-			LazyNode pointer=this.root.child;
-			if(pointer==token){
-				root.child=token.next;
-				if(root.lastChild==pointer){
-					root.lastChild=null;
-				}
-			}else{
-				while(pointer!=null){
-					if(pointer.next==token){
-						pointer.next=token.next;
-					}
-					pointer=pointer.next;
-				}
+			LazyFieldIndex index=root.fieldIndex;
+			if(index!=null && !index.remove(token)){
+				// Rebuilt on demand, since another field with the same name
+				// has to take the place of the removed one
+				root.fieldIndex=null;
 			}
-			root.dirty=true;
-		}
-		return obj;
-	}
-
-	protected String serializeElementToString(){
-		StringBuilder buf=new StringBuilder();
-		buf.append("{");
-		LazyNode pointer=root.child;
-		boolean first=true;
-		while(pointer!=null){
-			if(first){
-				first=false;
-			}else{
-				buf.append(",");
+			root.removeChild(token);
+			if(token.child.parent==token){
+				token.child.parent=null;
 			}
-			buf.append("\"");
-			buf.append(pointer.getStringValue());
-			buf.append("\":");
-			if(pointer.child.type==LazyNode.OBJECT){
-				buf.append(new LazyObject(pointer.child).toString());
-			}else if(pointer.child.type==LazyNode.ARRAY){
-				buf.append(new LazyArray(pointer.child).toString());
-			}else if(pointer.child.type==LazyNode.VALUE_STRING || pointer.child.type==LazyNode.VALUE_ESTRING){
-				buf.append("\"");
-				buf.append(pointer.child.getRawStringValue());
-				buf.append("\"");
-			}else if(pointer.child.type==LazyNode.VALUE_TRUE){
-				buf.append("true");
-			}else if(pointer.child.type==LazyNode.VALUE_FALSE){
-				buf.append("false");
-			}else if(pointer.child.type==LazyNode.VALUE_NULL){
-				buf.append("null");
-			}else{
-				buf.append(pointer.child.getStringValue());
-			}
-			pointer=pointer.next;
+			root.markModified();
+			root.discard(token);
+			root.compactIfWasteful();
 		}
-		buf.append("}");
-		return buf.toString();
+		return obj;
 	}
 
 	private void attachField(String key,LazyNode child) throws LazyException{
@@ -193,16 +197,22 @@ public class LazyObject extends LazyElement{
 			// TODO: we should be encoding the value
 			dirtyBuf.append(key);
 			token.endIndex=dirtyBuf.length();
-			if(root.child==null){
-				root.child=token;
-				root.lastChild=token;
-			}else{
-				root.lastChild.next=token;
-				root.lastChild=token;
+			root.appendChild(token);
+			LazyFieldIndex index=root.fieldIndex;
+			if(index!=null){
+				index.add(token);
+			}
+		}else{
+			root.discard(token.child);
+			if(token.child.parent==token){
+				token.child.parent=null;
 			}
 		}
+		token.adopt(child);
 		token.child=child;
 		token.lastChild=child;
+		root.markModified();
+		root.compactIfWasteful();
 	}
 
 	public LazyObject put(String key,String value) throws LazyException{
@@ -334,8 +344,18 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the value for the given key was not a string.
 	 */
 	public String getString(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		return token.getStringValue();
+		return getFieldToken(key).getStringValue();
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested string value
+	 * @throws LazyException if the value for the given key was not a string.
+	 */
+	public String getString(LazyKey key) throws LazyException{
+		return getFieldToken(key).getStringValue();
 	}
 
 	/**
@@ -346,10 +366,18 @@ public class LazyObject extends LazyElement{
 	 * @return the requested string value or null if there was no such key
 	 */
 	public String optString(String key){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return null;
-		if(token.type==LazyNode.VALUE_NULL)return null;
-		return token.getStringValue();
+		return optString(getOptionalFieldToken(key),null);
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 * Returns null if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested string value or null if there was no such key
+	 */
+	public String optString(LazyKey key){
+		return optString(getOptionalFieldToken(key),null);
 	}
 
 	/**
@@ -361,10 +389,99 @@ public class LazyObject extends LazyElement{
 	 * @return the requested string value or the default value if there was no such key
 	 */
 	public String optString(String key,String defaultValue){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return defaultValue;
-		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getStringValue();
+		return optString(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested string value or the default value if there was no such key
+	 */
+	public String optString(LazyKey key,String defaultValue){
+		return optString(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key as a
+	 * sequence of characters. If the value has no escaped characters and was
+	 * parsed from a character source, the characters are not copied. The
+	 * returned sequence is only valid until the source is reused.
+	 *
+	 * @param key the name of the field on this object
+	 * @return the requested characters or null for a null value
+	 * @throws LazyException if there is no such key
+	 */
+	public CharSequence getCharSequence(String key) throws LazyException{
+		return getFieldToken(key).getCharSequenceValue();
+	}
+
+	/**
+	 * Returns the string value stored in this object for the given key as a
+	 * sequence of characters. If the value has no escaped characters and was
+	 * parsed from a character source, the characters are not copied. The
+	 * returned sequence is only valid until the source is reused.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested characters or null for a null value
+	 * @throws LazyException if there is no such key
+	 */
+	public CharSequence getCharSequence(LazyKey key) throws LazyException{
+		return getFieldToken(key).getCharSequenceValue();
+	}
+
+	/**
+	 * Returns true if the value stored in this object for the given key is
+	 * equal to the given string. No string is created for the value unless
+	 * it contains escaped characters.
+	 *
+	 * @param key the name of the field on this object
+	 * @param value the string to compare with, or null to check for a null value
+	 * @return true if the value equals the string, false otherwise or if there is no such key
+	 */
+	public boolean stringEquals(String key,String value){
+		return stringEquals(getOptionalFieldToken(key),value);
+	}
+
+	/**
+	 * Returns true if the value stored in this object for the given key is
+	 * equal to the given string. No string is created for the value unless
+	 * it contains escaped characters.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param value the string to compare with, or null to check for a null value
+	 * @return true if the value equals the string, false otherwise or if there is no such key
+	 */
+	public boolean stringEquals(LazyKey key,String value){
+		return stringEquals(getOptionalFieldToken(key),value);
+	}
+
+	/**
+	 * Returns true if the value stored in this object for the given key
+	 * starts with the given prefix. No string is created for the value unless
+	 * it contains escaped characters.
+	 *
+	 * @param key the name of the field on this object
+	 * @param prefix the prefix to look for
+	 * @return true if the value starts with the prefix, false otherwise or if there is no such key
+	 */
+	public boolean startsWith(String key,String prefix){
+		return startsWith(getOptionalFieldToken(key),prefix);
+	}
+
+	/**
+	 * Returns true if the value stored in this object for the given key
+	 * starts with the given prefix. No string is created for the value unless
+	 * it contains escaped characters.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param prefix the prefix to look for
+	 * @return true if the value starts with the prefix, false otherwise or if there is no such key
+	 */
+	public boolean startsWith(LazyKey key,String prefix){
+		return startsWith(getOptionalFieldToken(key),prefix);
 	}
 
 	/**
@@ -375,8 +492,18 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the value for the given key was not an integer.
 	 */
 	public int getInt(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		return token.getIntValue();
+		return getFieldToken(key).getIntValue();
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an integer value
+	 * @throws LazyException if the value for the given key was not an integer.
+	 */
+	public int getInt(LazyKey key) throws LazyException{
+		return getFieldToken(key).getIntValue();
 	}
 
 	/**
@@ -387,10 +514,18 @@ public class LazyObject extends LazyElement{
 	 * @return the requested integer value or 0 if there was no such key
 	 */
 	public int optInt(String key){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return 0;
-		if(token.type==LazyNode.VALUE_NULL)return 0;
-		return token.getIntValue();
+		return optInt(getOptionalFieldToken(key),0);
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 * Returns 0 if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested integer value or 0 if there was no such key
+	 */
+	public int optInt(LazyKey key){
+		return optInt(getOptionalFieldToken(key),0);
 	}
 
 	/**
@@ -402,10 +537,19 @@ public class LazyObject extends LazyElement{
 	 * @return the requested integer value or the default value if there was no such key
 	 */
 	public int optInt(String key,int defaultValue){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return defaultValue;
-		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getIntValue();
+		return optInt(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the integer value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested integer value or the default value if there was no such key
+	 */
+	public int optInt(LazyKey key,int defaultValue){
+		return optInt(getOptionalFieldToken(key),defaultValue);
 	}
 
 	/**
@@ -416,8 +560,18 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the value for the given key was not a long.
 	 */
 	public long getLong(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		return token.getLongValue();
+		return getFieldToken(key).getLongValue();
+	}
+
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a long.
+	 */
+	public long getLong(LazyKey key) throws LazyException{
+		return getFieldToken(key).getLongValue();
 	}
 
 	/**
@@ -428,10 +582,18 @@ public class LazyObject extends LazyElement{
 	 * @return the requested long value or 0 if there was no such key
 	 */
 	public long optLong(String key){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return 0l;
-		if(token.type==LazyNode.VALUE_NULL)return 0l;
-		return token.getLongValue();
+		return optLong(getOptionalFieldToken(key),0l);
+	}
+
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 * Returns 0 if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested long value or 0 if there was no such key
+	 */
+	public long optLong(LazyKey key){
+		return optLong(getOptionalFieldToken(key),0l);
 	}
 
 	/**
@@ -443,10 +605,19 @@ public class LazyObject extends LazyElement{
 	 * @return the requested long value or the default value if there was no such key
 	 */
 	public long optLong(String key,long defaultValue){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return defaultValue;
-		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getLongValue();
+		return optLong(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the long value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested long value or the default value if there was no such key
+	 */
+	public long optLong(LazyKey key,long defaultValue){
+		return optLong(getOptionalFieldToken(key),defaultValue);
 	}
 
 	/**
@@ -457,8 +628,18 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the value for the given key was not a double.
 	 */
 	public double getDouble(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		return token.getDoubleValue();
+		return getFieldToken(key).getDoubleValue();
+	}
+
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a double.
+	 */
+	public double getDouble(LazyKey key) throws LazyException{
+		return getFieldToken(key).getDoubleValue();
 	}
 
 	/**
@@ -469,10 +650,18 @@ public class LazyObject extends LazyElement{
 	 * @return the requested double value or 0.0 if there was no such key
 	 */
 	public double optDouble(String key){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return 0.0;
-		if(token.type==LazyNode.VALUE_NULL)return 0.0;
-		return token.getDoubleValue();
+		return optDouble(getOptionalFieldToken(key),0.0);
+	}
+
+	/**
+	 * Returns the double value stored in this object for the given key.
+	 * Returns 0.0 if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested double value or 0.0 if there was no such key
+	 */
+	public double optDouble(LazyKey key){
+		return optDouble(getOptionalFieldToken(key),0.0);
 	}
 
 	/**
@@ -484,103 +673,267 @@ public class LazyObject extends LazyElement{
 	 * @return the requested long value or the default value if there was no such key
 	 */
 	public double optDouble(String key,double defaultValue){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return defaultValue;
-		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		return token.getDoubleValue();
+		return optDouble(getOptionalFieldToken(key),defaultValue);
 	}
 
 	/**
-	 * Returns true if the value stored in this object for the given key is null.
+	 * Returns the double value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
 	 *
-	 * @param key the name of the field on this object
-	 * @return true if the value is null, false otherwise
-	 * @throws LazyException if no value was set for the given key.
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested long value or the default value if there was no such key
 	 */
-	public boolean isNull(String key){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return true;
-		if(token.type==LazyNode.VALUE_NULL)return true;
-		return false;
+	public double optDouble(LazyKey key,double defaultValue){
+		return optDouble(getOptionalFieldToken(key),defaultValue);
 	}
 
 	/**
-	 * Returns the boolean value stored in this object for the given key.
+	 * Returns the BigInteger value stored in this object for the given key.
 	 *
 	 * @param key the name of the field on this object
-	 * @return a boolean value
-	 * @throws LazyException if the value for the given key was not a boolean.
+	 * @return the requested BigInteger value
+	 * @throws LazyException if the value for the given key was not a number.
 	 */
-	public boolean getBoolean(String key){
-		LazyNode token=getFieldToken(key);
-		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
-			String str=token.getStringValue().toLowerCase().trim();
-			if(str.equals("true"))return true;
-			if(str.equals("false"))return false;
-			throw new LazyException("Requested value is not a boolean",token);
-		}
-		if(token.type==LazyNode.VALUE_TRUE)return true;
-		if(token.type==LazyNode.VALUE_FALSE)return false;
-		throw new LazyException("Requested value is not a boolean",token);
+	public BigInteger getBigInteger(String key) throws LazyException{
+		return getFieldToken(key).getBigIntegerValue();
 	}
 
 	/**
-	 * Returns the boolean value stored in this object for the given key.
-	 * Returns false if there is no such key.
+	 * Returns the BigInteger value stored in this object for the given key.
 	 *
-	 * @param key the name of the field on this object
-	 * @return the requested boolean value or false if there was no such key
+	 * @param key the prepared name of the field on this object
+	 * @return the requested BigInteger value
+	 * @throws LazyException if the value for the given key was not a number.
 	 */
-	public boolean optBoolean(String key){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return false;
-		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
-			String str=token.getStringValue().toLowerCase().trim();
-			if(str.equals("true"))return true;
-			if(str.equals("false"))return false;
-			throw new LazyException("Requested value is not a boolean",token);
-		}
-		// if(token.type==LazyNode.VALUE_NULL)return false;
-		if(token.type==LazyNode.VALUE_TRUE)return true;
-		// if(token.type==LazyNode.VALUE_FALSE)return false;
-		return false;
+	public BigInteger getBigInteger(LazyKey key) throws LazyException{
+		return getFieldToken(key).getBigIntegerValue();
 	}
 
 	/**
-	 * Returns the boolean value stored in this object for the given key.
-	 * Returns the default value if there is no such key.
+	 * Returns the BigInteger value stored in this object for the given key.
+	 * Returns null if there is no such key.
 	 *
 	 * @param key the name of the field on this object
-	 * @param defaultValue the default value to return
-	 * @return the requested boolean value or the default value if there was no such key
+	 * @return the requested BigInteger value or null if there was no such key
 	 */
-	public boolean optBoolean(String key,boolean defaultValue){
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return defaultValue;
-		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
-		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
-			String str=token.getStringValue().toLowerCase().trim();
-			if(str.equals("true"))return true;
-			if(str.equals("false"))return false;
-			throw new LazyException("Requested value is not a boolean",token);
-		}
-		if(token.type==LazyNode.VALUE_TRUE)return true;
-		return false;
+	public BigInteger optBigInteger(String key){
+		return optBigInteger(getOptionalFieldToken(key),null);
 	}
 
 	/**
-	 * Returns the JSON object stored in this object for the given key.
+	 * Returns the BigInteger value stored in this object for the given key.
+	 * Returns null if there is no such key.
 	 *
-	 * @param key the name of the field on this object
-	 * @return an array value
-	 * @throws LazyException if the value for the given key was not an object.
+	 * @param key the prepared name of the field on this object
+	 * @return the requested BigInteger value or null if there was no such key
 	 */
-	public LazyObject getJSONObject(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
-		LazyObject obj=new LazyObject(token);
-		obj.parent=this;
-		return obj;
+	public BigInteger optBigInteger(LazyKey key){
+		return optBigInteger(getOptionalFieldToken(key),null);
+	}
+
+	/**
+	 * Returns the BigInteger value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested BigInteger value or the default value if there was no such key
+	 */
+	public BigInteger optBigInteger(String key,BigInteger defaultValue){
+		return optBigInteger(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the BigInteger value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested BigInteger value or the default value if there was no such key
+	 */
+	public BigInteger optBigInteger(LazyKey key,BigInteger defaultValue){
+		return optBigInteger(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the BigDecimal value stored in this object for the given key.
+	 *
+	 * @param key the name of the field on this object
+	 * @return the requested BigDecimal value
+	 * @throws LazyException if the value for the given key was not a number.
+	 */
+	public BigDecimal getBigDecimal(String key) throws LazyException{
+		return getFieldToken(key).getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the BigDecimal value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested BigDecimal value
+	 * @throws LazyException if the value for the given key was not a number.
+	 */
+	public BigDecimal getBigDecimal(LazyKey key) throws LazyException{
+		return getFieldToken(key).getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the BigDecimal value stored in this object for the given key.
+	 * Returns null if there is no such key.
+	 *
+	 * @param key the name of the field on this object
+	 * @return the requested BigDecimal value or null if there was no such key
+	 */
+	public BigDecimal optBigDecimal(String key){
+		return optBigDecimal(getOptionalFieldToken(key),null);
+	}
+
+	/**
+	 * Returns the BigDecimal value stored in this object for the given key.
+	 * Returns null if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested BigDecimal value or null if there was no such key
+	 */
+	public BigDecimal optBigDecimal(LazyKey key){
+		return optBigDecimal(getOptionalFieldToken(key),null);
+	}
+
+	/**
+	 * Returns the BigDecimal value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested BigDecimal value or the default value if there was no such key
+	 */
+	public BigDecimal optBigDecimal(String key,BigDecimal defaultValue){
+		return optBigDecimal(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the BigDecimal value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested BigDecimal value or the default value if there was no such key
+	 */
+	public BigDecimal optBigDecimal(LazyKey key,BigDecimal defaultValue){
+		return optBigDecimal(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns true if the value stored in this object for the given key is null.
+	 *
+	 * @param key the name of the field on this object
+	 * @return true if the value is null, false otherwise
+	 * @throws LazyException if no value was set for the given key.
+	 */
+	public boolean isNull(String key){
+		return isNull(getOptionalFieldToken(key));
+	}
+
+	/**
+	 * Returns true if the value stored in this object for the given key is null.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return true if the value is null, false otherwise
+	 * @throws LazyException if no value was set for the given key.
+	 */
+	public boolean isNull(LazyKey key){
+		return isNull(getOptionalFieldToken(key));
+	}
+
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 *
+	 * @param key the name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a boolean.
+	 */
+	public boolean getBoolean(String key){
+		return getFieldToken(key).getBooleanValue();
+	}
+
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return a boolean value
+	 * @throws LazyException if the value for the given key was not a boolean.
+	 */
+	public boolean getBoolean(LazyKey key){
+		return getFieldToken(key).getBooleanValue();
+	}
+
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns false if there is no such key.
+	 *
+	 * @param key the name of the field on this object
+	 * @return the requested boolean value or false if there was no such key
+	 */
+	public boolean optBoolean(String key){
+		return optBoolean(getOptionalFieldToken(key),false);
+	}
+
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns false if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return the requested boolean value or false if there was no such key
+	 */
+	public boolean optBoolean(LazyKey key){
+		return optBoolean(getOptionalFieldToken(key),false);
+	}
+
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested boolean value or the default value if there was no such key
+	 */
+	public boolean optBoolean(String key,boolean defaultValue){
+		return optBoolean(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the boolean value stored in this object for the given key.
+	 * Returns the default value if there is no such key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @param defaultValue the default value to return
+	 * @return the requested boolean value or the default value if there was no such key
+	 */
+	public boolean optBoolean(LazyKey key,boolean defaultValue){
+		return optBoolean(getOptionalFieldToken(key),defaultValue);
+	}
+
+	/**
+	 * Returns the JSON object stored in this object for the given key.
+	 *
+	 * @param key the name of the field on this object
+	 * @return an array value
+	 * @throws LazyException if the value for the given key was not an object.
+	 */
+	public LazyObject getJSONObject(String key) throws LazyException{
+		return getJSONObject(getFieldToken(key));
+	}
+
+	/**
+	 * Returns the JSON object stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an array value
+	 * @throws LazyException if the value for the given key was not an object.
+	 */
+	public LazyObject getJSONObject(LazyKey key) throws LazyException{
+		return getJSONObject(getFieldToken(key));
 	}
 
 	/**
@@ -591,13 +944,18 @@ public class LazyObject extends LazyElement{
 	 * @return an object value or null if there was no such key
 	 */
 	public LazyObject optJSONObject(String key) throws LazyException{
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return null;
-		if(token.type==LazyNode.VALUE_NULL)return null;
-		if(token.type!=LazyNode.OBJECT)return null;
-		LazyObject obj=new LazyObject(token);
-		obj.parent=this;
-		return obj;
+		return optJSONObject(getOptionalFieldToken(key));
+	}
+
+	/**
+	 * Returns the JSON object stored in this object for the given key on null if the key doesn't exist.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @throws LazyException if the value for the given key was not an object.
+	 * @return an object value or null if there was no such key
+	 */
+	public LazyObject optJSONObject(LazyKey key) throws LazyException{
+		return optJSONObject(getOptionalFieldToken(key));
 	}
 
 	/**
@@ -608,11 +966,18 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the value for the given key was not an array.
 	 */
 	public LazyArray getJSONArray(String key) throws LazyException{
-		LazyNode token=getFieldToken(key);
-		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
-		LazyArray arr=new LazyArray(token);
-		arr.parent=this;
-		return arr;
+		return getJSONArray(getFieldToken(key));
+	}
+
+	/**
+	 * Returns the JSON array stored in this object for the given key.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an array value
+	 * @throws LazyException if the value for the given key was not an array.
+	 */
+	public LazyArray getJSONArray(LazyKey key) throws LazyException{
+		return getJSONArray(getFieldToken(key));
 	}
 
 	/**
@@ -623,13 +988,18 @@ public class LazyObject extends LazyElement{
 	 * @throws LazyException if the value for the given key was not an array.
 	 */
 	public LazyArray optJSONArray(String key) throws LazyException{
-		LazyNode token=getOptionalFieldToken(key);
-		if(token==null)return null;
-		if(token.type==LazyNode.VALUE_NULL)return null;
-		if(token.type!=LazyNode.ARRAY)return null;
-		LazyArray arr=new LazyArray(token);
-		arr.parent=this;
-		return arr;
+		return optJSONArray(getOptionalFieldToken(key));
+	}
+
+	/**
+	 * Returns the JSON array stored in this object for the given key or null if the key doesn't exist.
+	 *
+	 * @param key the prepared name of the field on this object
+	 * @return an array value or null if the key doesn't exist
+	 * @throws LazyException if the value for the given key was not an array.
+	 */
+	public LazyArray optJSONArray(LazyKey key) throws LazyException{
+		return optJSONArray(getOptionalFieldToken(key));
 	}
 
 	/**
@@ -699,34 +1069,119 @@ public class LazyObject extends LazyElement{
 	 * @param token the field token
 	 * @return true if the key matches, false otherwise
 	 */
-	private boolean keyMatch(String key,LazyNode token){
+	protected static boolean keyMatch(String key,LazyNode token){
+		return keyMatch(key,null,key.hashCode(),token);
+	}
+
+	/**
+	 * Utility method to evaluate wether a prepared key matches the value of
+	 * a field.
+	 *
+	 * @param key the key to compare a token to
+	 * @param token the field token
+	 * @return true if the key matches, false otherwise
+	 */
+	protected static boolean keyMatch(LazyKey key,LazyNode token){
+		return keyMatch(key.name,key,key.hash,token);
+	}
+
+	/**
+	 * Compare a field name to a field token. Field names hashed by the parser
+	 * are rejected by hash without looking at a single character. Byte backed
+	 * fields are compared to the UTF-8 encoding of a prepared key, or to the
+	 * characters of a plain String as long as they are ASCII, so no field is
+	 * decoded unless it contains escape codes.
+	 *
+	 * @param name the name to compare a token to
+	 * @param key the prepared key for the name or null
+	 * @param hash the hash code of the name
+	 * @param token the field token
+	 * @return true if the name matches, false otherwise
+	 */
+	protected static boolean keyMatch(String name,LazyKey key,int hash,LazyNode token){
+		if(token.hash!=0 && token.hash!=hash){
+			return false;
+		}
 		if(token.type==LazyNode.EFIELD){
-			String field=token.getStringValue();
-			return field.equals(key);
-		}else{
-			// Quickly check the length first
-			int length=key.length();
-			if(token.endIndex-token.startIndex!=length){
-				return false;
+			return token.getStringValue().equals(name);
+		}
+		if(!token.dirty && token.cbuf==null){
+			if(key!=null){
+				return keyMatchBytes(key.utf8,token);
 			}
-			// Now go through the field character for character to compare
-			if(token.dirty){
-				for(int i=0;i<length;i++){
-					char c=key.charAt(i);
-					if(c!=token.dirtyBuf.charAt(token.startIndex+i)){
-						return false;
-					}
+			return keyMatchBytes(name,token);
+		}
+		// Quickly check the length first
+		int start=token.startIndex;
+		int length=name.length();
+		if(token.endIndex-start!=length){
+			return false;
+		}
+		// Now go through the field character for character to compare
+		if(token.dirty){
+			for(int i=0;i<length;i++){
+				if(name.charAt(i)!=token.dirtyBuf.charAt(start+i)){
+					return false;
 				}
-			}else{
-				for(int i=0;i<length;i++){
-					char c=key.charAt(i);
-					if(c!=token.cbuf[token.startIndex+i]){
-						return false;
-					}
+			}
+		}else{
+			char[] cbuf=token.cbuf;
+			for(int i=0;i<length;i++){
+				if(name.charAt(i)!=cbuf[start+i]){
+					return false;
 				}
 			}
-			return true;
 		}
+		return true;
+	}
+
+	/**
+	 * Compare a key to a field token backed by UTF-8 encoded data. ASCII
+	 * characters are compared directly to the source bytes, anything else
+	 * falls back to decoding the field.
+	 *
+	 * @param key the key to compare a token to
+	 * @param token the field token
+	 * @return true if the key matches, false otherwise
+	 */
+	private static boolean keyMatchBytes(String key,LazyNode token){
+		int length=key.length();
+		int size=token.endIndex-token.startIndex;
+		// An encoded string is never shorter than its character count
+		if(size<length){
+			return false;
+		}
+		for(int i=0;i<length;i++){
+			char c=key.charAt(i);
+			if(c>0x7F){
+				return token.getStringValue().equals(key);
+			}
+			if(c!=token.bbuf.get(token.startIndex+i)){
+				return false;
+			}
+		}
+		return size==length;
+	}
+
+	/**
+	 * Compare the UTF-8 encoding of a key to a field token backed by UTF-8
+	 * encoded data.
+	 *
+	 * @param utf8 the encoded key
+	 * @param token the field token
+	 * @return true if the key matches, false otherwise
+	 */
+	private static boolean keyMatchBytes(byte[] utf8,LazyNode token){
+		int start=token.startIndex;
+		if(token.endIndex-start!=utf8.length){
+			return false;
+		}
+		for(int i=0;i<utf8.length;i++){
+			if(utf8[i]!=token.bbuf.get(start+i)){
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -736,35 +1191,194 @@ public class LazyObject extends LazyElement{
 	 * @return true if the key exists, false otherwise
 	 */
 	public boolean has(String key){
-		LazyNode child=root.child;
-		while(child!=null){
-			if(keyMatch(key,child)){
-				return true;
-			}
-			child=child.next;
+		return getOptionalField(key)!=null;
+	}
+
+	/**
+	 * Returns true if the given key matches a field on this object.
+	 *
+	 * @param key the prepared name of the field to look for
+	 * @return true if the key exists, false otherwise
+	 */
+	public boolean has(LazyKey key){
+		return getOptionalField(key)!=null;
+	}
+
+	/**
+	 * Finds the values of all fields in a field set with a single walk over
+	 * the fields of this object, storing them in the given holder.
+	 *
+	 * @param fields the fields to look for
+	 * @param values a holder created by the field set, refilled by this call
+	 * @return the given holder
+	 */
+	public LazyFieldValues getFields(LazyFieldSet fields,LazyFieldValues values){
+		values.fill(fields,this);
+		return values;
+	}
+
+	/**
+	 * Finds the values of all fields in a field set with a single walk over
+	 * the fields of this object.
+	 *
+	 * @param fields the fields to look for
+	 * @return a new holder with the values of the fields
+	 */
+	public LazyFieldValues getFields(LazyFieldSet fields){
+		return getFields(fields,fields.newValues());
+	}
+
+
+	// The accessors below work on the value token of a field and are shared
+	// by the String and LazyKey versions of the public methods. The optional
+	// versions are given null if there is no such field.
+
+	private Object getValue(LazyNode token){
+		if(token==null)return null;
+		switch(token.type){
+			case LazyNode.OBJECT: LazyObject obj=new LazyObject(token);
+								  obj.parent=this;
+								  return obj;
+			case LazyNode.ARRAY: LazyArray arr= new LazyArray(token);
+								 arr.parent=this;
+								 return arr;
+			case LazyNode.VALUE_TRUE: return (Boolean)true;
+			case LazyNode.VALUE_FALSE: return (Boolean)false;
+			case LazyNode.VALUE_NULL: return LazyObject.NULL;
+			case LazyNode.VALUE_STRING: return token.getStringValue();
+			case LazyNode.VALUE_ESTRING: return token.getStringValue();
+			case LazyNode.VALUE_INTEGER: return (Long)token.getLongValue();
+			case LazyNode.VALUE_FLOAT: return (Double)token.getDoubleValue();
+		}
+		return null;
+	}
+
+	private static String optString(LazyNode token,String defaultValue){
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getStringValue();
+	}
+
+	private static boolean stringEquals(LazyNode token,String value){
+		if(token==null)return false;
+		return token.valueEquals(value);
+	}
+
+	private static boolean startsWith(LazyNode token,String prefix){
+		if(token==null)return false;
+		return token.valueStartsWith(prefix);
+	}
+
+	private static int optInt(LazyNode token,int defaultValue){
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getIntValue();
+	}
+
+	private static long optLong(LazyNode token,long defaultValue){
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getLongValue();
+	}
+
+	private static double optDouble(LazyNode token,double defaultValue){
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getDoubleValue();
+	}
+
+	private static BigInteger optBigInteger(LazyNode token,BigInteger defaultValue){
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigIntegerValue();
+	}
+
+	private static BigDecimal optBigDecimal(LazyNode token,BigDecimal defaultValue){
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBigDecimalValue();
+	}
+
+	private static boolean isNull(LazyNode token){
+		if(token==null)return true;
+		if(token.type==LazyNode.VALUE_NULL)return true;
+		return false;
+	}
+
+	private static boolean optBoolean(LazyNode token,boolean defaultValue){
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		if(token.type==LazyNode.VALUE_STRING || token.type==LazyNode.VALUE_ESTRING){
+			return token.getBooleanValue();
 		}
+		// Other values that are not booleans have always read as false
+		if(token.type==LazyNode.VALUE_TRUE)return true;
 		return false;
 	}
 
+	private LazyObject getJSONObject(LazyNode token) throws LazyException{
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		LazyObject obj=new LazyObject(token);
+		obj.parent=this;
+		return obj;
+	}
+
+	private LazyObject optJSONObject(LazyNode token){
+		if(token==null)return null;
+		if(token.type!=LazyNode.OBJECT)return null;
+		LazyObject obj=new LazyObject(token);
+		obj.parent=this;
+		return obj;
+	}
+
+	private LazyArray getJSONArray(LazyNode token) throws LazyException{
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		LazyArray arr=new LazyArray(token);
+		arr.parent=this;
+		return arr;
+	}
+
+	private LazyArray optJSONArray(LazyNode token){
+		if(token==null)return null;
+		if(token.type!=LazyNode.ARRAY)return null;
+		LazyArray arr=new LazyArray(token);
+		arr.parent=this;
+		return arr;
+	}
+
+	private LazyNode getFieldToken(String key) throws LazyException{
+		return getFieldToken(key,null);
+	}
+
+	private LazyNode getFieldToken(LazyKey key) throws LazyException{
+		return getFieldToken(key.name,key);
+	}
+
 	/**
 	 * Fields for an object are attached as children on the token representing
 	 * the object itself. This method finds the correct field for a given key
 	 * and returns its first child - the child being the value for that field.
 	 * This is a utility method used internally to extract field values.
 	 *
-	 * @param key the name of the desired field
+	 * @param name the name of the desired field
+	 * @param key the prepared key for the name or null
 	 * @return the first child of the matching field token if one exists
 	 * @throws LazyException if the field does not exist
 	 */
-	private LazyNode getFieldToken(String key) throws LazyException{
-		LazyNode child=root.child;
-		while(child!=null){
-			if(keyMatch(key,child)){
-				return child.child;
-			}
-			child=child.next;
+	private LazyNode getFieldToken(String name,LazyKey key) throws LazyException{
+		LazyNode field=findField(root,name,key);
+		if(field==null){
+			throw new LazyException("Unknown field '"+name+"'");
 		}
-		throw new LazyException("Unknown field '"+key+"'");
+		return field.child;
+	}
+
+	private LazyNode getOptionalFieldToken(String key){
+		return getOptionalFieldToken(key,null);
+	}
+
+	private LazyNode getOptionalFieldToken(LazyKey key){
+		return getOptionalFieldToken(key.name,key);
 	}
 
 	/**
@@ -773,39 +1387,62 @@ public class LazyObject extends LazyElement{
 	 * and returns its first child - the child being the value for that field.
 	 * This is a utility method used internally to extract field values.
 	 *
-	 * @param key the name of the desired field
+	 * @param name the name of the desired field
+	 * @param key the prepared key for the name or null
 	 * @return the first child of the matching field token if one exists, null otherwise
 	 */
-	private LazyNode getOptionalFieldToken(String key){
-		LazyNode child=root.child;
-		while(child!=null){
-			if(keyMatch(key,child)){
-				return child.child;
-			}
-			child=child.next;
+	private LazyNode getOptionalFieldToken(String name,LazyKey key){
+		LazyNode field=findField(root,name,key);
+		if(field==null){
+			return null;
 		}
-		return null;
+		return field.child;
+	}
+
+	private LazyNode getOptionalField(String key){
+		return findField(root,key,null);
+	}
+
+	private LazyNode getOptionalField(LazyKey key){
+		return findField(root,key.name,key);
 	}
 
 	/**
-	 * Fields for an object are attached as children on the token representing
-	 * the object itself. This method finds the correct field for a given key.
-	 * This is a utility method used internally to extract field values.
+	 * Finds the first field with the given name on an expanded object token.
+	 * This is the one field lookup used for both plain String names and
+	 * prepared keys.
 	 *
-	 * @param key the name of the desired field
-	 * @return the first child of the matching field token if one exists, null otherwise
+	 * Objects with many fields get a hash index over their fields the first
+	 * time a lookup has to walk past FIELD_INDEX_THRESHOLD fields, after
+	 * which lookups no longer depend on the number of fields.
+	 *
+	 * @param object the object token
+	 * @param name the name of the field
+	 * @param key the prepared key for the name or null
+	 * @return the field token or null if there is no such field
 	 */
-	private LazyNode getOptionalField(String key){
-		LazyNode child=root.child;
+	protected static LazyNode findField(LazyNode object,String name,LazyKey key){
+		LazyFieldIndex index=object.fieldIndex;
+		if(index!=null){
+			return index.get(name,key);
+		}
+		int hash=key!=null?key.hash:name.hashCode();
+		LazyNode child=object.child;
+		int count=0;
 		while(child!=null){
-			if(keyMatch(key,child)){
+			if(keyMatch(name,key,hash,child)){
 				return child;
 			}
+			if(++count==FIELD_INDEX_THRESHOLD){
+				// Built before it is published to other readers
+				index=new LazyFieldIndex(object);
+				object.fieldIndex=index;
+				return index.get(name,key);
+			}
 			child=child.next;
 		}
 		return null;
 	}
-
 	
 	// For debug purposes only
 	public String toString(int pad){
@@ -0,0 +1,220 @@
+package me.doubledutch.lazyjson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * The target of a serialized element. Tokens are written as ranges of their
+ * source, so a document never has to be turned into a String first. Output
+ * to characters decodes UTF-8 sources, output to bytes encodes characters as
+ * UTF-8 and copies UTF-8 sources as they are.
+ */
+abstract class LazyOutput{
+	protected abstract void write(char c) throws IOException;
+
+	protected abstract void write(String str) throws IOException;
+
+	protected abstract void write(char[] source,int start,int end) throws IOException;
+
+	protected abstract void write(CharSequence source,int start,int end) throws IOException;
+
+	// Write a range of UTF-8 encoded bytes
+	protected abstract void write(ByteBuffer source,int start,int end) throws IOException;
+
+	// Write anything still held in a buffer to the target
+	protected void flush() throws IOException{
+
+	}
+
+	/**
+	 * Writes characters to an Appendable. StringBuilder and Writer targets are
+	 * given character ranges directly.
+	 */
+	static final class CharOutput extends LazyOutput{
+		private final Appendable out;
+		private final StringBuilder builder;
+		private final Writer writer;
+
+		protected CharOutput(Appendable out){
+			this.out=out;
+			builder=out instanceof StringBuilder?(StringBuilder)out:null;
+			writer=out instanceof Writer?(Writer)out:null;
+		}
+
+		protected void write(char c) throws IOException{
+			out.append(c);
+		}
+
+		protected void write(String str) throws IOException{
+			out.append(str);
+		}
+
+		protected void write(char[] source,int start,int end) throws IOException{
+			if(builder!=null){
+				builder.append(source,start,end-start);
+			}else if(writer!=null){
+				writer.write(source,start,end-start);
+			}else{
+				out.append(CharBuffer.wrap(source,start,end-start).asReadOnlyBuffer());
+			}
+		}
+
+		protected void write(CharSequence source,int start,int end) throws IOException{
+			out.append(source,start,end);
+		}
+
+		protected void write(ByteBuffer source,int start,int end) throws IOException{
+			out.append(LazyNode.decodeUTF8(source,start,end));
+		}
+	}
+
+	/**
+	 * Writes UTF-8 encoded bytes to an OutputStream or a ByteBuffer. Bytes are
+	 * collected in a small buffer that is handed to the target when full and
+	 * on flush. A ByteBuffer target without enough room throws a
+	 * BufferOverflowException, leaving the bytes after its original position
+	 * undefined.
+	 */
+	static final class ByteOutput extends LazyOutput{
+		private final OutputStream stream;
+		private final ByteBuffer target;
+		private final byte[] data=new byte[8192];
+		private int size=0;
+
+		protected ByteOutput(OutputStream stream){
+			this.stream=stream;
+			target=null;
+		}
+
+		protected ByteOutput(ByteBuffer target){
+			stream=null;
+			this.target=target;
+		}
+
+		private void drain() throws IOException{
+			if(size==0)return;
+			if(stream!=null){
+				stream.write(data,0,size);
+			}else{
+				target.put(data,0,size);
+			}
+			size=0;
+		}
+
+		protected void flush() throws IOException{
+			drain();
+		}
+
+		protected void write(char c) throws IOException{
+			if(size>data.length-4){
+				drain();
+			}
+			if(c<0x80){
+				data[size++]=(byte)c;
+			}else{
+				encode(c);
+			}
+		}
+
+		protected void write(String str) throws IOException{
+			write(str,0,str.length());
+		}
+
+		// Encode a character that is not ASCII, the caller makes sure there is
+		// room for at least three bytes
+		private void encode(char c){
+			if(c<0x800){
+				data[size++]=(byte)(0xC0 | (c>>6));
+				data[size++]=(byte)(0x80 | (c & 0x3F));
+			}else if(Character.isSurrogate(c)){
+				// Unpaired surrogate, written as a question mark just like
+				// String.getBytes does
+				data[size++]='?';
+			}else{
+				data[size++]=(byte)(0xE0 | (c>>12));
+				data[size++]=(byte)(0x80 | ((c>>6) & 0x3F));
+				data[size++]=(byte)(0x80 | (c & 0x3F));
+			}
+		}
+
+		// Encode a surrogate pair as four bytes
+		private void encode(char high,char low){
+			int code=Character.toCodePoint(high,low);
+			data[size++]=(byte)(0xF0 | (code>>18));
+			data[size++]=(byte)(0x80 | ((code>>12) & 0x3F));
+			data[size++]=(byte)(0x80 | ((code>>6) & 0x3F));
+			data[size++]=(byte)(0x80 | (code & 0x3F));
+		}
+
+		protected void write(char[] source,int start,int end) throws IOException{
+			for(int i=start;i<end;i++){
+				if(size>data.length-4){
+					drain();
+				}
+				char c=source[i];
+				if(c<0x80){
+					data[size++]=(byte)c;
+				}else if(Character.isHighSurrogate(c) && i+1<end && Character.isLowSurrogate(source[i+1])){
+					encode(c,source[++i]);
+				}else{
+					encode(c);
+				}
+			}
+		}
+
+		protected void write(CharSequence source,int start,int end) throws IOException{
+			for(int i=start;i<end;i++){
+				if(size>data.length-4){
+					drain();
+				}
+				char c=source.charAt(i);
+				if(c<0x80){
+					data[size++]=(byte)c;
+				}else if(Character.isHighSurrogate(c) && i+1<end && Character.isLowSurrogate(source.charAt(i+1))){
+					encode(c,source.charAt(++i));
+				}else{
+					encode(c);
+				}
+			}
+		}
+
+		protected void write(ByteBuffer source,int start,int end) throws IOException{
+			if(end-start>data.length){
+				// Large ranges go straight to the target
+				drain();
+				if(source.hasArray()){
+					byte[] raw=source.array();
+					int offset=source.arrayOffset();
+					if(stream!=null){
+						stream.write(raw,offset+start,end-start);
+					}else{
+						target.put(raw,offset+start,end-start);
+					}
+					return;
+				}
+				ByteBuffer view=source.duplicate();
+				view.limit(end);
+				view.position(start);
+				if(target!=null){
+					target.put(view);
+					return;
+				}
+				while(view.hasRemaining()){
+					int count=Math.min(view.remaining(),data.length);
+					view.get(data,0,count);
+					stream.write(data,0,count);
+				}
+				return;
+			}
+			if(size+end-start>data.length){
+				drain();
+			}
+			for(int i=start;i<end;i++){
+				data[size++]=source.get(i);
+			}
+		}
+	}
+}
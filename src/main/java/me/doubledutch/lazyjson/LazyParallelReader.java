@@ -0,0 +1,289 @@
+package me.doubledutch.lazyjson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses newline delimited JSON in parallel. The data is split into chunks
+ * of roughly equal size on line boundaries, and each chunk is parsed in
+ * place by a task on a ForkJoinPool. Parsed elements are returned in the
+ * order they appear in the data, either through the Iterator interface or by
+ * passing them to a Handler.
+ *
+ * Only a limited number of chunks are parsed ahead of the element being
+ * returned, so memory use stays bounded no matter how large the data is and
+ * a slow consumer simply holds back the parsing.
+ *
+ * Files are memory mapped in regions of up to a gigabyte at a time, so files
+ * larger than 2 GB can be parsed. Elements keep a reference to the region
+ * they were parsed from. An instance must only be used by a single thread,
+ * but the elements returned may be handed to other threads.
+ */
+public final class LazyParallelReader implements Iterator<LazyElement>{
+	private static final int DEFAULT_CHUNK_SIZE=1024*1024;
+	private static final int DEFAULT_REGION_SIZE=1024*1024*1024;
+
+	/**
+	 * Receives parsed elements in the order they appear in the data.
+	 */
+	public interface Handler{
+		/**
+		 * Called once for each element.
+		 *
+		 * @param element either a LazyObject or LazyArray
+		 */
+		public void handle(LazyElement element);
+	}
+
+	// Holder for the pool used when none is given, created on first use
+	private static final class DefaultPool{
+		private static final ForkJoinPool POOL=new ForkJoinPool();
+	}
+
+	private final LazyParserOptions options;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	private final int maxPending;
+
+	// Regions of data not yet split into chunks and the region being split
+	private final Deque<ByteBuffer> regions=new ArrayDeque<ByteBuffer>();
+	private ByteBuffer region=null;
+	private int position=0;
+
+	// Chunks being parsed in order, and the elements of the current chunk
+	private final Deque<ForkJoinTask<List<LazyElement>>> pending=new ArrayDeque<ForkJoinTask<List<LazyElement>>>();
+	private Iterator<LazyElement> current=null;
+
+	/**
+	 * Create a parallel reader for the UTF-8 encoded data between the
+	 * position and limit of the given buffer.
+	 *
+	 * @param buf the source json data
+	 */
+	public LazyParallelReader(ByteBuffer buf){
+		this(buf,null,null,DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a parallel reader for the UTF-8 encoded data between the
+	 * position and limit of the given buffer.
+	 *
+	 * @param buf the source json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @param pool the pool to parse on, or null for a shared default pool
+	 * @param chunkSize the approximate number of bytes to parse in each task
+	 */
+	public LazyParallelReader(ByteBuffer buf,LazyParserOptions options,ForkJoinPool pool,int chunkSize){
+		this(options,pool,chunkSize);
+		// Use our own view so the buffer can't be changed under us
+		regions.add(buf.duplicate());
+	}
+
+	/**
+	 * Create a parallel reader for a UTF-8 encoded file.
+	 *
+	 * @param file the source json data
+	 * @throws IOException if the file could not be mapped
+	 */
+	public LazyParallelReader(File file) throws IOException{
+		this(file,null,null,DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a parallel reader for a UTF-8 encoded file.
+	 *
+	 * @param file the source json data
+	 * @param options the parser options to use, or null for the defaults
+	 * @param pool the pool to parse on, or null for a shared default pool
+	 * @param chunkSize the approximate number of bytes to parse in each task
+	 * @throws IOException if the file could not be mapped
+	 */
+	public LazyParallelReader(File file,LazyParserOptions options,ForkJoinPool pool,int chunkSize) throws IOException{
+		this(file,options,pool,chunkSize,DEFAULT_REGION_SIZE);
+	}
+
+	LazyParallelReader(File file,LazyParserOptions options,ForkJoinPool pool,int chunkSize,int regionSize) throws IOException{
+		this(options,pool,chunkSize);
+		mapRegions(file,regionSize);
+	}
+
+	private LazyParallelReader(LazyParserOptions options,ForkJoinPool pool,int chunkSize){
+		if(pool==null){
+			pool=DefaultPool.POOL;
+		}
+		if(chunkSize<1){
+			chunkSize=DEFAULT_CHUNK_SIZE;
+		}
+		this.options=options;
+		this.pool=pool;
+		this.chunkSize=chunkSize;
+		maxPending=pool.getParallelism()*2;
+	}
+
+	// Map the file in regions that end on a line boundary. The mappings
+	// are only reserved address space until the data is actually read.
+	private void mapRegions(File file,int regionSize) throws IOException{
+		RandomAccessFile raf=new RandomAccessFile(file,"r");
+		try{
+			FileChannel channel=raf.getChannel();
+			long size=channel.size();
+			long offset=0;
+			while(offset<size){
+				int length=(int)Math.min(regionSize,size-offset);
+				ByteBuffer buf=channel.map(FileChannel.MapMode.READ_ONLY,offset,length);
+				if(offset+length<size){
+					int end=length;
+					while(end>0 && buf.get(end-1)!='\n'){
+						end--;
+					}
+					if(end==0){
+						throw new LazyException("Line longer than "+regionSize+" bytes at offset "+offset);
+					}
+					buf.limit(end);
+					length=end;
+				}
+				regions.add(buf);
+				offset+=length;
+			}
+		}finally{
+			raf.close();
+		}
+	}
+
+	// Submit chunks for parsing until enough are pending or we run out
+	private void schedule(){
+		while(pending.size()<maxPending){
+			if(region==null || position==region.limit()){
+				region=regions.poll();
+				if(region==null){
+					return;
+				}
+				position=region.position();
+			}
+			int start=position;
+			int end=region.limit();
+			if(end-start>chunkSize){
+				end=start+chunkSize;
+				while(end<region.limit() && region.get(end-1)!='\n'){
+					end++;
+				}
+			}
+			position=end;
+			pending.add(pool.submit(new ChunkParser(region,start,end,options)));
+		}
+	}
+
+	/**
+	 * Returns true if there are more elements to read. This may block until
+	 * the next chunk has been parsed.
+	 *
+	 * @return true if there are more elements
+	 * @throws LazyException if a chunk could not be parsed
+	 */
+	public boolean hasNext() throws LazyException{
+		while(current==null || !current.hasNext()){
+			schedule();
+			ForkJoinTask<List<LazyElement>> task=pending.poll();
+			if(task==null){
+				return false;
+			}
+			current=task.join().iterator();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the next element in the data.
+	 *
+	 * @return either a LazyObject or LazyArray
+	 * @throws NoSuchElementException if there are no more elements
+	 * @throws LazyException if a chunk could not be parsed
+	 */
+	public LazyElement next() throws LazyException{
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Pass all remaining elements to the given handler in order. The handler
+	 * is called on the current thread while the following chunks are parsed
+	 * in the background.
+	 *
+	 * @param handler the handler to receive the elements
+	 * @throws LazyException if a chunk could not be parsed
+	 */
+	public void read(Handler handler) throws LazyException{
+		while(hasNext()){
+			handler.handle(current.next());
+		}
+	}
+
+	// Parses all lines in a chunk with a single parser
+	private static final class ChunkParser implements Callable<List<LazyElement>>{
+		private final ByteBuffer buf;
+		private final int start;
+		private final int end;
+		private final LazyParserOptions options;
+
+		private ChunkParser(ByteBuffer buf,int start,int end,LazyParserOptions options){
+			this.buf=buf;
+			this.start=start;
+			this.end=end;
+			this.options=options;
+		}
+
+		public List<LazyElement> call() throws LazyException{
+			List<LazyElement> list=new ArrayList<LazyElement>();
+			LazyParser parser=null;
+			int index=start;
+			while(index<end){
+				int lineStart=index;
+				while(index<end && buf.get(index)!='\n'){
+					index++;
+				}
+				int lineEnd=index;
+				index++;
+				// Skip empty lines
+				int first=lineStart;
+				while(first<lineEnd){
+					byte c=buf.get(first);
+					if(!(c==' ' || c=='\r' || c=='\t')){
+						break;
+					}
+					first++;
+				}
+				if(first==lineEnd){
+					continue;
+				}
+				if(parser==null){
+					ByteBuffer view=buf.duplicate();
+					view.limit(lineEnd);
+					view.position(lineStart);
+					parser=new LazyParser(view,options);
+				}else{
+					parser.reset(buf,lineStart,lineEnd);
+				}
+				parser.tokenize();
+				if(parser.root.type==LazyNode.OBJECT){
+					list.add(new LazyObject(parser.root));
+				}else{
+					list.add(new LazyArray(parser.root));
+				}
+			}
+			return list;
+		}
+	}
+}
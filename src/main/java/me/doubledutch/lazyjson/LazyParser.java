@@ -1,6 +1,10 @@
 package me.doubledutch.lazyjson;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.nio.ByteBuffer;
 
 public final class LazyParser{
 	private final char CH_SPACE=' ';
@@ -37,68 +41,542 @@ public final class LazyParser{
 	private final int STACK_INCREASE=31;
 	private int STACK_SIZE=32;
 
+	// Marks the type of an empty stack
+	private static final byte NONE=-1;
+
+	// The approximate amount of source data tokenized by each parallel task
+	private static final int PARALLEL_BATCH_SIZE=1024*1024;
+
 	protected LazyNode root;
-	protected final char[] cbuf;
-	protected final int length;
+	// The parser reads from exactly one of these two sources. In byte mode the
+	// source is UTF-8 encoded and all indices are byte offsets into bbuf.
+	protected char[] cbuf;
+	protected ByteBuffer bbuf;
+	// Index one past the last character of the source that should be parsed
+	protected int length;
 	private int n=0;
 
+	private LazyParserOptions options=null;
+
+	// When set, tokens are written to the tape instead of created as nodes
+	private LazyTape tape=null;
+
+	// When set, the main loop only visits the positions in this index
+	private boolean indexed=false;
+	private LazyIndex index=null;
+
+	// When set, only the values selected by the projection are tokenized
+	private LazyProjection projection=null;
+
+	// Objects and arrays nested deeper than this are not tokenized, but
+	// recorded with the options used to parse them once they are accessed
+	private int deferDepth=-1;
+	private LazyParserOptions deferOptions=null;
+	// The number of open objects and arrays on the stack
+	private int depth=0;
+
+	// When set, the elements of large root arrays are tokenized on this pool
+	private ForkJoinPool pool=null;
+
+	// When set, field names are hashed as they are consumed
+	private boolean keyHashing=false;
+	// The hash of the last field name consumed, or 0 if it was not hashed
+	private int fieldHash=0;
+
+	// When set, tokens keep their values once decoded
+	private boolean valueCache=false;
+
+	// Nodes of released documents, linked through their next pointer
+	private LazyNode free=null;
+
 	protected LazyParser(final String source){
+		this(source,null);
+	}
+
+	protected LazyParser(final String source,final LazyParserOptions options){
 		length=source.length();
 		cbuf=new char[length];
 		source.getChars(0,length,cbuf,0);
+		bbuf=null;
+		setOptions(options);
+	}
+
+	/**
+	 * Create a parser that works directly on UTF-8 encoded data. No decoding or
+	 * copying of the source takes place - tokens will point into the given
+	 * array and strings are only decoded when their values are requested.
+	 *
+	 * @param utf8 the source data
+	 * @param offset index of the first byte of the JSON data
+	 * @param len the number of bytes to parse
+	 */
+	protected LazyParser(final byte[] utf8,final int offset,final int len){
+		this(ByteBuffer.wrap(utf8,offset,len),null);
+	}
+
+	protected LazyParser(final byte[] utf8,final int offset,final int len,final LazyParserOptions options){
+		this(ByteBuffer.wrap(utf8,offset,len),options);
+	}
+
+	/**
+	 * Create a parser that works directly on the UTF-8 encoded data between the
+	 * position and limit of the given buffer. The buffer may be a heap buffer,
+	 * a direct buffer or a memory mapped file. Only absolute reads are used, so
+	 * the position and limit of the buffer are left untouched and tokens hold
+	 * absolute indices into the buffer.
+	 *
+	 * @param buf the source data
+	 */
+	protected LazyParser(final ByteBuffer buf){
+		this(buf,null);
+	}
+
+	protected LazyParser(final ByteBuffer buf,final LazyParserOptions options){
+		bbuf=buf;
+		cbuf=null;
+		n=buf.position();
+		length=buf.limit();
+		setOptions(options);
+	}
+
+	/**
+	 * Create a parser for a part of a character source that is shared with
+	 * other elements. This is used to parse deferred values in place.
+	 *
+	 * @param source the source data
+	 * @param start index of the first character to parse
+	 * @param end index one past the last character to parse
+	 * @param options the parser options to use
+	 */
+	protected LazyParser(final char[] source,final int start,final int end,final LazyParserOptions options){
+		cbuf=source;
+		bbuf=null;
+		n=start;
+		length=end;
+		setOptions(options);
+	}
+
+	/**
+	 * Create a parser for a part of a UTF-8 source buffer that is shared
+	 * with other elements, ignoring its position and limit.
+	 *
+	 * @param buf the source data
+	 * @param start index of the first byte to parse
+	 * @param end index one past the last byte to parse
+	 * @param options the parser options to use
+	 */
+	protected LazyParser(final ByteBuffer buf,final int start,final int end,final LazyParserOptions options){
+		bbuf=buf;
+		cbuf=null;
+		n=start;
+		length=end;
+		setOptions(options);
+	}
+
+	private void setOptions(final LazyParserOptions options){
+		this.options=options;
+		if(options==null){
+			return;
+		}
+		if(options.isTape()){
+			// Make a rough guess at the token count to avoid growing the tape
+			tape=new LazyTape((length-n)>>3,cbuf,bbuf);
+			if(options.isKeyHashing()){
+				tape.hash=new int[tape.type.length];
+			}
+		}
+		keyHashing=options.isKeyHashing();
+		valueCache=options.isValueCache();
+		if(tape!=null){
+			tape.valueCache=valueCache;
+		}
+		indexed=options.isStructuralIndex();
+		projection=options.getProjectionTree();
+		pool=options.getParallel();
+		deferDepth=options.getDeferDepth();
+		if(deferDepth>-1){
+			if(projection==null){
+				deferOptions=options;
+			}else{
+				// Deferred values are never part of a projection
+				deferOptions=new LazyParserOptions().setTape(options.isTape()).setStructuralIndex(indexed).setKeyHashing(keyHashing).setValueCache(valueCache).setDeferDepth(deferDepth);
+			}
+			if(tape!=null){
+				tape.deferOptions=deferOptions;
+			}
+		}
+	}
+
+	/**
+	 * Prepare this parser to parse a new part of a character source. The
+	 * options and the memory allocated for the parse stack are kept, so a
+	 * single parser can be used for a sequence of documents. Elements
+	 * created by earlier parses are not affected.
+	 *
+	 * @param source the source data
+	 * @param start index of the first character to parse
+	 * @param end index one past the last character to parse
+	 */
+	protected void reset(final char[] source,final int start,final int end){
+		cbuf=source;
+		bbuf=null;
+		n=start;
+		length=end;
+		clear();
+	}
+
+	/**
+	 * Prepare this parser to parse the UTF-8 encoded data between the
+	 * position and limit of the given buffer.
+	 *
+	 * @param buf the source data
+	 */
+	protected void reset(final ByteBuffer buf){
+		reset(buf,buf.position(),buf.limit());
+	}
+
+	/**
+	 * Prepare this parser to parse the UTF-8 encoded data between two indices
+	 * of the given buffer, ignoring its position and limit.
+	 *
+	 * @param buf the source data
+	 * @param start index of the first byte to parse
+	 * @param end index one past the last byte to parse
+	 */
+	protected void reset(final ByteBuffer buf,final int start,final int end){
+		bbuf=buf;
+		cbuf=null;
+		n=start;
+		length=end;
+		clear();
+	}
+
+	private void clear(){
+		root=null;
+		tape=null;
+		index=null;
+		stackTop=null;
+		topType=NONE;
+		stackPointer=1;
+		depth=0;
+		valueProjection=null;
+		// Do not hold on to the nodes of the previous document
+		Arrays.fill(stack,null);
+		setOptions(options);
+	}
+
+	// Read a single character from the source. In byte mode the raw byte is
+	// returned as a char. All structural characters in JSON are ASCII and no
+	// byte in a multi byte UTF-8 sequence is below 0x80, so the tokenizer can
+	// treat both sources in exactly the same way.
+	private char charAt(final int i){
+		if(cbuf!=null){
+			return cbuf[i];
+		}
+		return (char)(bbuf.get(i) & 0xFF);
 	}
 
 	// The parser uses a crude stack while parsing that maintains a reference
 	// to the top element on the stack and automatically establishes a parent
 	// child relation ship when elements are pushed onto the stack.
+	// The type of each element is kept in a separate array so that the
+	// structure can be validated the same way in node and tape mode. In tape
+	// mode the stack holds tape indices instead of nodes.
+	private byte[] stackType=new byte[STACK_SIZE];
 	private LazyNode[] stack=new LazyNode[STACK_SIZE];
+	private int[] tapeStack=null;
+	// The projection for the contents of each token on the stack, where null
+	// means everything is included
+	private LazyProjection[] projectionStack=null;
+	// Set by project to the projection for the value about to be pushed
+	private LazyProjection valueProjection=null;
 	private LazyNode stackTop=null;
+	private byte topType=NONE;
 	private int stackPointer=1;
 
+	// Create a new node, reusing a released one if there are any
+	private LazyNode node(final byte type,final int start){
+		if(free==null){
+			LazyNode token=new LazyNode(type,start);
+			token.cache=valueCache;
+			return token;
+		}
+		LazyNode token=free;
+		free=token.next;
+		token.next=null;
+		token.type=type;
+		token.startIndex=start;
+		token.cache=valueCache;
+		return token;
+	}
+
+	/**
+	 * Hand the nodes of a document back to this parser so they can be reused
+	 * for the tokens of the next documents it parses. The nodes must not be
+	 * in use anywhere else once released. Values that were shared with
+	 * another document are left to it.
+	 *
+	 * @param node the root node of the document to release
+	 */
+	protected void release(LazyNode node){
+		if(node.shared){
+			return;
+		}
+		if(node.type==LazyNode.FIELD || node.type==LazyNode.EFIELD){
+			// The value may also be an element of an array, whose siblings
+			// are not part of this document
+			if(node.child!=null){
+				release(node.child);
+			}
+		}else{
+			LazyNode pointer=node.child;
+			while(pointer!=null){
+				LazyNode next=pointer.next;
+				release(pointer);
+				pointer=next;
+			}
+		}
+		node.clear();
+		node.next=free;
+		free=node;
+	}
+
+	// Push the root token onto the empty stack
+	private void pushRoot(final byte type,final int start){
+		if(tape!=null){
+			if(tapeStack==null){
+				tapeStack=new int[STACK_SIZE];
+			}
+			tapeStack[stackPointer]=tape.add(type,start);
+			root=null;
+		}else{
+			stackTop=node(type,start);
+			stack[stackPointer]=stackTop;
+			root=stackTop;
+		}
+		if(projection!=null){
+			if(projectionStack==null){
+				projectionStack=new LazyProjection[STACK_SIZE];
+			}
+			projectionStack[stackPointer]=projection.leaf?null:projection;
+		}
+		stackType[0]=NONE;
+		stackType[stackPointer++]=type;
+		topType=type;
+		depth=1;
+	}
+
 	// Push a token onto the stack and attach it to the previous top as a child
-	private void push(final LazyNode token){
-		stackTop.addChild(token);
+	private void push(final byte type,final int start){
 		// The stack allocation strategy here is to increase it in increments
 		// of a power of two. This lets us check when all low bits are set and
 		// its time to increase the stack again.
 		// This lets us do a compare between a constant and a variable instead
 		// of between two variables.
 		if((stackPointer & STACK_INCREASE)==STACK_INCREASE){
-			LazyNode[] newStack=new LazyNode[STACK_SIZE+STACK_INCREASE+1];
+			growStack();
+		}
+		if(tape!=null){
+			tapeStack[stackPointer]=tape.add(type,start);
+		}else{
+			LazyNode token=node(type,start);
+			stackTop.addChild(token);
+			stack[stackPointer]=token;
+			stackTop=token;
+		}
+		stackType[stackPointer++]=type;
+		topType=type;
+	}
+
+	private void growStack(){
+		int size=STACK_SIZE+STACK_INCREASE+1;
+		byte[] newType=new byte[size];
+		System.arraycopy(stackType,0,newType,0,STACK_SIZE);
+		stackType=newType;
+		if(tape!=null){
+			int[] newStack=new int[size];
+			System.arraycopy(tapeStack,0,newStack,0,STACK_SIZE);
+			tapeStack=newStack;
+		}else{
+			LazyNode[] newStack=new LazyNode[size];
 			System.arraycopy(stack,0,newStack,0,STACK_SIZE);
-			STACK_SIZE=STACK_SIZE+STACK_INCREASE+1;
 			stack=newStack;
 		}
-		stack[stackPointer++]=token;
-		stackTop=token;
+		if(projectionStack!=null){
+			LazyProjection[] newStack=new LazyProjection[size];
+			System.arraycopy(projectionStack,0,newStack,0,STACK_SIZE);
+			projectionStack=newStack;
+		}
+		STACK_SIZE=size;
+	}
+
+	// Set the end index of the token on the top of the stack
+	private void setTopEnd(final int end){
+		if(tape!=null){
+			tape.end[tapeStack[stackPointer-1]]=end;
+		}else{
+			stackTop.endIndex=end;
+		}
 	}
 
-	// Pop a token off the stack and reset the stackTop pointer
-	private LazyNode pop(){
-		LazyNode value=stackTop;
+	// Set the hash of the field token on the top of the stack
+	private void setTopHash(final int hash){
+		if(tape!=null){
+			tape.hash[tapeStack[stackPointer-1]]=hash;
+		}else{
+			stackTop.hash=hash;
+		}
+	}
+
+	// Pop a token off the stack, set its end index and reset the stackTop
+	// pointer. Returns the type of the token or NONE if the stack was empty.
+	private byte pop(final int end){
+		if(stackPointer==1){
+			return NONE;
+		}
 		stackPointer--;
-		if(stackPointer>0){
+		if(tape!=null){
+			int index=tapeStack[stackPointer];
+			tape.end[index]=end;
+			tape.next[index]=tape.size;
+		}else{
+			stackTop.endIndex=end;
 			stackTop=stack[stackPointer-1];
 		}
-		return value;
+		byte type=topType;
+		topType=stackType[stackPointer-1];
+		return type;
 	}
 
-	// Pop a token off the stack and reset the stackTop pointer without returning the value
+	// Pop a token off the stack and reset the stackTop pointer without
+	// touching the end index
 	private void drop(){
 		stackPointer--;
-		stackTop=stack[stackPointer-1];
+		if(tape!=null){
+			tape.next[tapeStack[stackPointer]]=tape.size;
+		}else{
+			stackTop=stack[stackPointer-1];
+		}
+		topType=stackType[stackPointer-1];
+	}
+
+	// Add a value token as a child of the top of the stack
+	private void addValue(final byte type,final int start,final int end){
+		if(tape!=null){
+			int index=tape.add(type,start);
+			tape.end[index]=end;
+		}else{
+			LazyNode token=node(type,start);
+			token.endIndex=end;
+			stackTop.addChild(token);
+		}
 	}
 
 	private int size(){
 		return stackPointer-1;
 	}
 
+	// Returns true if the object or array starting at the current position
+	// should be deferred. Must be called after project.
+	private boolean shouldDefer(){
+		return deferDepth>-1 && depth>deferDepth && (projectionStack==null || valueProjection==null);
+	}
+
+	// Skip over the object or array starting at the current position and add
+	// it as a single token to be tokenized when it is first accessed
+	private void addDeferred(final byte type) throws LazyException{
+		int start=n;
+		skipValue();
+		if(tape!=null){
+			int index=tape.add((byte)(type | LazyTape.DEFERRED),start);
+			tape.end[index]=n+1;
+		}else{
+			LazyNode token=node(type,start);
+			token.endIndex=n+1;
+			token.deferred=deferOptions;
+			stackTop.addChild(token);
+		}
+		if(topType==LazyNode.FIELD || topType==LazyNode.EFIELD){
+			drop();
+		}
+	}
+
+	// Decide if a new value inside the token on the top of the stack is part
+	// of the projection. Fields of an object are matched by name as they are
+	// found, so this is only used for field values and array elements.
+	private boolean project(){
+		LazyProjection top=projectionStack[stackPointer-1];
+		if(top==null || topType!=LazyNode.ARRAY){
+			valueProjection=top;
+			return true;
+		}
+		if(top.elements==null){
+			return false;
+		}
+		valueProjection=top.elements.leaf?null:top.elements;
+		return true;
+	}
+
+	// Decide if the field name between start and end is part of the projection
+	private boolean projectField(final int start,final int end,final boolean escaped){
+		LazyProjection top=projectionStack[stackPointer-1];
+		if(top==null){
+			valueProjection=null;
+			return true;
+		}
+		LazyProjection field=top.field(cbuf,bbuf,start,end,escaped);
+		if(field==null){
+			return false;
+		}
+		valueProjection=field.leaf?null:field;
+		return true;
+	}
+
+	// Skip over a complete value starting at the current position without
+	// creating any tokens, leaving n on its last character. Only the nesting
+	// of objects and arrays is tracked, the contents are not validated.
+	private void skipValue() throws LazyException{
+		char c=charAt(n);
+		if(c==CH_QUOTE){
+			consumeString();
+			return;
+		}
+		if(c==CH_BEGIN_CURLY || c==CH_BEGIN_BRACKET){
+			int depth=0;
+			for(;n<length;n=next(n)){
+				c=charAt(n);
+				if(c==CH_BEGIN_CURLY || c==CH_BEGIN_BRACKET){
+					depth++;
+				}else if(c==CH_END_CURLY || c==CH_END_BRACKET){
+					depth--;
+					if(depth==0){
+						return;
+					}
+				}else if(c==CH_QUOTE){
+					consumeString();
+				}
+			}
+			throw new LazyException("Unexpected end of JSON data");
+		}
+		if(c==CH_COMMA || c==CH_COLON || c==CH_END_CURLY || c==CH_END_BRACKET){
+			throw new LazyException("Value expected",n);
+		}
+		// A number or literal runs until the next separator
+		while(n+1<length){
+			c=charAt(n+1);
+			if(c==CH_SPACE || c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN || c==CH_COMMA || c==CH_END_CURLY || c==CH_END_BRACKET){
+				return;
+			}
+			n++;
+		}
+	}
+
 	// Utility method to consume sections of whitespace
 	private final void consumeWhiteSpace(){
-		char c=cbuf[n];
+		char c=charAt(n);
 		while(c==CH_SPACE|| c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN){
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 		}
 	}
 
@@ -114,21 +592,74 @@ public final class LazyParser{
 	// Consume all characters in a string and correctly mark the stackTop
 	// element if an escape character is found
 	private final boolean consumeString() throws LazyException{
+		if(index!=null){
+			// The next position in the index is always the closing quote. Only
+			// the escape codes need to be validated, jumping from backslash to
+			// backslash and skipping the escaped character.
+			int open=n;
+			n=index.next(n);
+			if(n==length){
+				throw new LazyException("Unexpected end of JSON data");
+			}
+			int i=index.nextBackslash(open,n);
+			if(i==-1){
+				return false;
+			}
+			while(i!=-1){
+				char c=charAt(i+1);
+				if(!(c==CH_QUOTE || c==CH_BACKSLASH || c==CH_SLASH || c==CH_b || c==CH_f || c==CH_n || c==CH_r || c==CH_t || c==CH_u)){
+					throw new LazyException("Invalid escape code",i+1);
+				}
+				i=index.nextBackslash(i+1,n);
+			}
+			return true;
+		}
+		boolean escaped=false;
+		n++;
+		char c=charAt(n);
+		while(c!=CH_QUOTE){
+			if(c==CH_BACKSLASH){
+				n++;
+				c=charAt(n);
+				if(!(c==CH_QUOTE || c==CH_BACKSLASH || c==CH_SLASH || c==CH_b || c==CH_f || c==CH_n || c==CH_r || c==CH_t || c==CH_u)){
+					throw new LazyException("Invalid escape code",n);
+				}
+				escaped=true;
+			}
+			n++;
+			c=charAt(n);
+		}
+		return escaped;
+	}
+
+	// Consume a field name the same way as consumeString, computing the hash
+	// code of the name on the way. The hash is set to 0 if the name contains
+	// escape codes or, in byte mode, non ASCII characters, since it would not
+	// match the hash of the decoded name.
+	private final boolean consumeField() throws LazyException{
 		boolean escaped=false;
+		int h=0;
+		int bits=0;
 		n++;
-		char c=cbuf[n];
+		char c=charAt(n);
 		while(c!=CH_QUOTE){
 			if(c==CH_BACKSLASH){
 				n++;
-				c=cbuf[n];
+				c=charAt(n);
 				if(!(c==CH_QUOTE || c==CH_BACKSLASH || c==CH_SLASH || c==CH_b || c==CH_f || c==CH_n || c==CH_r || c==CH_t || c==CH_u)){
 					throw new LazyException("Invalid escape code",n);
 				}
 				escaped=true;
 			}
+			h=31*h+c;
+			bits|=c;
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 		}
+		if(escaped || (bbuf!=null && bits>0x7F)){
+			h=0;
+		}
+		fieldHash=h;
 		return escaped;
 	}
 
@@ -139,7 +670,7 @@ public final class LazyParser{
 		if(c==CH_DASH){
 			// If the number started with a minus sign it must be followed by at least one digit
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 			if(c<CH_0 || c>CH_9){
 				throw new LazyException("Digit expected",n);
 			}
@@ -147,40 +678,40 @@ public final class LazyParser{
 		n++;
 		if(c==CH_0){
 			// First digit was zero - next may not be digit!
-			c=cbuf[n];
+			c=charAt(n);
 			if(c>=CH_0 && c<=CH_9){
 				throw new LazyException("Number may not start with leading zero",n);
 			}
 		}else{
-			c=cbuf[n];
+			c=charAt(n);
 		}
 		while(!(c<CH_0 || c>CH_9)){
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 		}
 		if(c==CH_DOT){
 			floatChar=true;
 			// The fractional part must contain one or more digits
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 			if(c<CH_0 || c>CH_9){
 				throw new LazyException("Digit expected",n);
 			}
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 			while(!(c<CH_0 || c>CH_9)){
 				n++;
-				c=cbuf[n];
+				c=charAt(n);
 			}
 		}
 		if(c==CH_e || c==CH_E){
 			floatChar=true;
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 			if(c==CH_DASH || c==CH_PLUS){
 				// We must have at least one digit following this
 				n++;
-				c=cbuf[n];
+				c=charAt(n);
 				if(c<CH_0 || c>CH_9){
 					throw new LazyException("Digit expected",n);
 				}
@@ -188,15 +719,35 @@ public final class LazyParser{
 				throw new LazyException("Exponential part expected",n);
 			}
 			n++;
-			c=cbuf[n];
+			c=charAt(n);
 			while(!(c<CH_0 || c>CH_9)){
 				n++;
-				c=cbuf[n];
+				c=charAt(n);
 			}
 		}
 		return floatChar;
 	}
 
+	// Returns the index of the next character the main loop must look at
+	private final int next(final int i){
+		if(index!=null){
+			return index.next(i);
+		}
+		return i+1;
+	}
+
+	// The index does not mark the characters inside a number or literal, so
+	// we must verify that one ends where the main loop would have expected
+	// it to.
+	private final void checkValueEnd() throws LazyException{
+		if(n+1<length){
+			char c=charAt(n+1);
+			if(!(c==CH_SPACE || c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN || c==CH_COMMA || c==CH_END_CURLY || c==CH_END_BRACKET || c==CH_BEGIN_CURLY || c==CH_BEGIN_BRACKET || c==CH_QUOTE)){
+				throw new LazyException("Syntax error",n+1);
+			}
+		}
+	}
+
 	// This should probably be renamed to parse. This method started out as a
 	// simple index overlay tokenizer, but then slowly evolved into a full
 	// parser.
@@ -205,6 +756,11 @@ public final class LazyParser{
 	// based on token type to consume full tokens. It maintains a simple
 	// stack to both validate the structure and to be able to provide the
 	// abstract syntax tree in the form of linked LazyNodes after parsing.
+	// In tape mode the same structure is written to a LazyTape instead.
+	//
+	// With a structural index, a first pass marks every position that is
+	// not white space or inside a string, and the main loop jumps from one
+	// marked position to the next instead of visiting every character.
 	//
 	// The source is ugly - but it's fast.... very fast
 	// There is still plenty of room for optimization, such as when a value
@@ -213,42 +769,80 @@ public final class LazyParser{
 	// stackTop pointer and increments and decrements the stackTopPointer int
 	protected void tokenize() throws LazyException{
 		consumeWhiteSpace();
+		char c=charAt(n);
+		if(c==CH_BEGIN_BRACKET && pool!=null && length-n>PARALLEL_BATCH_SIZE){
+			tokenizeParallel();
+			return;
+		}
+		if(indexed){
+			index=new LazyIndex(cbuf,bbuf,n,length);
+		}
 		// We are going to manually push the first token onto the stack so
 		// future push operations can avoid doing an if empty check when
 		// setting the parent child relationship
-		char c=cbuf[n];
 		if(c==CH_BEGIN_CURLY){
-			stack[stackPointer++]=LazyNode.cObject(n);
+			pushRoot(LazyNode.OBJECT,n);
 		}else if(c==CH_BEGIN_BRACKET){
-			stack[stackPointer++]=LazyNode.cArray(n);
+			pushRoot(LazyNode.ARRAY,n);
 		}else{
 			throw new LazyException("Can not parse raw JSON value, must be either object or array",0);
 		}
-		root=stack[1];
-		stackTop=root;
-		n++;
+		n=next(n);
+		parse();
+		if(size()!=0){
+			throw new LazyException("Unexpected end of JSON data");
+		}
+		// Only white space may follow the root element
+		for(n++;n<length;n++){
+			c=charAt(n);
+			if(!(c==CH_SPACE || c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN)){
+				throw new LazyException("Unexpected character after end of JSON data",n);
+			}
+		}
+		finish();
+	}
+
+	// The main loop of the tokenizer. Runs until the root element is closed
+	// or the end of the source is reached and returns true if the last token
+	// seen was a comma.
+	private boolean parse() throws LazyException{
+		char c;
 		boolean expectValue=false;
 		boolean firstValue=true;
-		LazyNode token=null;
-		for(;n<length;n++){
-			c=cbuf[n];
+		int start;
+		parse:
+		for(;n<length;n=next(n)){
+			c=charAt(n);
 			switch(c){
 				case CH_BEGIN_CURLY:
-					push(LazyNode.cObject(n));
+					if(projectionStack!=null && !project()){
+						skipValue();
+						expectValue=false;
+						firstValue=false;
+						break;
+					}
+					if(shouldDefer()){
+						addDeferred(LazyNode.OBJECT);
+						expectValue=false;
+						firstValue=false;
+						break;
+					}
+					push(LazyNode.OBJECT,n);
+					if(projectionStack!=null){
+						projectionStack[stackPointer-1]=valueProjection;
+					}
+					depth++;
 					expectValue=false;
 					firstValue=true;
 					break;
 				case CH_END_CURLY:
 					// The end of an object, pop off the last value and field if any
-					token=pop();
-					if(token==null){
-						throw new LazyException("Unexpected end of object character",n);
-					}else if(token.type!=LazyNode.OBJECT){
+					if(pop(n+1)!=LazyNode.OBJECT){
 						throw new LazyException("Unexpected end of object character",n);
 					}
-					token.endIndex=n+1;
+					depth--;
 					// If this object was the value for a field, pop off that field too
-					if(stackTop!=null && (stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD)){
+					if(topType==LazyNode.FIELD || topType==LazyNode.EFIELD){
 						drop();
 					}
 					// Was there a trailing comma?
@@ -256,39 +850,63 @@ public final class LazyParser{
 						throw new LazyException("Unexpected comma without another value",n-1);
 					}
 					firstValue=false;
+					if(stackPointer==1){
+						// This was the end of the root object
+						break parse;
+					}
 					break;
 			case CH_QUOTE:
 				expectValue=false;
 				firstValue=false;
-				if(stackTop.type==LazyNode.ARRAY){
-					token=LazyNode.cStringValue(n+1);
-					stackTop.addChild(token);
-					if(consumeString()){
-						token.type=LazyNode.VALUE_ESTRING;
+				start=n+1;
+				if(topType==LazyNode.ARRAY){
+					if(projectionStack!=null && !project()){
+						consumeString();
+					}else if(consumeString()){
+						addValue(LazyNode.VALUE_ESTRING,start,n);
+					}else{
+						addValue(LazyNode.VALUE_STRING,start,n);
 					}
-					token.endIndex=n;
-				}else if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-					token=LazyNode.cStringValue(n+1);
-					stackTop.addChild(token);
+				}else if(topType==LazyNode.FIELD || topType==LazyNode.EFIELD){
 					if(consumeString()){
-						token.type=LazyNode.VALUE_ESTRING;
+						addValue(LazyNode.VALUE_ESTRING,start,n);
+					}else{
+						addValue(LazyNode.VALUE_STRING,start,n);
 					}
-					token.endIndex=n;
 					drop();
-				}else if(stackTop.type==LazyNode.OBJECT){
-					push(LazyNode.cField(n+1));
-					if(consumeString()){
-						stackTop.type=LazyNode.EFIELD;
+				}else if(topType==LazyNode.OBJECT){
+					byte fieldType;
+					if(keyHashing && index==null){
+						fieldType=consumeField()?LazyNode.EFIELD:LazyNode.FIELD;
+					}else{
+						fieldType=consumeString()?LazyNode.EFIELD:LazyNode.FIELD;
+						fieldHash=0;
 					}
-					stackTop.endIndex=n;
+					int end=n;
 					n++;
 					consumeWhiteSpace();
-					c=cbuf[n];
-					if(c==CH_COLON){
-						tryToConsumeWhiteSpace();
-					}else{
+					c=charAt(n);
+					if(c!=CH_COLON){
 						throw new LazyException("Unexpected character! Was expecting field separator ':'",n);
 					}
+					if(projectionStack!=null){
+						if(!projectField(start,end,fieldType==LazyNode.EFIELD)){
+							// Skip both the field and its value
+							n++;
+							consumeWhiteSpace();
+							skipValue();
+							break;
+						}
+						push(fieldType,start);
+						projectionStack[stackPointer-1]=valueProjection;
+					}else{
+						push(fieldType,start);
+					}
+					setTopEnd(end);
+					if(fieldHash!=0){
+						setTopHash(fieldHash);
+					}
+					tryToConsumeWhiteSpace();
 					expectValue=true;
 				}
 				break;
@@ -299,38 +917,48 @@ public final class LazyParser{
 					throw new LazyException("Unexpected comma",n);
 				}
 				expectValue=true;
-				if(stackTop!=null && (stackTop.type==LazyNode.ARRAY) && (firstValue)){
+				if(topType==LazyNode.ARRAY && firstValue){
 					throw new LazyException("Expected value before comma",n);
 				}
 				break;
 			case CH_BEGIN_BRACKET:
-				if(stackTop.type==LazyNode.OBJECT){
+				if(topType==LazyNode.OBJECT){
 					throw new LazyException("Missing field name for array",n);
-				}else if(stackTop.type==LazyNode.ARRAY){
+				}else if(topType==LazyNode.ARRAY){
 					if((!firstValue) && (!expectValue)){
 						throw new LazyException("Nested array without comma",n);
 					}
 				}
-				push(LazyNode.cArray(n));
+				if(projectionStack!=null && !project()){
+					skipValue();
+					expectValue=false;
+					firstValue=false;
+					break;
+				}
+				if(shouldDefer()){
+					addDeferred(LazyNode.ARRAY);
+					expectValue=false;
+					firstValue=false;
+					break;
+				}
+				push(LazyNode.ARRAY,n);
+				if(projectionStack!=null){
+					projectionStack[stackPointer-1]=valueProjection;
+				}
+				depth++;
 				expectValue=false;
 				firstValue=true;
 				break;
 			case CH_END_BRACKET:
-				token=pop();
-				if(token==null){
-						throw new LazyException("Unexpected end of array character",n);
-				}else if(token.type!=LazyNode.ARRAY){
-					if(token.endIndex==-1){
-						token.endIndex=n;
-					}
-					token=pop();
-					if(token==null || token.type!=LazyNode.ARRAY){
-						throw new LazyException("Unexpected end of array",n);
-					}
+				byte type=pop(n+1);
+				if(type==NONE){
+					throw new LazyException("Unexpected end of array character",n);
+				}else if(type!=LazyNode.ARRAY){
+					throw new LazyException("Unexpected end of array",n);
 				}
-				token.endIndex=n+1;
+				depth--;
 				// If this array was the value for a field, pop off that field too
-				if(stackTop!=null && (stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD)){
+				if(topType==LazyNode.FIELD || topType==LazyNode.EFIELD){
 					drop();
 				}
 				// Was there a trailing comma?
@@ -338,6 +966,10 @@ public final class LazyParser{
 					throw new LazyException("Unexpected comma without another value",n-1);
 				}
 				firstValue=false;
+				if(stackPointer==1){
+					// This was the end of the root array
+					break parse;
+				}
 				break;
 			case CH_SPACE:
 			case CH_TAB:
@@ -347,92 +979,233 @@ public final class LazyParser{
 				break;
 			default:
 				// This must be a new value
-				if(stackTop.type==LazyNode.ARRAY && !firstValue && !expectValue){
+				if(topType==LazyNode.ARRAY && !firstValue && !expectValue){
 					throw new LazyException("Unexpected value, missing comma?",n);
 				}
-				if(stackTop.type==LazyNode.OBJECT){
+				if(topType==LazyNode.OBJECT){
 					throw new LazyException("Unexpected value without field name",n);
 				}
 				firstValue=false;
 				expectValue=false;
+				if(projectionStack!=null && !project()){
+					skipValue();
+					break;
+				}
 				if(c==CH_n){
 					// Must be null value
-					if(cbuf[++n]==CH_u && cbuf[++n]==CH_l && cbuf[++n]==CH_l){
-						token=LazyNode.cValueNull(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
-						}
+					if(charAt(++n)==CH_u && charAt(++n)==CH_l && charAt(++n)==CH_l){
+						addValue(LazyNode.VALUE_NULL,n,n);
 					}else{
 						throw new LazyException("Syntax error",n);
 					}
 				}else if(c==CH_t){
 					// Must be true value
-					if(cbuf[++n]==CH_r && cbuf[++n]==CH_u && cbuf[++n]==CH_e){
-						token=LazyNode.cValueTrue(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
-						}
+					if(charAt(++n)==CH_r && charAt(++n)==CH_u && charAt(++n)==CH_e){
+						addValue(LazyNode.VALUE_TRUE,n,n);
 					}else{
 						throw new LazyException("Syntax error",n);
 					}
 				}else if(c==CH_f){
 					// Must be false value
-					if(cbuf[++n]==CH_a && cbuf[++n]==CH_l && cbuf[++n]==CH_s && cbuf[++n]==CH_e){
-						token=LazyNode.cValueFalse(n);
-						stackTop.addChild(token);
-						token.endIndex=n;
-						if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-							// This was the end of the value for a field, pop that too
-							drop();
-						}
+					if(charAt(++n)==CH_a && charAt(++n)==CH_l && charAt(++n)==CH_s && charAt(++n)==CH_e){
+						addValue(LazyNode.VALUE_FALSE,n,n);
 					}else{
 						throw new LazyException("Syntax error",n);
 					}
 				}else if(c==CH_DASH || !(c<CH_0 || c>CH_9)){
 					// Must be a number
-					token=LazyNode.cNumberValue(n);
-					stackTop.addChild(token);
+					start=n;
 					if(consumeNumber(c)){
-						token.type=LazyNode.VALUE_FLOAT;
+						addValue(LazyNode.VALUE_FLOAT,start,n);
+					}else{
+						addValue(LazyNode.VALUE_INTEGER,start,n);
 					}
-					token.endIndex=n;
 					n--;
-					if(stackTop.type==LazyNode.FIELD || stackTop.type==LazyNode.EFIELD){
-						// This was the end of the value for a field, pop that too
-						drop();
-					}
 				}else{
 					throw new LazyException("Syntax error",n);
-				}				
-			
+				}
+				if(index!=null){
+					checkValueEnd();
+				}
+				if(topType==LazyNode.FIELD || topType==LazyNode.EFIELD){
+					// This was the end of the value for a field, pop that too
+					drop();
+				}
 				break;
 			}
 		}
-		if(size()!=0){
+		return expectValue;
+	}
+
+	// Tokenize a comma separated sequence of values from the current position
+	// to the end of the source as the elements of an array starting at the
+	// given index. The array itself is left open.
+	private void tokenizeElements(final int arrayStart) throws LazyException{
+		if(indexed){
+			index=new LazyIndex(cbuf,bbuf,n,length);
+		}
+		pushRoot(LazyNode.ARRAY,arrayStart);
+		n=next(n-1);
+		if(parse()){
+			throw new LazyException("Unexpected comma without another value",length-1);
+		}
+		if(size()==0){
+			throw new LazyException("Unexpected end of array character",n);
+		}
+		if(size()!=1){
 			throw new LazyException("Unexpected end of JSON data");
 		}
-		if(expectValue){
-			throw new LazyException("Unexpected trailing comma");
+		pop(length);
+		finish();
+	}
+
+	// Tokenize a large root array by first finding the boundaries of all
+	// its elements with a quick scan that only tracks strings and nesting.
+	// Batches of elements are then tokenized on the pool, and the resulting
+	// children are linked together under a new root node.
+	private void tokenizeParallel() throws LazyException{
+		int arrayStart=n;
+		// The index of the opening bracket, each top level comma and the
+		// closing bracket
+		int[] bounds=new int[64];
+		int count=0;
+		bounds[count++]=n;
+		int nesting=0;
+		boolean value=false;
+		char c;
+		for(n++;;n++){
+			if(n>=length){
+				throw new LazyException("Unexpected end of JSON data");
+			}
+			c=charAt(n);
+			if(c==CH_QUOTE){
+				// Escape codes are validated when the elements are tokenized
+				for(n++;;n++){
+					if(n>=length){
+						throw new LazyException("Unexpected end of JSON data");
+					}
+					c=charAt(n);
+					if(c==CH_QUOTE){
+						break;
+					}
+					if(c==CH_BACKSLASH){
+						n++;
+					}
+				}
+				value=true;
+			}else if(c==CH_BEGIN_CURLY || c==CH_BEGIN_BRACKET){
+				nesting++;
+				value=true;
+			}else if(c==CH_END_CURLY || c==CH_END_BRACKET){
+				if(nesting==0){
+					if(c==CH_END_CURLY){
+						throw new LazyException("Unexpected end of object character",n);
+					}
+					break;
+				}
+				nesting--;
+			}else if(c==CH_COMMA && nesting==0){
+				if(!value){
+					throw new LazyException("Unexpected comma",n);
+				}
+				if(count==bounds.length){
+					bounds=Arrays.copyOf(bounds,count*2);
+				}
+				bounds[count++]=n;
+				value=false;
+			}else if(!(c==CH_SPACE || c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN)){
+				value=true;
+			}
+		}
+		if(!value && count>1){
+			throw new LazyException("Unexpected comma without another value",n-1);
+		}
+		int arrayEnd=n;
+		for(n++;n<length;n++){
+			c=charAt(n);
+			if(!(c==CH_SPACE || c==CH_LINEFEED || c==CH_TAB || c==CH_CARRIAGE_RETURN)){
+				throw new LazyException("Unexpected character after end of JSON data",n);
+			}
+		}
+		if(count==bounds.length){
+			bounds=Arrays.copyOf(bounds,count+1);
+		}
+		bounds[count++]=arrayEnd;
+
+		root=new LazyNode(LazyNode.ARRAY,arrayStart);
+		root.endIndex=arrayEnd+1;
+		root.cbuf=cbuf;
+		root.bbuf=bbuf;
+		if(!value){
+			// An empty array
+			return;
+		}
+		List<ForkJoinTask<LazyNode>> tasks=new ArrayList<ForkJoinTask<LazyNode>>();
+		int first=0;
+		for(int i=1;i<count;i++){
+			if(i==count-1 || bounds[i]-bounds[first]>=PARALLEL_BATCH_SIZE){
+				tasks.add(pool.submit(new ElementParser(this,arrayStart,bounds[first]+1,bounds[i])));
+				first=i;
+			}
+		}
+		List<LazyNode> children=new ArrayList<LazyNode>(count);
+		for(ForkJoinTask<LazyNode> task:tasks){
+			LazyNode batch=task.join();
+			batch.expand();
+			LazyNode pointer=batch.child;
+			while(pointer!=null){
+				LazyNode next=pointer.next;
+				pointer.next=null;
+				root.addChild(pointer);
+				children.add(pointer);
+				pointer=next;
+			}
+		}
+		root.childCount=children.size();
+		root.childIndex=children.toArray(new LazyNode[children.size()]);
+	}
+
+	// Tokenizes a range of elements of a large array
+	private static final class ElementParser implements Callable<LazyNode>{
+		private final LazyParser parser;
+		private final int arrayStart;
+
+		private ElementParser(LazyParser source,int arrayStart,int start,int end){
+			if(source.cbuf!=null){
+				parser=new LazyParser(source.cbuf,start,end,source.options);
+			}else{
+				parser=new LazyParser(source.bbuf,start,end,source.options);
+			}
+			this.arrayStart=arrayStart;
+		}
+
+		public LazyNode call() throws LazyException{
+			parser.tokenizeElements(arrayStart);
+			return parser.root;
+		}
+	}
+
+	// Create the root node once all tokens have been parsed
+	private void finish(){
+		if(tape!=null){
+			root=tape.createNode(0);
+		}else{
+			setBuffer(root);
 		}
-		setBuffer(root);
 	}
 
 	private void setBuffer(LazyNode node){
 		node.cbuf=cbuf;
+		node.bbuf=bbuf;
 		LazyNode pointer=node.child;
 		while(pointer!=null){
 			if(pointer.child!=null){
 				setBuffer(pointer);
 			}else{
 				pointer.cbuf=cbuf;
+				pointer.bbuf=bbuf;
 			}
 			pointer=pointer.next;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,243 @@
+package me.doubledutch.lazyjson;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options controlling how the LazyParser builds its representation of a
+ * document. The default options give the same behavior as parsing without
+ * options. Setters return the options instance so calls can be chained.
+ *
+ * An options instance is read when parsing starts, so a single instance may
+ * be shared between threads as long as it is not modified.
+ */
+public final class LazyParserOptions{
+	private boolean tape=false;
+	private boolean structuralIndex=false;
+	private String[] projection=null;
+	private int deferDepth=-1;
+	private ForkJoinPool parallel=null;
+	private boolean keyHashing=false;
+	private boolean valueCache=false;
+	private LazyProjection projectionTree=null;
+
+	/**
+	 * Create a new set of options with all values set to their defaults.
+	 */
+	public LazyParserOptions(){
+
+	}
+
+	/**
+	 * Enable or disable the tape representation. With the tape enabled, the
+	 * parser stores all tokens in a few primitive arrays instead of creating
+	 * a LazyNode object for each of them. Nodes are only created for objects
+	 * and arrays as they are accessed, one level at a time. This greatly
+	 * reduces the number of objects allocated when only parts of a document
+	 * are read.
+	 *
+	 * Elements parsed with the tape enabled create nodes as they are read,
+	 * so they must not be read from multiple threads at the same time.
+	 *
+	 * @param tape true to enable the tape representation
+	 * @return this options instance
+	 */
+	public LazyParserOptions setTape(boolean tape){
+		this.tape=tape;
+		return this;
+	}
+
+	/**
+	 * Returns true if the tape representation is enabled.
+	 *
+	 * @return true if the tape representation is enabled
+	 */
+	public boolean isTape(){
+		return tape;
+	}
+
+	/**
+	 * Enable or disable the structural index. With the index enabled, the
+	 * parser first scans the source 64 characters at a time, building bitmaps
+	 * of all quotes, backslashes and structural characters. The tokenizer then
+	 * jumps directly between those positions, skipping white space and the
+	 * contents of strings entirely. This is considerably faster for UTF-8 data
+	 * with long string values, where eight bytes are compared at a time. For
+	 * string sources and for documents made up of many small values the extra
+	 * pass may cost more than it saves.
+	 *
+	 * @param structuralIndex true to build a structural index before parsing
+	 * @return this options instance
+	 */
+	public LazyParserOptions setStructuralIndex(boolean structuralIndex){
+		this.structuralIndex=structuralIndex;
+		return this;
+	}
+
+	/**
+	 * Returns true if the structural index is enabled.
+	 *
+	 * @return true if the structural index is enabled
+	 */
+	public boolean isStructuralIndex(){
+		return structuralIndex;
+	}
+
+	/**
+	 * Restrict parsing to the given field paths. Steps in a path are separated
+	 * by dots and a step can be followed by [*] to select all elements of an
+	 * array, for example "user.id" or "items[*].sku". A path starting with
+	 * [*] selects the elements of a root array. The full value found at the
+	 * end of a path is parsed.
+	 *
+	 * Everything outside the given paths is skipped over by matching braces
+	 * and brackets only. No tokens are created for skipped values and they
+	 * are not validated beyond their nesting, so a malformed document may be
+	 * accepted as long as the projected parts are well formed. Skipped fields
+	 * and array elements are simply missing from the parsed element, but
+	 * toString on an unmodified element still returns its full source.
+	 *
+	 * @param paths the field paths to parse, or null to parse everything
+	 * @return this options instance
+	 * @throws LazyException if one of the paths is not valid
+	 */
+	public LazyParserOptions setProjection(String... paths) throws LazyException{
+		if(paths==null){
+			projection=null;
+			projectionTree=null;
+		}else{
+			projectionTree=LazyProjection.compile(paths);
+			projection=paths.clone();
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the field paths parsing is restricted to, or null if the full
+	 * document is parsed.
+	 *
+	 * @return the projected field paths or null
+	 */
+	public String[] getProjection(){
+		if(projection==null){
+			return null;
+		}
+		return projection.clone();
+	}
+
+	protected LazyProjection getProjectionTree(){
+		return projectionTree;
+	}
+
+	/**
+	 * Defer parsing of objects and arrays nested deeper than the given depth,
+	 * where the root element is at depth zero. Deferred values are found by
+	 * matching braces and brackets only, and are fully tokenized the first
+	 * time they are accessed, again deferring anything nested too deep below
+	 * them. With a depth of zero only the direct children of the root are
+	 * tokenized up front.
+	 *
+	 * Syntax errors inside a deferred value are reported by the access that
+	 * triggers parsing of it rather than when the document is parsed. Values
+	 * selected by a projection are never deferred. Deferred values are parsed
+	 * as they are read, so the resulting elements must not be read from
+	 * multiple threads at the same time.
+	 *
+	 * @param deferDepth the deepest level to tokenize, or -1 to tokenize everything
+	 * @return this options instance
+	 */
+	public LazyParserOptions setDeferDepth(int deferDepth){
+		this.deferDepth=deferDepth;
+		return this;
+	}
+
+	/**
+	 * Returns the deepest level tokenized when parsing, or -1 if nothing is
+	 * deferred.
+	 *
+	 * @return the deepest level tokenized
+	 */
+	public int getDeferDepth(){
+		return deferDepth;
+	}
+
+	/**
+	 * Enable or disable hashing of field names during parsing. The hash of
+	 * each field name is computed while the name is scanned anyway and stored
+	 * with the field, so lookups can reject most fields by comparing hashes
+	 * before comparing any characters. Names with escape codes, non ASCII
+	 * names in UTF-8 data and all names when the structural index is enabled
+	 * are still hashed on demand, since the parser does not visit those
+	 * characters one at a time.
+	 *
+	 * @param keyHashing true to hash field names during parsing
+	 * @return this options instance
+	 */
+	public LazyParserOptions setKeyHashing(boolean keyHashing){
+		this.keyHashing=keyHashing;
+		return this;
+	}
+
+	/**
+	 * Returns true if field names are hashed during parsing.
+	 *
+	 * @return true if field names are hashed during parsing
+	 */
+	public boolean isKeyHashing(){
+		return keyHashing;
+	}
+
+	/**
+	 * Enable or disable caching of decoded values. With the cache enabled,
+	 * numbers and strings are kept on their token the first time they are
+	 * read, so reading the same value again does not parse or decode its
+	 * characters again. This is worth it when values are read many times,
+	 * at the cost of a little memory for every token read.
+	 *
+	 * Elements parsed with the cache enabled change as they are read, so
+	 * they must not be read from multiple threads at the same time.
+	 *
+	 * @param valueCache true to cache decoded values
+	 * @return this options instance
+	 */
+	public LazyParserOptions setValueCache(boolean valueCache){
+		this.valueCache=valueCache;
+		return this;
+	}
+
+	/**
+	 * Returns true if decoded values are cached.
+	 *
+	 * @return true if decoded values are cached
+	 */
+	public boolean isValueCache(){
+		return valueCache;
+	}
+
+	/**
+	 * Tokenize large root arrays in parallel on the given pool. The parser
+	 * first finds the boundaries of all elements of the array with a quick
+	 * scan of the source, then tokenizes batches of elements as separate
+	 * tasks on the pool. Once parsed, elements of the array can be accessed
+	 * by index in constant time.
+	 *
+	 * Arrays smaller than about a megabyte are always parsed on the calling
+	 * thread.
+	 *
+	 * @param pool the pool to parse on, or null to parse on the calling thread
+	 * @return this options instance
+	 */
+	public LazyParserOptions setParallel(ForkJoinPool pool){
+		this.parallel=pool;
+		return this;
+	}
+
+	/**
+	 * Returns the pool used to parse large arrays, or null if they are parsed
+	 * on the calling thread.
+	 *
+	 * @return the pool used to parse large arrays
+	 */
+	public ForkJoinPool getParallel(){
+		return parallel;
+	}
+}
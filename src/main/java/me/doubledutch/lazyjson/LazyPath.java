@@ -0,0 +1,442 @@
+package me.doubledutch.lazyjson;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled path to a value nested inside an object or array. Evaluating a
+ * path walks the tokens of the document directly, so no LazyObject or
+ * LazyArray is created for the levels in between.
+ *
+ * Paths are given either as a JSON Pointer (RFC 6901), or in a dotted form
+ * where field names are separated by dots and array indexes may also be
+ * written in brackets:
+ *
+ * <pre>
+ * private static final LazyPath TOTAL=LazyPath.compile("/order/items/3/price");
+ * private static final LazyPath SAME=LazyPath.compile("order.items[3].price");
+ * ...
+ * double price=TOTAL.getDouble(obj);
+ * </pre>
+ *
+ * Segments of digits select elements when they are applied to an array and
+ * fields when applied to an object. The dotted form has no escape codes, so
+ * field names holding dots or brackets need a JSON Pointer.
+ *
+ * A compiled path is immutable and may be shared between threads. Evaluating
+ * it is a read of the element it is applied to, which may index the wide
+ * objects and long arrays on the way, so the same rules apply as for reading
+ * the element directly: unmodified documents may be read by several threads,
+ * except for documents parsed with the tape, deferred parsing or the value
+ * cache.
+ */
+public final class LazyPath{
+	private final String expression;
+	// The field name and array index of each segment. The index is -1 for
+	// segments that can not select an array element.
+	private final LazyKey[] keys;
+	private final int[] indexes;
+
+	private LazyPath(String expression,List<String> segments){
+		this.expression=expression;
+		keys=new LazyKey[segments.size()];
+		indexes=new int[segments.size()];
+		for(int i=0;i<keys.length;i++){
+			String segment=segments.get(i);
+			keys[i]=LazyKey.of(segment);
+			indexes[i]=parseIndex(segment);
+		}
+	}
+
+	/**
+	 * Compile a path given as a JSON Pointer or in dotted form. Expressions
+	 * that are empty or start with a slash are read as a JSON Pointer.
+	 *
+	 * @param expression the path to compile
+	 * @return the compiled path
+	 * @throws IllegalArgumentException if the expression is not a valid path
+	 */
+	public static LazyPath compile(String expression){
+		if(expression.length()==0 || expression.charAt(0)=='/'){
+			return new LazyPath(expression,parsePointer(expression));
+		}
+		return new LazyPath(expression,parseDotted(expression));
+	}
+
+	private static List<String> parsePointer(String expression){
+		List<String> segments=new ArrayList<String>();
+		if(expression.length()==0){
+			return segments;
+		}
+		int start=1;
+		while(true){
+			int end=expression.indexOf('/',start);
+			if(end==-1){
+				end=expression.length();
+			}
+			StringBuilder buf=new StringBuilder(end-start);
+			for(int i=start;i<end;i++){
+				char c=expression.charAt(i);
+				if(c=='~'){
+					i++;
+					if(i<end && expression.charAt(i)=='0'){
+						buf.append('~');
+					}else if(i<end && expression.charAt(i)=='1'){
+						buf.append('/');
+					}else{
+						throw new IllegalArgumentException("Invalid escape in JSON Pointer '"+expression+"'");
+					}
+				}else{
+					buf.append(c);
+				}
+			}
+			segments.add(buf.toString());
+			if(end==expression.length()){
+				return segments;
+			}
+			start=end+1;
+		}
+	}
+
+	private static List<String> parseDotted(String expression){
+		List<String> segments=new ArrayList<String>();
+		int i=0;
+		int length=expression.length();
+		while(i<length){
+			char c=expression.charAt(i);
+			if(c=='['){
+				int end=expression.indexOf(']',i);
+				if(end==-1 || parseIndex(expression.substring(i+1,end))==-1){
+					throw new IllegalArgumentException("Invalid array index in path '"+expression+"'");
+				}
+				segments.add(expression.substring(i+1,end));
+				i=end+1;
+			}else{
+				int end=i;
+				while(end<length && expression.charAt(end)!='.' && expression.charAt(end)!='['){
+					end++;
+				}
+				if(end==i){
+					throw new IllegalArgumentException("Empty field name in path '"+expression+"'");
+				}
+				segments.add(expression.substring(i,end));
+				i=end;
+			}
+			if(i<length && expression.charAt(i)=='.'){
+				i++;
+				if(i==length){
+					throw new IllegalArgumentException("Empty field name in path '"+expression+"'");
+				}
+			}else if(i<length && expression.charAt(i)!='['){
+				throw new IllegalArgumentException("Invalid path '"+expression+"'");
+			}
+		}
+		return segments;
+	}
+
+	// Returns the array index given by a segment, or -1 if it is not an
+	// array index. Leading zeros are not allowed, just like in JSON Pointer.
+	private static int parseIndex(String segment){
+		int length=segment.length();
+		if(length==0 || length>9 || (length>1 && segment.charAt(0)=='0')){
+			return -1;
+		}
+		int value=0;
+		for(int i=0;i<length;i++){
+			char c=segment.charAt(i);
+			if(c<'0' || c>'9'){
+				return -1;
+			}
+			value=value*10+(c-'0');
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the token this path selects in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the selected token or null if there is no such value
+	 */
+	private LazyNode find(LazyElement element) throws LazyException{
+		LazyNode token=element.root;
+		for(int i=0;i<keys.length;i++){
+			if(token.type==LazyNode.OBJECT){
+				token.expand();
+				LazyNode field=LazyObject.findField(token,keys[i].name,keys[i]);
+				if(field==null){
+					return null;
+				}
+				token=field.child;
+			}else if(token.type==LazyNode.ARRAY){
+				int index=indexes[i];
+				if(index==-1){
+					return null;
+				}
+				token.expand();
+				LazyNode[] children=token.childIndex;
+				if(children==null && index>LazyArray.CHILD_INDEX_THRESHOLD){
+					children=LazyArray.buildChildIndex(token);
+				}
+				if(children!=null){
+					if(index>=token.childCount){
+						return null;
+					}
+					token=children[index];
+				}else{
+					LazyNode child=token.child;
+					for(int n=0;n<index && child!=null;n++){
+						child=child.next;
+					}
+					if(child==null){
+						return null;
+					}
+					token=child;
+				}
+			}else{
+				return null;
+			}
+		}
+		return token;
+	}
+
+	private LazyNode get(LazyElement element) throws LazyException{
+		LazyNode token=find(element);
+		if(token==null){
+			throw new LazyException("No value at path '"+expression+"'");
+		}
+		return token;
+	}
+
+	/**
+	 * Returns true if there is a value at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return true if there is a value, false otherwise
+	 */
+	public boolean has(LazyElement element){
+		return find(element)!=null;
+	}
+
+	/**
+	 * Returns true if the value at this path in the given element is null.
+	 *
+	 * @param element the object or array to start at
+	 * @return true if the value is null, false otherwise
+	 * @throws LazyException if there is no value at this path
+	 */
+	public boolean isNull(LazyElement element) throws LazyException{
+		return get(element).type==LazyNode.VALUE_NULL;
+	}
+
+	/**
+	 * Returns the type of the value at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the type of the value
+	 * @throws LazyException if there is no value at this path
+	 */
+	public LazyType getType(LazyElement element) throws LazyException{
+		return get(element).getLazyType();
+	}
+
+	/**
+	 * Returns the string value at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the string value or null for a null value
+	 * @throws LazyException if there is no value at this path
+	 */
+	public String getString(LazyElement element) throws LazyException{
+		return get(element).getStringValue();
+	}
+
+	/**
+	 * Returns the string value at this path in the given element or the
+	 * default value if there is no value or it is null.
+	 *
+	 * @param element the object or array to start at
+	 * @param defaultValue the default value
+	 * @return the string value or the default value
+	 */
+	public String optString(LazyElement element,String defaultValue){
+		LazyNode token=find(element);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getStringValue();
+	}
+
+	/**
+	 * Returns true if the value at this path in the given element equals the
+	 * given string, without creating a string for the value.
+	 *
+	 * @param element the object or array to start at
+	 * @param value the string to compare with
+	 * @return true if the value equals the string, false otherwise or if there is no value
+	 */
+	public boolean stringEquals(LazyElement element,String value){
+		LazyNode token=find(element);
+		if(token==null)return false;
+		return token.valueEquals(value);
+	}
+
+	/**
+	 * Returns the integer value at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the integer value
+	 * @throws LazyException if there is no value at this path or it is not a number
+	 */
+	public int getInt(LazyElement element) throws LazyException{
+		return get(element).getIntValue();
+	}
+
+	/**
+	 * Returns the integer value at this path in the given element or the
+	 * default value if there is no value or it is null.
+	 *
+	 * @param element the object or array to start at
+	 * @param defaultValue the default value
+	 * @return the integer value or the default value
+	 */
+	public int optInt(LazyElement element,int defaultValue){
+		LazyNode token=find(element);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getIntValue();
+	}
+
+	/**
+	 * Returns the long value at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the long value
+	 * @throws LazyException if there is no value at this path or it is not a number
+	 */
+	public long getLong(LazyElement element) throws LazyException{
+		return get(element).getLongValue();
+	}
+
+	/**
+	 * Returns the long value at this path in the given element or the
+	 * default value if there is no value or it is null.
+	 *
+	 * @param element the object or array to start at
+	 * @param defaultValue the default value
+	 * @return the long value or the default value
+	 */
+	public long optLong(LazyElement element,long defaultValue){
+		LazyNode token=find(element);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getLongValue();
+	}
+
+	/**
+	 * Returns the double value at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the double value
+	 * @throws LazyException if there is no value at this path or it is not a number
+	 */
+	public double getDouble(LazyElement element) throws LazyException{
+		return get(element).getDoubleValue();
+	}
+
+	/**
+	 * Returns the double value at this path in the given element or the
+	 * default value if there is no value or it is null.
+	 *
+	 * @param element the object or array to start at
+	 * @param defaultValue the default value
+	 * @return the double value or the default value
+	 */
+	public double optDouble(LazyElement element,double defaultValue){
+		LazyNode token=find(element);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getDoubleValue();
+	}
+
+	/**
+	 * Returns the value at this path in the given element as a BigInteger.
+	 *
+	 * @param element the object or array to start at
+	 * @return the integer value
+	 * @throws LazyException if there is no value at this path or it is not a number
+	 */
+	public BigInteger getBigInteger(LazyElement element) throws LazyException{
+		return get(element).getBigIntegerValue();
+	}
+
+	/**
+	 * Returns the value at this path in the given element as a BigDecimal.
+	 *
+	 * @param element the object or array to start at
+	 * @return the decimal value
+	 * @throws LazyException if there is no value at this path or it is not a number
+	 */
+	public BigDecimal getBigDecimal(LazyElement element) throws LazyException{
+		return get(element).getBigDecimalValue();
+	}
+
+	/**
+	 * Returns the boolean value at this path in the given element. Strings
+	 * holding true or false are accepted, just like for LazyObject.
+	 *
+	 * @param element the object or array to start at
+	 * @return the boolean value
+	 * @throws LazyException if there is no value at this path or it is not a boolean
+	 */
+	public boolean getBoolean(LazyElement element) throws LazyException{
+		return get(element).getBooleanValue();
+	}
+
+	/**
+	 * Returns the boolean value at this path in the given element or the
+	 * default value if there is no value or it is null.
+	 *
+	 * @param element the object or array to start at
+	 * @param defaultValue the default value
+	 * @return the boolean value or the default value
+	 * @throws LazyException if the value is not a boolean
+	 */
+	public boolean optBoolean(LazyElement element,boolean defaultValue){
+		LazyNode token=find(element);
+		if(token==null)return defaultValue;
+		if(token.type==LazyNode.VALUE_NULL)return defaultValue;
+		return token.getBooleanValue();
+	}
+
+	/**
+	 * Returns the object at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the object value
+	 * @throws LazyException if there is no value at this path or it is not an object
+	 */
+	public LazyObject getJSONObject(LazyElement element) throws LazyException{
+		LazyNode token=get(element);
+		if(token.type!=LazyNode.OBJECT)throw new LazyException("Requested value is not an object",token);
+		return new LazyObject(token);
+	}
+
+	/**
+	 * Returns the array at this path in the given element.
+	 *
+	 * @param element the object or array to start at
+	 * @return the array value
+	 * @throws LazyException if there is no value at this path or it is not an array
+	 */
+	public LazyArray getJSONArray(LazyElement element) throws LazyException{
+		LazyNode token=get(element);
+		if(token.type!=LazyNode.ARRAY)throw new LazyException("Requested value is not an array",token);
+		return new LazyArray(token);
+	}
+
+	public String toString(){
+		return expression;
+	}
+}
@@ -0,0 +1,145 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A tree of field paths used by the parser to decide which parts of a
+ * document to build tokens for. Each node represents one step of a path,
+ * either a named field of an object or any element of an array. A node
+ * where a path ends selects the full value found there.
+ */
+final class LazyProjection{
+	private final String name;
+	private final byte[] utf8;
+	// Children for named fields and the child for all array elements
+	private LazyProjection[] fields=new LazyProjection[0];
+	protected LazyProjection elements=null;
+	// True if a path ends at this node
+	protected boolean leaf=false;
+
+	private LazyProjection(String name){
+		this.name=name;
+		if(name!=null){
+			utf8=name.getBytes(StandardCharsets.UTF_8);
+		}else{
+			utf8=null;
+		}
+	}
+
+	/**
+	 * Build a projection tree from a list of paths. Path steps are separated
+	 * by dots, and a step may be followed by [*] to select all elements of an
+	 * array, for example items[*].sku. A path starting with [*] selects the
+	 * elements of a root array.
+	 *
+	 * @param paths the paths to include
+	 * @return the root node of the projection
+	 * @throws LazyException if one of the paths is not valid
+	 */
+	protected static LazyProjection compile(String[] paths) throws LazyException{
+		LazyProjection root=new LazyProjection(null);
+		for(String path:paths){
+			if(path==null || path.length()==0){
+				throw new LazyException("Empty projection path");
+			}
+			LazyProjection node=root;
+			int index=0;
+			while(index<path.length()){
+				if(path.startsWith("[*]",index)){
+					if(node.elements==null){
+						node.elements=new LazyProjection(null);
+					}
+					node=node.elements;
+					index+=3;
+				}else{
+					if(node!=root || index>0){
+						if(path.charAt(index)!='.'){
+							throw new LazyException("Expected '.' in projection path "+path,index);
+						}
+						index++;
+					}
+					int end=index;
+					while(end<path.length() && path.charAt(end)!='.' && path.charAt(end)!='['){
+						end++;
+					}
+					if(end==index){
+						throw new LazyException("Empty field name in projection path "+path,index);
+					}
+					node=node.addField(path.substring(index,end));
+					index=end;
+				}
+			}
+			node.leaf=true;
+		}
+		return root;
+	}
+
+	private LazyProjection addField(String key){
+		for(LazyProjection field:fields){
+			if(field.name.equals(key)){
+				return field;
+			}
+		}
+		LazyProjection field=new LazyProjection(key);
+		fields=Arrays.copyOf(fields,fields.length+1);
+		fields[fields.length-1]=field;
+		return field;
+	}
+
+	/**
+	 * Find the child for a field name found in the source.
+	 *
+	 * @param cbuf the character source or null
+	 * @param bbuf the UTF-8 source or null
+	 * @param start the index of the first character of the field name
+	 * @param end the index one past the last character of the field name
+	 * @param escaped true if the field name contains escape codes
+	 * @return the matching child or null if the field is not projected
+	 */
+	protected LazyProjection field(char[] cbuf,ByteBuffer bbuf,int start,int end,boolean escaped){
+		int length=end-start;
+		if(escaped){
+			LazyNode token=new LazyNode(LazyNode.EFIELD,start);
+			token.endIndex=end;
+			token.cbuf=cbuf;
+			token.bbuf=bbuf;
+			String key=token.getStringValue();
+			for(LazyProjection field:fields){
+				if(field.name.equals(key)){
+					return field;
+				}
+			}
+			return null;
+		}
+		for(LazyProjection field:fields){
+			if(cbuf!=null){
+				if(field.name.length()==length && matches(field.name,cbuf,start)){
+					return field;
+				}
+			}else if(field.utf8.length==length && matches(field.utf8,bbuf,start)){
+				return field;
+			}
+		}
+		return null;
+	}
+
+	private static boolean matches(String key,char[] cbuf,int start){
+		for(int i=0;i<key.length();i++){
+			if(key.charAt(i)!=cbuf[start+i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(byte[] key,ByteBuffer bbuf,int start){
+		for(int i=0;i<key.length;i++){
+			if(key[i]!=bbuf.get(start+i)){
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,275 @@
+package me.doubledutch.lazyjson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a sequence of JSON objects and arrays from a stream, such as
+ * newline delimited JSON or documents simply concatenated with optional
+ * white space between them.
+ *
+ * The stream is read in blocks into a buffer that is reused for the whole
+ * stream. Document boundaries are found by tracking the nesting of braces
+ * and brackets outside of strings, so documents may span any number of
+ * reads, and the buffer only grows if a single document does not fit in it.
+ * Each document is copied out of the buffer into an array of its own and
+ * parsed in place from there, reusing a single parser for all documents.
+ *
+ * Character streams are parsed from a Reader, while byte streams are read
+ * from an InputStream or ReadableByteChannel and must be UTF-8 encoded.
+ * A LazyReader is not safe for use by multiple threads.
+ */
+public final class LazyReader implements Closeable{
+	private static final int BUFFER_SIZE=64*1024;
+
+	// Exactly one of these sources is set
+	private final Reader reader;
+	private final InputStream stream;
+	private final ReadableByteChannel channel;
+
+	// The read buffer, chars for a reader and bytes for the other sources
+	private char[] cbuf;
+	private byte[] bbuf;
+	private ByteBuffer channelBuffer;
+	// Index of the next unread character in the buffer, and one past the
+	// last valid character in it
+	private int position=0;
+	private int limit=0;
+	private boolean endOfStream=false;
+
+	private final LazyParser parser;
+
+	/**
+	 * Create a reader for JSON documents from a character stream.
+	 *
+	 * @param reader the source of json data
+	 */
+	public LazyReader(Reader reader){
+		this(reader,null);
+	}
+
+	/**
+	 * Create a reader for JSON documents from a character stream using the
+	 * given parser options.
+	 *
+	 * @param reader the source of json data
+	 * @param options the parser options to use, or null for the defaults
+	 */
+	public LazyReader(Reader reader,LazyParserOptions options){
+		this.reader=reader;
+		this.stream=null;
+		this.channel=null;
+		cbuf=new char[BUFFER_SIZE];
+		parser=new LazyParser(cbuf,0,0,options);
+	}
+
+	/**
+	 * Create a reader for JSON documents from a UTF-8 encoded byte stream.
+	 *
+	 * @param stream the source of json data
+	 */
+	public LazyReader(InputStream stream){
+		this(stream,null);
+	}
+
+	/**
+	 * Create a reader for JSON documents from a UTF-8 encoded byte stream
+	 * using the given parser options.
+	 *
+	 * @param stream the source of json data
+	 * @param options the parser options to use, or null for the defaults
+	 */
+	public LazyReader(InputStream stream,LazyParserOptions options){
+		this.reader=null;
+		this.stream=stream;
+		this.channel=null;
+		bbuf=new byte[BUFFER_SIZE];
+		parser=new LazyParser(ByteBuffer.wrap(bbuf,0,0),options);
+	}
+
+	/**
+	 * Create a reader for JSON documents from a UTF-8 encoded channel. The
+	 * channel must be in blocking mode.
+	 *
+	 * @param channel the source of json data
+	 */
+	public LazyReader(ReadableByteChannel channel){
+		this(channel,null);
+	}
+
+	/**
+	 * Create a reader for JSON documents from a UTF-8 encoded channel using
+	 * the given parser options. The channel must be in blocking mode.
+	 *
+	 * @param channel the source of json data
+	 * @param options the parser options to use, or null for the defaults
+	 */
+	public LazyReader(ReadableByteChannel channel,LazyParserOptions options){
+		this.reader=null;
+		this.stream=null;
+		this.channel=channel;
+		bbuf=new byte[BUFFER_SIZE];
+		channelBuffer=ByteBuffer.wrap(bbuf);
+		parser=new LazyParser(ByteBuffer.wrap(bbuf,0,0),options);
+	}
+
+	private char charAt(int i){
+		if(cbuf!=null){
+			return cbuf[i];
+		}
+		return (char)(bbuf[i] & 0xFF);
+	}
+
+	/**
+	 * Read and parse the next document in the stream.
+	 *
+	 * @return either a LazyObject or LazyArray, or null at the end of the stream
+	 * @throws IOException if the stream could not be read
+	 * @throws LazyException if the next document could not be parsed
+	 */
+	public LazyElement next() throws IOException,LazyException{
+		// Skip white space between documents
+		for(;;){
+			if(position==limit && !fill()){
+				return null;
+			}
+			char c=charAt(position);
+			if(!(c==' ' || c=='\n' || c=='\r' || c=='\t')){
+				break;
+			}
+			position++;
+		}
+		char c=charAt(position);
+		if(!(c=='{' || c=='[')){
+			throw new LazyException("Expected the start of a JSON object or array");
+		}
+		// Find the end of the document, keeping the scan state between reads
+		int depth=0;
+		boolean string=false;
+		boolean escape=false;
+		int index=position;
+		for(;;){
+			if(index==limit){
+				int offset=position;
+				if(!fill()){
+					throw new LazyException("Unexpected end of JSON data");
+				}
+				// The buffer may have been compacted
+				index-=offset-position;
+			}
+			c=charAt(index++);
+			if(string){
+				if(escape){
+					escape=false;
+				}else if(c=='\\'){
+					escape=true;
+				}else if(c=='"'){
+					string=false;
+				}
+			}else if(c=='"'){
+				string=true;
+			}else if(c=='{' || c=='['){
+				depth++;
+			}else if(c=='}' || c==']'){
+				depth--;
+				if(depth==0){
+					break;
+				}
+			}
+		}
+		int start=position;
+		position=index;
+		return parse(start,index);
+	}
+
+	private LazyElement parse(int start,int end) throws LazyException{
+		int size=end-start;
+		if(cbuf!=null){
+			char[] source=new char[size];
+			System.arraycopy(cbuf,start,source,0,size);
+			parser.reset(source,0,size);
+		}else{
+			byte[] source=new byte[size];
+			System.arraycopy(bbuf,start,source,0,size);
+			parser.reset(ByteBuffer.wrap(source));
+		}
+		parser.tokenize();
+		if(parser.root.type==LazyNode.OBJECT){
+			return new LazyObject(parser.root);
+		}
+		return new LazyArray(parser.root);
+	}
+
+	// Read more data into the buffer, first moving the unread data to the
+	// start of the buffer or growing it if there is no space left. Returns
+	// false if the end of the stream has been reached.
+	private boolean fill() throws IOException{
+		if(endOfStream){
+			return false;
+		}
+		int capacity=cbuf!=null?cbuf.length:bbuf.length;
+		if(limit==capacity){
+			int size=limit-position;
+			if(position==0){
+				capacity=capacity*2;
+			}
+			if(cbuf!=null){
+				char[] buf=cbuf;
+				if(capacity!=cbuf.length){
+					buf=new char[capacity];
+				}
+				System.arraycopy(cbuf,position,buf,0,size);
+				cbuf=buf;
+			}else{
+				byte[] buf=bbuf;
+				if(capacity!=bbuf.length){
+					buf=new byte[capacity];
+				}
+				System.arraycopy(bbuf,position,buf,0,size);
+				if(buf!=bbuf && channel!=null){
+					channelBuffer=ByteBuffer.wrap(buf);
+				}
+				bbuf=buf;
+			}
+			position=0;
+			limit=size;
+		}
+		int count=0;
+		while(count==0){
+			if(reader!=null){
+				count=reader.read(cbuf,limit,cbuf.length-limit);
+			}else if(stream!=null){
+				count=stream.read(bbuf,limit,bbuf.length-limit);
+			}else{
+				channelBuffer.limit(bbuf.length);
+				channelBuffer.position(limit);
+				count=channel.read(channelBuffer);
+			}
+		}
+		if(count<0){
+			endOfStream=true;
+			return false;
+		}
+		limit+=count;
+		return true;
+	}
+
+	/**
+	 * Close the underlying stream.
+	 *
+	 * @throws IOException if the stream could not be closed
+	 */
+	public void close() throws IOException{
+		if(reader!=null){
+			reader.close();
+		}else if(stream!=null){
+			stream.close();
+		}else{
+			channel.close();
+		}
+	}
+}
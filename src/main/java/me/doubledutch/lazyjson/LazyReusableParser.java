@@ -0,0 +1,186 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses a sequence of documents with a single parser, reusing as much memory
+ * as possible between them. This is meant for handlers that parse a large
+ * number of small documents, where the garbage created by constructing a new
+ * parser, source buffer and set of nodes for every document adds up.
+ *
+ * Each call to parse returns an element that stays valid until release is
+ * called. Once released, the nodes of the document are recycled for the
+ * next documents, a string source copied into the internal buffer is
+ * overwritten and the returned LazyObject or LazyArray instance is reused.
+ * Values taken from the document, such as strings and numbers, are not
+ * affected. Releasing is optional; a document that is never released is
+ * simply left to the garbage collector and the parser allocates new memory
+ * for the next one.
+ *
+ * Once a steady state is reached, parsing and releasing a document does not
+ * allocate any memory unless it is larger or more deeply nested than any of
+ * the documents before it. Nothing is recycled from documents parsed in tape
+ * mode or with deferred parsing beyond the nodes actually created.
+ *
+ * Do not release a document if an element taken from it was put into
+ * another document, or if an element of another document was put into it,
+ * since the nodes are then shared between them. An instance must only be
+ * used by a single thread; use local to get an instance for the current
+ * thread.
+ */
+public final class LazyReusableParser{
+	private static final int BUFFER_SIZE=1024;
+
+	private static final ThreadLocal<LazyReusableParser> LOCAL=new ThreadLocal<LazyReusableParser>(){
+		protected LazyReusableParser initialValue(){
+			return new LazyReusableParser();
+		}
+	};
+
+	private final LazyParser parser;
+
+	// The buffer string sources are copied into, owned by this parser
+	private char[] cbuf=new char[BUFFER_SIZE];
+	// The last byte array given and the buffer wrapping it. Parsing never
+	// changes the position or limit, so the buffer can be shared.
+	private byte[] utf8=null;
+	private ByteBuffer wrapper=null;
+
+	// Element instances handed out for the current document, reused once
+	// it has been released
+	private LazyObject object=null;
+	private LazyArray array=null;
+	private LazyElement current=null;
+
+	/**
+	 * Create a reusable parser with the default options.
+	 */
+	public LazyReusableParser(){
+		this(null);
+	}
+
+	/**
+	 * Create a reusable parser with the given options.
+	 *
+	 * @param options the parser options to use, or null for the defaults
+	 */
+	public LazyReusableParser(LazyParserOptions options){
+		parser=new LazyParser(cbuf,0,0,options);
+	}
+
+	/**
+	 * Returns a reusable parser with the default options for the current
+	 * thread.
+	 *
+	 * @return the parser for the current thread
+	 */
+	public static LazyReusableParser local(){
+		return LOCAL.get();
+	}
+
+	/**
+	 * Parse a string, copying it into a buffer owned by this parser.
+	 *
+	 * @param source the source json data
+	 * @return either a LazyObject or LazyArray
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement parse(String source) throws LazyException{
+		int size=source.length();
+		if(current!=null || cbuf.length<size){
+			// The buffer of a document that is still in use can not be reused
+			cbuf=new char[Math.max(size,cbuf.length)];
+		}
+		source.getChars(0,size,cbuf,0);
+		parser.reset(cbuf,0,size);
+		return tokenize();
+	}
+
+	/**
+	 * Parse a part of a character array in place. The array must not be
+	 * modified until the document has been released.
+	 *
+	 * @param source the source json data
+	 * @param offset the index of the first character to parse
+	 * @param len the number of characters to parse
+	 * @return either a LazyObject or LazyArray
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement parse(char[] source,int offset,int len) throws LazyException{
+		parser.reset(source,offset,offset+len);
+		return tokenize();
+	}
+
+	/**
+	 * Parse a part of an array of UTF-8 encoded data in place. The array must
+	 * not be modified until the document has been released.
+	 *
+	 * @param source the source json data
+	 * @param offset the index of the first byte to parse
+	 * @param len the number of bytes to parse
+	 * @return either a LazyObject or LazyArray
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement parse(byte[] source,int offset,int len) throws LazyException{
+		if(source!=utf8){
+			utf8=source;
+			wrapper=ByteBuffer.wrap(source);
+		}
+		parser.reset(wrapper,offset,offset+len);
+		return tokenize();
+	}
+
+	/**
+	 * Parse the UTF-8 encoded data between the position and limit of a
+	 * buffer in place. The data must not be modified until the document has
+	 * been released.
+	 *
+	 * @param buf the source json data
+	 * @return either a LazyObject or LazyArray
+	 * @throws LazyException if the data could not be parsed
+	 */
+	public LazyElement parse(ByteBuffer buf) throws LazyException{
+		parser.reset(buf);
+		return tokenize();
+	}
+
+	private LazyElement tokenize() throws LazyException{
+		parser.tokenize();
+		LazyNode root=parser.root;
+		if(current!=null){
+			// The previous document is still in use
+			object=null;
+			array=null;
+		}
+		if(root.type==LazyNode.OBJECT){
+			if(object==null){
+				object=new LazyObject(root);
+			}else{
+				object.setRoot(root);
+			}
+			current=object;
+		}else{
+			if(array==null){
+				array=new LazyArray(root);
+			}else{
+				array.setRoot(root);
+			}
+			current=array;
+		}
+		return current;
+	}
+
+	/**
+	 * Release the document returned by the last call to parse. The document
+	 * and every element taken from it must not be used afterwards. Calling
+	 * release when there is no document to release does nothing.
+	 */
+	public void release(){
+		if(current==null){
+			return;
+		}
+		parser.release(current.root);
+		current.root=null;
+		current=null;
+	}
+}
@@ -0,0 +1,146 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compact encoding of a parsed document where tokens are stored in a set of
+ * primitive arrays instead of as individual LazyNode objects.
+ *
+ * Tokens are stored in document order, so the first child of a container
+ * (or the value of a field) is always found immediately after it. For every
+ * token the next array holds the index of the first token following its
+ * subtree, which doubles as the index of its next sibling. Walking the
+ * children of a container is thus a simple loop of array lookups.
+ *
+ * LazyNode objects are only created when an element is actually accessed,
+ * one level at a time, by calling expand on the unexpanded container nodes.
+ */
+final class LazyTape{
+	// Flag set on the type of objects and arrays that have not been tokenized
+	protected static final byte DEFERRED=0x40;
+
+	protected byte[] type;
+	protected int[] start;
+	protected int[] end;
+	protected int[] next;
+	// The hash of each field name, only set when field names are hashed
+	protected int[] hash=null;
+	protected int size=0;
+
+	// The source buffer shared by all tokens on this tape
+	protected final char[] cbuf;
+	protected final ByteBuffer bbuf;
+	// The options used to parse deferred values
+	protected LazyParserOptions deferOptions=null;
+	// Set when nodes should keep their values once decoded
+	protected boolean valueCache=false;
+
+	protected LazyTape(int capacity,char[] cbuf,ByteBuffer bbuf){
+		if(capacity<16){
+			capacity=16;
+		}
+		type=new byte[capacity];
+		start=new int[capacity];
+		end=new int[capacity];
+		next=new int[capacity];
+		this.cbuf=cbuf;
+		this.bbuf=bbuf;
+	}
+
+	/**
+	 * Append a new token to the tape. The end and next index must be set by
+	 * the caller once they are known.
+	 *
+	 * @param tokenType the type of the token
+	 * @param startIndex the index into the source where this token was found
+	 * @return the tape index of the new token
+	 */
+	protected int add(byte tokenType,int startIndex){
+		if(size==type.length){
+			grow();
+		}
+		type[size]=tokenType;
+		start[size]=startIndex;
+		end[size]=-1;
+		next[size]=size+1;
+		return size++;
+	}
+
+	private void grow(){
+		int capacity=type.length*2;
+		byte[] newType=new byte[capacity];
+		System.arraycopy(type,0,newType,0,size);
+		type=newType;
+		int[] newStart=new int[capacity];
+		System.arraycopy(start,0,newStart,0,size);
+		start=newStart;
+		int[] newEnd=new int[capacity];
+		System.arraycopy(end,0,newEnd,0,size);
+		end=newEnd;
+		int[] newNext=new int[capacity];
+		System.arraycopy(next,0,newNext,0,size);
+		next=newNext;
+		if(hash!=null){
+			int[] newHash=new int[capacity];
+			System.arraycopy(hash,0,newHash,0,size);
+			hash=newHash;
+		}
+	}
+
+	/**
+	 * Create a LazyNode for the token at the given index. Objects and arrays
+	 * are returned unexpanded, with a reference back to this tape. Fields are
+	 * returned with their value attached.
+	 *
+	 * @param index the tape index of the token
+	 * @return a new node for the token
+	 */
+	protected LazyNode createNode(int index){
+		byte tokenType=type[index];
+		if((tokenType & DEFERRED)!=0){
+			LazyNode node=new LazyNode((byte)(tokenType & ~DEFERRED),start[index]);
+			node.endIndex=end[index];
+			node.cbuf=cbuf;
+			node.bbuf=bbuf;
+			node.deferred=deferOptions;
+			node.cache=valueCache;
+			return node;
+		}
+		LazyNode node=new LazyNode(tokenType,start[index]);
+		node.endIndex=end[index];
+		node.cbuf=cbuf;
+		node.bbuf=bbuf;
+		node.cache=valueCache;
+		if(node.type==LazyNode.OBJECT || node.type==LazyNode.ARRAY){
+			if(next[index]>index+1){
+				node.tape=this;
+				node.tapeIndex=index;
+			}
+		}else if(node.type==LazyNode.FIELD || node.type==LazyNode.EFIELD){
+			if(hash!=null){
+				node.hash=hash[index];
+			}
+			LazyNode value=createNode(index+1);
+			node.child=value;
+			node.lastChild=value;
+			value.parent=node;
+		}
+		return node;
+	}
+
+	/**
+	 * Create nodes for all children of the container at the given index and
+	 * attach them to the given node.
+	 *
+	 * @param node the node representing the container
+	 * @param index the tape index of the container
+	 */
+	protected void expand(LazyNode node,int index){
+		int last=next[index];
+		int pointer=index+1;
+		while(pointer<last){
+			node.addChild(createNode(pointer));
+			pointer=next[pointer];
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.*;
+
+public class ArrayIndexTest{
+    private static String numbers(int count){
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<count;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append(i);
+        }
+        buf.append("]");
+        return buf.toString();
+    }
+
+    private static void assertContents(List<Integer> expected,LazyArray array) throws LazyException{
+        for(int i=expected.size()-1;i>=0;i--){
+            assertEquals((int)expected.get(i),array.getInt(i));
+        }
+        for(int i=0;i<expected.size();i++){
+            assertEquals((int)expected.get(i),array.getInt(i));
+        }
+        assertNull(array.opt(expected.size()));
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<expected.size();i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append(expected.get(i));
+        }
+        buf.append("]");
+        assertEquals(buf.toString(),array.toString());
+    }
+
+    @Test
+    public void testReverse() throws LazyException{
+        LazyArray array=new LazyArray(numbers(1000));
+        for(int i=999;i>=0;i--){
+            assertEquals(i,array.getInt(i));
+        }
+        assertNotNull(array.root.childIndex);
+        assertEquals(1000,array.length());
+    }
+
+    @Test
+    public void testForwardNeedsNoIndex() throws LazyException{
+        LazyArray array=new LazyArray(numbers(1000));
+        for(int i=0;i<1000;i++){
+            assertEquals(i,array.getInt(i));
+        }
+        assertNull(array.root.childIndex);
+    }
+
+    @Test
+    public void testBinarySearch() throws LazyException{
+        LazyArray array=new LazyArray(numbers(10000));
+        for(int target=0;target<10000;target+=37){
+            int low=0;
+            int high=array.length()-1;
+            while(low<high){
+                int mid=(low+high)>>>1;
+                if(array.getInt(mid)<target){
+                    low=mid+1;
+                }else{
+                    high=mid;
+                }
+            }
+            assertEquals(target,low);
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testOutOfBounds() throws LazyException{
+        LazyArray array=new LazyArray(numbers(100));
+        assertEquals(50,array.getInt(50));
+        array.getInt(100);
+    }
+
+    @Test
+    public void testNegativeInsert() throws LazyException{
+        LazyArray array=new LazyArray(numbers(100));
+        assertEquals(99,array.getInt(99));
+        try{
+            array.put(-1,"a");
+            fail();
+        }catch(LazyException e){
+        }
+        array=new LazyArray(numbers(3));
+        try{
+            array.put(-1,"a");
+            fail();
+        }catch(LazyException e){
+        }
+        assertEquals("[0,1,2]",array.toString());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception{
+        for(int round=0;round<20;round++){
+            final LazyObject obj=new LazyObject("{\"list\":"+numbers(1000)+"}");
+            final Throwable[] errors=new Throwable[4];
+            Thread[] threads=new Thread[errors.length];
+            for(int t=0;t<threads.length;t++){
+                final int slot=t;
+                threads[t]=new Thread(){
+                    public void run(){
+                        try{
+                            LazyArray array=obj.getJSONArray("list");
+                            for(int i=999;i>=0;i--){
+                                assertEquals(i,array.getInt(i));
+                            }
+                            assertEquals(500,LazyPath.compile("list[500]").getInt(obj));
+                        }catch(Throwable e){
+                            errors[slot]=e;
+                        }
+                    }
+                };
+            }
+            for(Thread thread:threads){
+                thread.start();
+            }
+            for(Thread thread:threads){
+                thread.join();
+            }
+            for(Throwable e:errors){
+                assertNull(e);
+            }
+        }
+    }
+
+    @Test
+    public void testModify() throws LazyException{
+        LazyArray array=new LazyArray(numbers(100));
+        List<Integer> expected=new ArrayList<Integer>();
+        for(int i=0;i<100;i++){
+            expected.add(i);
+        }
+        assertEquals(99,array.getInt(99));
+        assertNotNull(array.root.childIndex);
+        Random random=new Random(7);
+        for(int i=0;i<500;i++){
+            int op=random.nextInt(4);
+            if(op==0 || expected.size()==0){
+                array.put(-i);
+                expected.add(-i);
+            }else if(op==1){
+                int index=random.nextInt(expected.size()+1);
+                array.put(index,1000+i);
+                expected.add(index,1000+i);
+            }else{
+                int index=random.nextInt(expected.size());
+                array.remove(index);
+                expected.remove(index);
+            }
+            if(i%50==0){
+                assertContents(expected,array);
+            }
+        }
+        assertContents(expected,array);
+    }
+
+    @Test
+    public void testModifyWithoutIndex() throws LazyException{
+        LazyArray array=new LazyArray("[1,2,3]");
+        array.remove(2);
+        array.put(4);
+        array.put(0,0);
+        array.put(3,5);
+        assertEquals("[0,1,2,5,4]",array.toString());
+        array.remove(4);
+        array.put(6);
+        assertEquals("[0,1,2,5,6]",array.toString());
+    }
+
+    @Test
+    public void testEmpty() throws LazyException{
+        LazyArray array=new LazyArray("[]");
+        array.put(0,"a");
+        array.put("b");
+        assertEquals("[\"a\",\"b\"]",array.toString());
+        array.remove(1);
+        array.remove(0);
+        array.put("c");
+        assertEquals("[\"c\"]",array.toString());
+    }
+
+    @Test
+    public void testTape() throws LazyException{
+        LazyArray array=new LazyArray(numbers(500),new LazyParserOptions().setTape(true));
+        for(int i=499;i>=0;i-=3){
+            assertEquals(i,array.getInt(i));
+        }
+        array.remove(0);
+        assertEquals(499,array.getInt(498));
+    }
+}
@@ -0,0 +1,111 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CompactTest{
+    private static final String DATA="{\"id\":7, \"name\":\"caf\\u00e9 \\\"x\\\"\",\"e\\\"k\":true,\"inner\":{\"list\":[1,2.5,null,false]},\"other\":{\"v\":1}}";
+
+    private void check(LazyObject obj) throws LazyException{
+        LazyObject inner=obj.getJSONObject("inner");
+        obj.put("added","new \"value\"");
+        obj.put("id",8);
+        obj.remove("other");
+        inner.getJSONArray("list").put(true);
+        String expected="{\"id\":8,\"name\":\"caf\\u00e9 \\\"x\\\"\",\"e\\\"k\":true,\"inner\":{\"list\":[1,2.5,null,false,true]},\"added\":\"new \\\"value\\\"\"}";
+        assertEquals(expected,obj.toString());
+
+        obj.compact();
+        assertFalse(obj.root.isDirty());
+        assertNull(obj.root.dirtyBuf);
+        assertEquals(expected,obj.toString());
+        assertEquals(expected.length(),obj.getSourceLength());
+        assertEquals(8,obj.getInt("id"));
+        assertEquals("caf\u00e9 \"x\"",obj.getString("name"));
+        assertTrue(obj.getBoolean("e\"k"));
+        assertEquals("new \"value\"",obj.getString("added"));
+        assertEquals(2.5,obj.getJSONObject("inner").getJSONArray("list").getDouble(1),0);
+        assertTrue(obj.getJSONObject("inner").getJSONArray("list").isNull(2));
+
+        // Elements taken before compacting still work and report changes
+        inner.put("z",1);
+        assertTrue(obj.root.isDirty());
+        assertEquals(1,obj.getJSONObject("inner").getInt("z"));
+        assertEquals(new LazyObject(obj.toString()).getJSONObject("inner").toString(),"{\"list\":[1,2.5,null,false,true],\"z\":1}");
+    }
+
+    @Test
+    public void testCompact() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testDeferredStaysDeferred() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":{ \"c\" : [1, 2] }}",new LazyParserOptions().setDeferDepth(0));
+        obj.put("a",2);
+        obj.compact();
+        assertNotNull(obj.root.child.next.child.deferred);
+        assertEquals("{\"a\":2,\"b\":{ \"c\" : [1, 2] }}",obj.toString());
+        assertEquals(2,obj.getJSONObject("b").getJSONArray("c").getInt(1));
+    }
+
+    @Test
+    public void testSharedElement() throws LazyException{
+        LazyObject obj=new LazyObject();
+        LazyObject shared=new LazyObject("{\"x\":\"y\"}");
+        obj.put("a",shared);
+        obj.put("b",shared);
+        obj.compact();
+        assertEquals("{\"a\":{\"x\":\"y\"},\"b\":{\"x\":\"y\"}}",obj.toString());
+        assertEquals("y",obj.getJSONObject("b").getString("x"));
+    }
+
+    @Test
+    public void testFieldHoldingArrayElement() throws LazyException{
+        LazyObject root=new LazyObject("{\"g\":2.5}");
+        LazyArray arr=new LazyArray();
+        root.put("k0",arr);
+        LazyObject o5=new LazyObject();
+        arr.put(0,o5);
+        LazyObject o6=new LazyObject();
+        arr.put(0,o6);
+        LazyObject o14=new LazyObject();
+        root.put("k1",o14);
+        o14.put("k5",o6);
+        o14.compact();
+        assertEquals("{\"g\":2.5,\"k0\":[{},{}],\"k1\":{\"k5\":{}}}",root.toString());
+        assertEquals("[{},{}]",arr.toString());
+        root.compact();
+        assertEquals("{\"g\":2.5,\"k0\":[{},{}],\"k1\":{\"k5\":{}}}",root.toString());
+    }
+
+    @Test
+    public void testArray() throws LazyException{
+        LazyArray array=new LazyArray("[1, \"two\", {\"three\":3}]");
+        array.remove(0);
+        array.put("four");
+        array.compact();
+        assertFalse(array.root.isDirty());
+        assertEquals("[\"two\",{\"three\":3},\"four\"]",array.toString());
+        assertEquals(3,array.getJSONObject(1).getInt("three"));
+    }
+
+    @Test
+    public void testAutomatic() throws LazyException{
+        LazyObject obj=new LazyObject("{\"counter\":0,\"name\":\"session\"}");
+        for(int i=0;i<100000;i++){
+            obj.put("counter",i);
+            obj.put("last","value number "+i);
+        }
+        int size=obj.root.dirtyBuf==null?0:obj.root.dirtyBuf.length();
+        assertTrue(size<20000);
+        assertEquals(99999,obj.getInt("counter"));
+        assertEquals("value number 99999",obj.getString("last"));
+        assertEquals("session",obj.getString("name"));
+        LazyObject copy=new LazyObject(obj.toString());
+        assertEquals(99999,copy.getInt("counter"));
+        assertEquals(3,copy.length());
+    }
+}
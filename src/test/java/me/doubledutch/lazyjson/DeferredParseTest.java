@@ -0,0 +1,97 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class DeferredParseTest{
+    private static final String DOC="{\"a\":{\"b\":{\"c\":[1,{\"d\":\"]}\\\"\"}]}},\"e\":[[1,2],{\"f\":null}],\"g\":3}";
+
+    @Test
+    public void testDeferredRead() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,new LazyParserOptions().setDeferDepth(0));
+        assertEquals(3,obj.length());
+        assertEquals(3,obj.getInt("g"));
+        LazyNode a=obj.root.child.child;
+        assertEquals(LazyNode.OBJECT,a.type);
+        assertNull(a.child);
+        assertNotNull(a.deferred);
+        assertEquals("]}\"",obj.getJSONObject("a").getJSONObject("b").getJSONArray("c").getJSONObject(1).getString("d"));
+        assertNull(a.deferred);
+        assertEquals(2,obj.getJSONArray("e").getJSONArray(0).getInt(1));
+        assertTrue(obj.getJSONArray("e").getJSONObject(1).isNull("f"));
+        assertEquals(DOC,obj.toString());
+        assertEquals(new LazyObject(DOC),obj);
+    }
+
+    @Test
+    public void testDepth() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,new LazyParserOptions().setDeferDepth(1));
+        LazyNode b=obj.root.child.child.child.child;
+        assertEquals(LazyNode.OBJECT,b.type);
+        assertNotNull(b.deferred);
+        LazyObject inner=obj.getJSONObject("a").getJSONObject("b");
+        assertNull(b.deferred);
+        // Values nested too deep below the expanded value are deferred again
+        assertNull(b.child.child.deferred);
+        assertNotNull(b.child.child.lastChild.deferred);
+        assertEquals(1,inner.getJSONArray("c").getInt(0));
+    }
+
+    @Test
+    public void testOptionCombinations() throws LazyException{
+        byte[] data=DOC.getBytes(StandardCharsets.UTF_8);
+        LazyParserOptions[] options=new LazyParserOptions[]{
+            new LazyParserOptions().setDeferDepth(0).setTape(true),
+            new LazyParserOptions().setDeferDepth(0).setStructuralIndex(true),
+            new LazyParserOptions().setDeferDepth(1).setTape(true).setStructuralIndex(true)
+        };
+        for(LazyParserOptions opt:options){
+            LazyObject obj=new LazyObject(data,0,data.length,opt);
+            assertEquals("]}\"",obj.getJSONObject("a").getJSONObject("b").getJSONArray("c").getJSONObject(1).getString("d"));
+            assertEquals(new LazyObject(DOC),obj);
+            obj=new LazyObject(DOC,opt);
+            assertEquals(new LazyObject(DOC),obj);
+        }
+    }
+
+    @Test
+    public void testProjection() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,new LazyParserOptions().setDeferDepth(0).setProjection("a.b","e"));
+        assertEquals(2,obj.length());
+        // Projected values are never deferred, their contents are
+        LazyNode a=obj.root.child.child;
+        assertNull(a.deferred);
+        assertEquals(1,obj.getJSONObject("a").length());
+        assertEquals(1,obj.getJSONObject("a").getJSONObject("b").getJSONArray("c").getInt(0));
+        assertEquals(2,obj.getJSONArray("e").length());
+    }
+
+    @Test
+    public void testModify() throws LazyException{
+        LazyObject obj=new LazyObject(DOC,new LazyParserOptions().setDeferDepth(0));
+        obj.getJSONArray("e").put(7);
+        obj.put("g",4);
+        LazyObject expected=new LazyObject(DOC);
+        expected.getJSONArray("e").put(7);
+        expected.put("g",4);
+        assertEquals(expected.toString(),obj.toString());
+    }
+
+    @Test
+    public void testBadDataOnAccess() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":[1,,2],\"b\":1}",new LazyParserOptions().setDeferDepth(0));
+        assertEquals(1,obj.getInt("b"));
+        try{
+            obj.getJSONArray("a");
+            fail();
+        }catch(LazyException e){
+            // The deferred array is only parsed now
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnbalanced() throws LazyException{
+        new LazyObject("{\"a\":[1,{\"b\":2]",new LazyParserOptions().setDeferDepth(0));
+    }
+}
@@ -0,0 +1,130 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DirtyTrackingTest{
+    private static final String DATA="{\"a\":{\"b\":{\"c\":[1,{\"d\":2}]}},\"e\":{\"f\":3}}";
+
+    private void check(LazyObject obj) throws LazyException{
+        assertFalse(obj.root.isDirty());
+        LazyObject deep=obj.getJSONObject("a").getJSONObject("b").getJSONArray("c").getJSONObject(1);
+        deep.put("g",4);
+        assertTrue(obj.root.isDirty());
+        assertTrue(obj.getJSONObject("a").root.isDirty());
+        assertFalse(obj.getJSONObject("e").root.isDirty());
+        assertEquals("{\"a\":{\"b\":{\"c\":[1,{\"d\":2,\"g\":4}]}},\"e\":{\"f\":3}}",obj.toString());
+    }
+
+    @Test
+    public void testPropagation() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testRemove() throws LazyException{
+        LazyObject obj=new LazyObject(DATA);
+        obj.getJSONObject("e").remove("f");
+        assertTrue(obj.root.isDirty());
+        assertEquals("{\"a\":{\"b\":{\"c\":[1,{\"d\":2}]}},\"e\":{}}",obj.toString());
+
+        obj=new LazyObject(DATA);
+        LazyPath.compile("a.b.c").getJSONArray(obj).remove(0);
+        assertTrue(obj.root.isDirty());
+        assertEquals("{\"a\":{\"b\":{\"c\":[{\"d\":2}]}},\"e\":{\"f\":3}}",obj.toString());
+    }
+
+    @Test
+    public void testArrayInsert() throws LazyException{
+        LazyObject obj=new LazyObject(DATA);
+        LazyArray array=obj.getJSONObject("a").getJSONObject("b").getJSONArray("c");
+        array.put(0,"x");
+        assertTrue(obj.root.isDirty());
+        assertEquals("{\"a\":{\"b\":{\"c\":[\"x\",1,{\"d\":2}]}},\"e\":{\"f\":3}}",obj.toString());
+    }
+
+    @Test
+    public void testAttachedElement() throws LazyException{
+        LazyObject obj=new LazyObject(DATA);
+        LazyObject inner=new LazyObject("{\"x\":1}");
+        obj.getJSONObject("e").put("inner",inner);
+        assertEquals("{\"a\":{\"b\":{\"c\":[1,{\"d\":2}]}},\"e\":{\"f\":3,\"inner\":{\"x\":1}}}",obj.toString());
+        inner.put("y",2);
+        assertEquals("{\"a\":{\"b\":{\"c\":[1,{\"d\":2}]}},\"e\":{\"f\":3,\"inner\":{\"x\":1,\"y\":2}}}",obj.toString());
+    }
+
+    @Test
+    public void testSharedElement() throws LazyException{
+        LazyObject docA=new LazyObject("{\"a\":{\"x\":1}}");
+        LazyObject docB=new LazyObject("{}");
+        LazyObject sub=docA.getJSONObject("a");
+        docB.put("s",sub);
+        sub.put("y",2);
+        assertEquals("{\"a\":{\"x\":1,\"y\":2}}",docA.toString());
+        assertEquals("{\"s\":{\"x\":1,\"y\":2}}",docB.toString());
+    }
+
+    @Test
+    public void testSharedElementCompacted() throws LazyException{
+        LazyObject docA=new LazyObject("{\"a\":{\"x\":1}}");
+        LazyObject docB=new LazyObject("{}");
+        LazyObject sub=docA.getJSONObject("a");
+        docB.put("s",sub);
+        docA.compact();
+        docB.compact();
+        sub.put("y",2);
+        assertEquals("{\"a\":{\"x\":1,\"y\":2}}",docA.toString());
+        assertEquals("{\"s\":{\"x\":1,\"y\":2}}",docB.toString());
+    }
+
+    @Test
+    public void testSharedArrayElement() throws LazyException{
+        LazyObject docA=new LazyObject("{\"list\":[{\"x\":1},2]}");
+        LazyObject docB=new LazyObject("{}");
+        LazyObject sub=docA.getJSONArray("list").getJSONObject(0);
+        docB.put("s",sub);
+        sub.put("y",2);
+        assertEquals("{\"list\":[{\"x\":1,\"y\":2},2]}",docA.toString());
+        assertEquals("{\"s\":{\"x\":1,\"y\":2}}",docB.toString());
+
+        // An element of one array is copied into another
+        LazyArray other=new LazyArray("[]");
+        other.put(sub);
+        sub.put("z",3);
+        assertEquals("{\"list\":[{\"x\":1,\"y\":2,\"z\":3},2]}",docA.toString());
+        assertEquals("[{\"x\":1,\"y\":2}]",other.toString());
+        assertEquals(2,docA.getJSONArray("list").length());
+    }
+
+    @Test
+    public void testCopiedFieldHoldingArrayElement() throws LazyException{
+        LazyArray arr=new LazyArray("[{\"x\":1},{\"y\":2},3]");
+        LazyArray holders=new LazyArray("[{}]");
+        LazyObject holder=holders.getJSONObject(0);
+        holder.put("a",arr.getJSONObject(0));
+        LazyArray other=new LazyArray("[]");
+        other.put(holder);
+        assertEquals("[{\"a\":{\"x\":1}}]",other.toString());
+        assertEquals(1,other.getJSONObject(0).length());
+        LazyNode field=other.getJSONObject(0).root.child;
+        assertNull(field.child.next);
+        assertEquals(field.child,field.lastChild);
+        other.getJSONObject(0).put("b",4);
+        assertEquals("[{\"a\":{\"x\":1},\"b\":4}]",other.toString());
+        assertEquals("[{\"x\":1},{\"y\":2},3]",arr.toString());
+    }
+
+    @Test
+    public void testReusedParser() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        LazyObject obj=(LazyObject)parser.parse(DATA);
+        obj.getJSONObject("e").put("g",1);
+        assertTrue(obj.root.isDirty());
+        parser.release();
+        obj=(LazyObject)parser.parse(DATA);
+        assertFalse(obj.root.isDirty());
+        assertEquals(DATA,obj.toString());
+    }
+}
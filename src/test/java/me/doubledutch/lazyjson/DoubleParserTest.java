@@ -0,0 +1,76 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class DoubleParserTest{
+    private static final String[] VALUES={
+        "0","-0","0.0","-0.0","1","-1","0.1","0.30000000000000004","3.141592653589793",
+        "1e308","1.7976931348623157e308","1.7976931348623158e308","1e309","-1e400",
+        "4.9e-324","2.2250738585072014E-308","2.2250738585072011e-308","1e-400",
+        "9007199254740992","9007199254740993","9223372036854775807","18446744073709551615",
+        "1234567890123456789","12345678901234567890","123456789012345678901234567890",
+        "0.000001234","1E+2","1e-2","1.5E10","7.2057594037927933e16","9.999999999999999e22",
+        "2.5","-2.5","0.5","1.0000000000000002","4.35"
+    };
+
+    private static void assertParsed(String value) throws LazyException{
+        double expected=Double.parseDouble(value);
+        LazyArray array=new LazyArray("["+value+"]");
+        assertEquals(value,Double.doubleToRawLongBits(expected),Double.doubleToRawLongBits(array.getDouble(0)));
+        array=new LazyArray(ByteBuffer.wrap(("["+value+"]").getBytes(StandardCharsets.UTF_8)));
+        assertEquals(value,Double.doubleToRawLongBits(expected),Double.doubleToRawLongBits(array.getDouble(0)));
+    }
+
+    @Test
+    public void testValues() throws LazyException{
+        for(String value:VALUES){
+            assertParsed(value);
+        }
+    }
+
+    @Test
+    public void testRandomBits() throws LazyException{
+        Random random=new Random(11);
+        for(int i=0;i<20000;i++){
+            double d=Double.longBitsToDouble(random.nextLong());
+            if(Double.isNaN(d) || Double.isInfinite(d)){
+                continue;
+            }
+            assertParsed(Double.toString(d));
+        }
+    }
+
+    @Test
+    public void testRandomDigits() throws LazyException{
+        Random random=new Random(12);
+        for(int i=0;i<20000;i++){
+            long digits=random.nextLong()>>>(1+random.nextInt(63));
+            int exponent=random.nextInt(700)-350;
+            assertParsed(digits+"e"+exponent);
+            assertParsed("-"+digits+"."+random.nextInt(1000));
+        }
+    }
+
+    @Test
+    public void testStrings() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":\"1.25\",\"b\":\" 2.5 \",\"c\":\"NaN\",\"d\":\"\\u0031.5\"}");
+        assertEquals(1.25,obj.getDouble("a"),0);
+        assertEquals(2.5,obj.getDouble("b"),0);
+        assertTrue(Double.isNaN(obj.getDouble("c")));
+        assertEquals(1.5,obj.getDouble("d"),0);
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1.5}");
+        obj.put("b",0.1);
+        obj.put("c",-3.75e-100);
+        assertEquals(1.5,obj.getDouble("a"),0);
+        assertEquals(0.1,obj.getDouble("b"),0);
+        assertEquals(-3.75e-100,obj.getDouble("c"),0);
+    }
+}
@@ -0,0 +1,122 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class FieldIndexTest{
+    private static String wide(int count){
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<count;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append("\"field").append(i).append("\":").append(i);
+        }
+        buf.append(",\"caf\\u00e9\":\"escaped\",\"gr\u00fc\u00dfe\":\"utf8\",\"field7\":\"duplicate\"}");
+        return buf.toString();
+    }
+
+    private void check(LazyObject obj) throws LazyException{
+        for(int i=299;i>=0;i--){
+            assertEquals(i,obj.getInt("field"+i));
+        }
+        assertNotNull(obj.root.fieldIndex);
+        assertEquals(7,obj.getInt("field7"));
+        assertEquals("escaped",obj.getString("caf\u00e9"));
+        assertEquals("utf8",obj.getString("gr\u00fc\u00dfe"));
+        assertTrue(obj.has("field0"));
+        assertFalse(obj.has("field300"));
+        assertFalse(obj.has("caf\\u00e9"));
+        assertNull(obj.optString("missing"));
+    }
+
+    @Test
+    public void testModes() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(wide(300))){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testSmallObject() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":2}");
+        assertEquals(2,obj.getInt("b"));
+        assertFalse(obj.has("c"));
+        assertNull(obj.root.fieldIndex);
+    }
+
+    @Test
+    public void testSharedIndex() throws LazyException{
+        LazyObject obj=new LazyObject("{\"inner\":"+wide(100)+"}");
+        assertEquals(99,obj.getJSONObject("inner").getInt("field99"));
+        assertNotNull(obj.getJSONObject("inner").root.fieldIndex);
+    }
+
+    @Test
+    public void testPut() throws LazyException{
+        LazyObject obj=new LazyObject(wide(300));
+        assertFalse(obj.has("new0"));
+        for(int i=0;i<1000;i++){
+            obj.put("new"+i,i);
+        }
+        for(int i=0;i<1000;i++){
+            assertEquals(i,obj.getInt("new"+i));
+        }
+        obj.put("field10","changed");
+        assertEquals("changed",obj.getString("field10"));
+        assertEquals(11,obj.getInt("field11"));
+    }
+
+    @Test
+    public void testRemove() throws LazyException{
+        LazyObject obj=new LazyObject(wide(300));
+        assertEquals(200,obj.getInt("field200"));
+        obj.remove("field200");
+        assertFalse(obj.has("field200"));
+        assertEquals(201,obj.getInt("field201"));
+        obj.remove("field7");
+        assertEquals("duplicate",obj.getString("field7"));
+        obj.put("field200",-1);
+        assertEquals(-1,obj.getInt("field200"));
+    }
+
+    @Test
+    public void testToString() throws LazyException{
+        String source=wide(50);
+        LazyObject obj=new LazyObject(source);
+        assertEquals(49,obj.getInt("field49"));
+        assertEquals(source,obj.toString());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception{
+        for(int round=0;round<20;round++){
+            final LazyObject obj=new LazyObject(wide(300));
+            final Throwable[] errors=new Throwable[4];
+            Thread[] threads=new Thread[errors.length];
+            for(int t=0;t<threads.length;t++){
+                final int slot=t;
+                threads[t]=new Thread(){
+                    public void run(){
+                        try{
+                            for(int i=299;i>=0;i--){
+                                assertEquals(i,obj.getInt("field"+i));
+                            }
+                        }catch(Throwable e){
+                            errors[slot]=e;
+                        }
+                    }
+                };
+            }
+            for(Thread thread:threads){
+                thread.start();
+            }
+            for(Thread thread:threads){
+                thread.join();
+            }
+            for(Throwable e:errors){
+                assertNull(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class FieldSetTest{
+    private static final LazyFieldSet EVENT=LazyFieldSet.of("id","ts","user","amount","flag","tags","missing","gr\u00fc\u00dfe");
+
+    private static final String DATA="{\"ts\":1500000000000,\"x\":1,\"user\":{\"name\":\"bob\"},\"id\":\"e1\",\"amount\":12.5,\"flag\":\"true\",\"tags\":[1,2],\"id\":\"dup\",\"gr\u00fc\u00dfe\":null}";
+
+    private void check(LazyObject obj){
+        LazyFieldValues values=obj.getFields(EVENT);
+        assertEquals("e1",values.getString(0));
+        assertTrue(values.stringEquals(0,"e1"));
+        assertEquals(1500000000000L,values.getLong(1));
+        assertEquals(LazyType.INTEGER,values.getType(1));
+        assertEquals("bob",values.getJSONObject(2).getString("name"));
+        assertEquals(12.5,values.getDouble(3),0);
+        assertTrue(values.getBoolean(4));
+        assertEquals(2,values.getJSONArray(5).length());
+        assertFalse(values.has(6));
+        assertEquals(-1,values.optInt(6,-1));
+        assertNull(values.optString(6,null));
+        assertFalse(values.stringEquals(6,"x"));
+        assertTrue(values.has(7));
+        assertTrue(values.isNull(7));
+        assertEquals(7L,values.optLong(7,7L));
+    }
+
+    @Test
+    public void testSources() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testReuse() throws LazyException{
+        LazyFieldSet set=LazyFieldSet.of("a","b");
+        LazyFieldValues values=set.newValues();
+        new LazyObject("{\"a\":1,\"b\":2}").getFields(set,values);
+        assertEquals(1,values.getInt(0));
+        assertEquals(2,values.getInt(1));
+        assertSame(values,new LazyObject("{\"b\":3}").getFields(set,values));
+        assertFalse(values.has(0));
+        assertEquals(3,values.getInt(1));
+    }
+
+    @Test
+    public void testWideObject() throws LazyException{
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<200;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append("\"f").append(i).append("\":").append(i);
+        }
+        buf.append("}");
+        LazyObject obj=new LazyObject(buf.toString());
+        LazyFieldSet set=LazyFieldSet.of("f150","f3","f199","f200");
+        LazyFieldValues values=obj.getFields(set);
+        assertEquals(150,values.getInt(0));
+        assertEquals(3,values.getInt(1));
+        assertEquals(199,values.getInt(2));
+        assertFalse(values.has(3));
+        // Again, now through the field index
+        assertEquals(199,obj.getInt("f199"));
+        assertNotNull(obj.root.fieldIndex);
+        obj.getFields(set,values);
+        assertEquals(150,values.getInt(0));
+        assertEquals(199,values.getInt(2));
+        assertFalse(values.has(3));
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1}");
+        obj.put("b","two");
+        LazyFieldValues values=obj.getFields(LazyFieldSet.of("b","a"));
+        assertEquals("two",values.getString(0));
+        assertEquals(1,values.getInt(1));
+    }
+
+    @Test
+    public void testSet(){
+        LazyFieldSet set=LazyFieldSet.of("a","b","c");
+        assertEquals(3,set.size());
+        assertEquals(1,set.indexOf("b"));
+        assertEquals(-1,set.indexOf("d"));
+        assertSame(set,set.newValues().getFieldSet());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDuplicateNames(){
+        LazyFieldSet.of("a","b","a");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testOtherSet(){
+        LazyFieldValues values=LazyFieldSet.of("a").newValues();
+        new LazyObject("{\"a\":1}").getFields(LazyFieldSet.of("a"),values);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissing() throws LazyException{
+        new LazyObject("{\"a\":1}").getFields(LazyFieldSet.of("b")).getInt(0);
+    }
+}
@@ -0,0 +1,122 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.*;
+import java.math.BigInteger;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import me.doubledutch.lazyjson.compressor.Compressor;
+
+public class IntegerDecodingTest{
+    private static final String[] VALUES={
+        "0","-0","7","-7","42","127","128","-128","-129","999","32767","32768","-32768","-32769",
+        "2147483647","2147483648","-2147483648","-2147483649","12345678901234567",
+        "123456789012345678","-123456789012345678","9223372036854775807","-9223372036854775808",
+        "1000000000000000000","-1000000000000000000"
+    };
+
+    private static void assertDecoded(String value) throws LazyException{
+        long expected=Long.parseLong(value);
+        String json="["+value+",\""+value+"\"]";
+        LazyArray[] arrays={
+            new LazyArray(json),
+            new LazyArray(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)))
+        };
+        for(LazyArray array:arrays){
+            assertEquals(value,expected,array.getLong(0));
+            assertEquals(value,(int)expected,array.getInt(0));
+            assertEquals(value,expected,array.getLong(1));
+            assertEquals(value,BigInteger.valueOf(expected),array.getBigInteger(0));
+            assertEquals(value,new BigDecimal(value),array.getBigDecimal(0));
+        }
+    }
+
+    @Test
+    public void testValues() throws LazyException{
+        for(String value:VALUES){
+            assertDecoded(value);
+        }
+    }
+
+    @Test
+    public void testRandom() throws LazyException{
+        Random random=new Random(5);
+        for(int i=0;i<10000;i++){
+            assertDecoded(Long.toString(random.nextLong()>>random.nextInt(64)));
+        }
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyArray array=new LazyArray("[]");
+        array.put(Long.MIN_VALUE);
+        array.put(Long.MAX_VALUE);
+        array.put(-12345);
+        assertEquals(Long.MIN_VALUE,array.getLong(0));
+        assertEquals(Long.MAX_VALUE,array.getLong(1));
+        assertEquals(-12345,array.getInt(2));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testOverflow() throws LazyException{
+        new LazyArray("[9223372036854775808]").getLong(0);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testNegativeOverflow() throws LazyException{
+        new LazyArray("[-9223372036854775809]").getLong(0);
+    }
+
+    @Test
+    public void testEmptyString() throws LazyException{
+        LazyObject obj=new LazyObject("{\"empty\":\"\",\"minus\":\"-\"}");
+        assertEquals(0,obj.getInt("empty"));
+        assertEquals(0L,obj.getLong("empty"));
+        assertEquals(0,obj.getInt("minus"));
+        assertEquals(0L,obj.getLong("minus"));
+        LazyArray array=new LazyArray("[\"\",\"-\"]",new LazyParserOptions().setValueCache(true));
+        assertEquals(0,array.getInt(0));
+        assertEquals(0L,array.getLong(1));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testInvalidString() throws LazyException{
+        new LazyArray("[\"12a\"]").getLong(0);
+    }
+
+    @Test
+    public void testBigValues() throws LazyException{
+        LazyObject obj=new LazyObject("{\"big\":123456789012345678901234567890,\"neg\":-9223372036854775809,\"float\":1.25e3,\"str\":\"98765432109876543210\",\"nothing\":null}");
+        assertEquals(new BigInteger("123456789012345678901234567890"),obj.getBigInteger("big"));
+        assertEquals(new BigInteger("-9223372036854775809"),obj.getBigInteger(LazyKey.of("neg")));
+        assertEquals(new BigInteger("1250"),obj.getBigInteger("float"));
+        assertEquals(new BigDecimal("1.25e3"),obj.getBigDecimal("float"));
+        assertEquals(new BigInteger("98765432109876543210"),obj.getBigInteger("str"));
+        assertEquals(new BigDecimal("123456789012345678901234567890"),obj.getBigDecimal("big"));
+        assertNull(obj.optBigInteger("nothing"));
+        assertNull(obj.optBigDecimal("missing"));
+        assertEquals(BigInteger.ONE,obj.optBigInteger("missing",BigInteger.ONE));
+        assertEquals(BigDecimal.TEN,obj.optBigDecimal(LazyKey.of("nothing"),BigDecimal.TEN));
+        assertEquals(1250.0,obj.getDouble("float"),0);
+    }
+
+    @Test
+    public void testCompression() throws Exception{
+        Compressor compressor=new Compressor("./ctest",1000,0);
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<VALUES.length;i++){
+            if(VALUES[i].equals("-0")){
+                // Stored as a number, so the sign of zero is not kept
+                continue;
+            }
+            buf.append("\"v").append(i).append("\":").append(VALUES[i]).append(",");
+        }
+        buf.append("\"big\":123456789012345678901234567890,\"list\":[1,300,70000,5000000000,99999999999999999999]}");
+        String str=buf.toString();
+        for(int i=0;i<3;i++){
+            assertEquals(str,compressor.decompress(compressor.compress(str)));
+        }
+    }
+}
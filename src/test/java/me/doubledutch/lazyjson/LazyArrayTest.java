@@ -6,6 +6,9 @@ import static org.junit.Assert.*;
 import java.util.List;
 import java.util.ArrayList;
 import java.net.*;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class LazyArrayTest{
     @Test
@@ -322,4 +325,45 @@ public class LazyArrayTest{
         lazyArray.put("baz");
         assertEquals("[\"\\\"foo\\\" bar\",\"baz\"]", lazyArray.toString());
     }
+
+    @Test
+    public void testDirectBuffer() throws LazyException{
+        byte[] data="[\"\u00e6\u00f8\u00e5\",{\"foo\":42},[1.5]]".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf=ByteBuffer.allocateDirect(data.length);
+        buf.put(data);
+        buf.flip();
+        LazyArray array=new LazyArray(buf);
+        assertEquals(3,array.length());
+        assertEquals("\u00e6\u00f8\u00e5",array.getString(0));
+        assertEquals(42,array.getJSONObject(1).getInt("foo"));
+        assertEquals(1.5,array.getJSONArray(2).getDouble(0),0);
+        assertEquals("[\"\u00e6\u00f8\u00e5\",{\"foo\":42},[1.5]]",array.toString());
+        // Parsing must not move the buffer
+        assertEquals(0,buf.position());
+    }
+
+    @Test
+    public void testBufferPositionAndLimit() throws LazyException{
+        byte[] data="xx[1,2,3]yy".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf=ByteBuffer.wrap(data);
+        buf.position(2);
+        buf.limit(9);
+        LazyElement elm=LazyElement.parse(buf);
+        assertEquals(LazyType.ARRAY,elm.getType());
+        assertEquals("[1,2,3]",elm.toString());
+        assertEquals(3,((LazyArray)elm).getInt(2));
+    }
+
+    @Test
+    public void testMappedFile() throws Exception{
+        File file=File.createTempFile("lazyjson",".json");
+        file.deleteOnExit();
+        FileOutputStream out=new FileOutputStream(file);
+        out.write("[{\"id\":1},{\"id\":2,\"name\":\"J\u00f8rgen\"}]".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        LazyArray array=(LazyArray)LazyElement.parse(file);
+        assertEquals(2,array.length());
+        assertEquals(2,array.getJSONObject(1).getInt("id"));
+        assertEquals("J\u00f8rgen",array.getJSONObject(1).getString("name"));
+    }
 }
\ No newline at end of file
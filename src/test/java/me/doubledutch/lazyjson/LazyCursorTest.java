@@ -0,0 +1,196 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class LazyCursorTest{
+    private static final LazyKey AMOUNT=LazyKey.of("amount");
+
+    private static final String DATA="[{\"id\":1,\"amount\":10,\"name\":\"a\",\"ok\":true,\"rate\":1.5,\"tags\":[\"x\",\"y\"]},"
+                                    +"{\"id\":2,\"amount\":20,\"name\":\"b\\\"c\",\"ok\":false,\"rate\":-2.5,\"tags\":[]},"
+                                    +"{\"id\":3,\"amount\":30,\"name\":null,\"ok\":true,\"rate\":0,\"tags\":[{\"n\":9}]}]";
+
+    private long total(LazyArray array) throws LazyException{
+        long total=0;
+        LazyCursor cursor=new LazyCursor(array);
+        while(cursor.next()){
+            cursor.enter();
+            while(cursor.next()){
+                if(cursor.keyEquals(AMOUNT)){
+                    total+=cursor.getLong();
+                }
+            }
+            cursor.exit();
+        }
+        return total;
+    }
+
+    @Test
+    public void testSum() throws LazyException{
+        assertEquals(60,total(new LazyArray(DATA)));
+        assertEquals(60,total(new LazyArray(ByteBuffer.wrap(DATA.getBytes(StandardCharsets.UTF_8)))));
+        assertEquals(60,total(new LazyArray(DATA,new LazyParserOptions().setKeyHashing(true))));
+        assertEquals(60,total(new LazyArray(DATA,new LazyParserOptions().setTape(true))));
+        assertEquals(60,total(new LazyArray(DATA,new LazyParserOptions().setDeferDepth(1))));
+        assertEquals(60,total(new LazyArray(DATA,new LazyParserOptions().setStructuralIndex(true))));
+    }
+
+    @Test
+    public void testValues() throws LazyException{
+        LazyCursor cursor=new LazyCursor(new LazyArray(DATA));
+        assertFalse(cursor.isObject());
+        assertTrue(cursor.next());
+        assertEquals(LazyType.OBJECT,cursor.getType());
+        assertNull(cursor.getKey());
+        assertFalse(cursor.keyEquals("id"));
+        cursor.enter();
+        assertEquals(1,cursor.getDepth());
+        assertTrue(cursor.isObject());
+        assertTrue(cursor.next());
+        assertEquals("id",cursor.getKey());
+        assertTrue(cursor.keyEquals("id"));
+        assertEquals(LazyType.INTEGER,cursor.getType());
+        assertEquals(1,cursor.getInt());
+        assertTrue(cursor.next());
+        assertTrue(cursor.next());
+        assertEquals(LazyType.STRING,cursor.getType());
+        assertEquals("a",cursor.getString());
+        assertTrue(cursor.next());
+        assertEquals(LazyType.BOOLEAN,cursor.getType());
+        assertTrue(cursor.getBoolean());
+        assertTrue(cursor.next());
+        assertEquals(LazyType.FLOAT,cursor.getType());
+        assertEquals(1.5,cursor.getDouble(),0);
+        assertTrue(cursor.next());
+        assertEquals(LazyType.ARRAY,cursor.getType());
+        assertEquals(2,cursor.getJSONArray().length());
+        cursor.enter();
+        assertTrue(cursor.next());
+        assertEquals("x",cursor.getString());
+        assertTrue(cursor.next());
+        assertEquals("y",cursor.getString());
+        assertFalse(cursor.next());
+        cursor.exit();
+        assertTrue(cursor.keyEquals("tags"));
+        assertFalse(cursor.next());
+        cursor.exit();
+        assertEquals(0,cursor.getDepth());
+        assertTrue(cursor.next());
+        assertEquals(2,cursor.getJSONObject().getInt("id"));
+        cursor.enter();
+        cursor.next();
+        cursor.next();
+        cursor.next();
+        assertEquals("b\"c",cursor.getString());
+        cursor.next();
+        assertFalse(cursor.getBoolean());
+        cursor.exit();
+        assertTrue(cursor.next());
+        cursor.enter();
+        cursor.next();
+        cursor.next();
+        cursor.next();
+        assertTrue(cursor.isNull());
+        cursor.exit();
+        assertFalse(cursor.next());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testObject() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":{\"b\":{\"c\":[[1]]}},\"d\":2}");
+        LazyCursor cursor=new LazyCursor(obj);
+        assertTrue(cursor.next());
+        assertTrue(cursor.keyEquals(LazyKey.of("a")));
+        cursor.enter();
+        cursor.next();
+        cursor.enter();
+        cursor.next();
+        cursor.enter();
+        cursor.next();
+        cursor.enter();
+        assertTrue(cursor.next());
+        assertEquals(1,cursor.getInt());
+        assertEquals(4,cursor.getDepth());
+        cursor.exit();
+        cursor.exit();
+        cursor.exit();
+        cursor.exit();
+        assertTrue(cursor.next());
+        assertEquals("d",cursor.getKey());
+        assertEquals(2,cursor.getInt());
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testDeepNesting() throws LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<100;i++){
+            buf.append("[");
+        }
+        buf.append("42");
+        for(int i=0;i<100;i++){
+            buf.append("]");
+        }
+        LazyCursor cursor=new LazyCursor(new LazyArray(buf.toString()));
+        for(int i=0;i<99;i++){
+            assertTrue(cursor.next());
+            cursor.enter();
+        }
+        assertTrue(cursor.next());
+        assertEquals(42,cursor.getInt());
+        assertEquals(99,cursor.getDepth());
+    }
+
+    @Test
+    public void testReset() throws LazyException{
+        LazyCursor cursor=new LazyCursor(new LazyArray("[[1]]"));
+        cursor.next();
+        cursor.enter();
+        cursor.reset(new LazyObject("{\"x\":5}"));
+        assertEquals(0,cursor.getDepth());
+        assertTrue(cursor.next());
+        assertEquals(5,cursor.getInt());
+    }
+
+    @Test
+    public void testEmpty() throws LazyException{
+        assertFalse(new LazyCursor(new LazyArray("[]")).next());
+        assertFalse(new LazyCursor(new LazyObject("{}")).next());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testNotPositioned() throws LazyException{
+        new LazyCursor(new LazyArray("[1]")).getInt();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testEnterScalar() throws LazyException{
+        LazyCursor cursor=new LazyCursor(new LazyArray("[1]"));
+        cursor.next();
+        cursor.enter();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testExitTop() throws LazyException{
+        new LazyCursor(new LazyArray("[1]")).exit();
+    }
+
+    @Test
+    public void testStringBoolean() throws LazyException{
+        LazyCursor cursor=new LazyCursor(new LazyObject("{\"a\":\"true\",\"b\":\"False\"}"));
+        assertTrue(cursor.next());
+        assertTrue(cursor.getBoolean());
+        assertTrue(cursor.next());
+        assertFalse(cursor.getBoolean());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testNotBoolean() throws LazyException{
+        LazyCursor cursor=new LazyCursor(new LazyArray("[1]"));
+        cursor.next();
+        cursor.getBoolean();
+    }
+}
@@ -0,0 +1,102 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class LazyIndexTest{
+    private static final LazyParserOptions INDEX=new LazyParserOptions().setStructuralIndex(true);
+
+    private static String longString(int length){
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<length;i++){
+            buf.append((char)('a'+(i%26)));
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void testNextPosition() throws LazyException{
+        String str="{ \"foo\" : [12, true ],\"a\\\"b\":\"{[,]}\"}";
+        LazyIndex index=new LazyIndex(str.toCharArray(),null,0,str.length());
+        int[] expected=new int[]{2,6,8,10,11,13,15,20,21,22,27,28,29,35,36};
+        int pos=0;
+        for(int i=0;i<expected.length;i++){
+            pos=index.next(pos);
+            assertEquals(expected[i],pos);
+        }
+        assertEquals(str.length(),index.next(pos));
+    }
+
+    @Test
+    public void testReadValues() throws LazyException{
+        String str="{\"foo\":\""+longString(300)+"\",\"bar\":[1,-2.5e3, true,false ,null],\n\t\"baz\":{\"x\":\"\\u0041\\n\"}}";
+        LazyObject obj=new LazyObject(str,INDEX);
+        assertEquals(longString(300),obj.getString("foo"));
+        LazyArray arr=obj.getJSONArray("bar");
+        assertEquals(5,arr.length());
+        assertEquals(1,arr.getInt(0));
+        assertEquals(-2500.0,arr.getDouble(1),0);
+        assertTrue(arr.getBoolean(2));
+        assertFalse(arr.getBoolean(3));
+        assertTrue(arr.isNull(4));
+        assertEquals("A\n",obj.getJSONObject("baz").getString("x"));
+        assertEquals(str,obj.toString());
+        assertEquals(new LazyObject(str),obj);
+    }
+
+    @Test
+    public void testUTF8Source() throws LazyException{
+        String str="[\""+longString(100)+"\u00e9\u4e2d\",{\"\u00f8\":\""+longString(70)+"\\\\\"}]";
+        byte[] data=str.getBytes(StandardCharsets.UTF_8);
+        LazyArray arr=new LazyArray(data,0,data.length,INDEX);
+        assertEquals(longString(100)+"\u00e9\u4e2d",arr.getString(0));
+        assertEquals(longString(70)+"\\",arr.getJSONObject(1).getString("\u00f8"));
+        arr=new LazyArray(data,0,data.length,new LazyParserOptions().setStructuralIndex(true).setTape(true));
+        assertEquals(longString(70)+"\\",arr.getJSONObject(1).getString("\u00f8"));
+    }
+
+    @Test
+    public void testBackslashRuns() throws LazyException{
+        // Move runs of backslashes across the 64 character block boundaries
+        for(int offset=50;offset<80;offset++){
+            for(int count=1;count<6;count++){
+                StringBuilder buf=new StringBuilder("[\"");
+                buf.append(longString(offset));
+                for(int i=0;i<count;i++){
+                    buf.append("\\\\");
+                }
+                buf.append("\\\"\",\"x\"]");
+                String str=buf.toString();
+                LazyArray expected=new LazyArray(str);
+                LazyArray arr=new LazyArray(str,INDEX);
+                assertEquals(2,arr.length());
+                assertEquals(expected.getString(0),arr.getString(0));
+                assertEquals("x",arr.getString(1));
+                byte[] data=str.getBytes(StandardCharsets.UTF_8);
+                arr=new LazyArray(data,0,data.length,INDEX);
+                assertEquals(expected.getString(0),arr.getString(0));
+            }
+        }
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadValueEnd() throws LazyException{
+        new LazyArray("[1x]",INDEX);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadLiteralEnd() throws LazyException{
+        new LazyObject("{\"foo\":truex}",INDEX);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadEscape() throws LazyException{
+        new LazyArray("[\""+longString(100)+"\\x\"]",INDEX);
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnterminatedString() throws LazyException{
+        new LazyArray("[\""+longString(100)+"\\\"]",INDEX);
+    }
+}
@@ -0,0 +1,122 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class LazyKeyTest{
+    private static final LazyKey ID=LazyKey.of("id");
+    private static final LazyKey NAME=LazyKey.of("name");
+    private static final LazyKey ESCAPED=LazyKey.of("a\"b");
+    private static final LazyKey UNICODE=LazyKey.of("gr\u00fc\u00dfe");
+    private static final LazyKey MISSING=LazyKey.of("missing");
+    private static final LazyKey INNER=LazyKey.of("inner");
+    private static final LazyKey LIST=LazyKey.of("list");
+
+    private static final String DATA="{\"id\":42,\"name\":\"Bob\",\"a\\\"b\":true,\"gr\u00fc\u00dfe\":1.5,\"inner\":{\"id\":7},\"list\":[1,2],\"nothing\":null}";
+
+    private static LazyParserOptions hashing(){
+        return new LazyParserOptions().setKeyHashing(true);
+    }
+
+    private void check(LazyObject obj) throws LazyException{
+        assertEquals(42,obj.getInt(ID));
+        assertEquals(42L,obj.getLong(ID));
+        assertEquals("Bob",obj.getString(NAME));
+        assertTrue(obj.getBoolean(ESCAPED));
+        assertEquals(1.5,obj.getDouble(UNICODE),0);
+        assertEquals(7,obj.getJSONObject(INNER).getInt(ID));
+        assertEquals(2,obj.getJSONArray(LIST).length());
+        assertTrue(obj.has(NAME));
+        assertFalse(obj.has(MISSING));
+        assertNull(obj.optString(MISSING));
+        assertEquals(-1,obj.optInt(MISSING,-1));
+        assertTrue(obj.isNull(LazyKey.of("nothing")));
+        assertEquals(LazyType.OBJECT,obj.getType(INNER));
+        // String lookups must agree with the hashes
+        assertEquals(42,obj.getInt("id"));
+        assertTrue(obj.getBoolean("a\"b"));
+        assertEquals(1.5,obj.getDouble("gr\u00fc\u00dfe"),0);
+        assertFalse(obj.has("ID"));
+    }
+
+    @Test
+    public void testDefault() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testKeyHashing() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA,hashing())){
+            check(obj);
+        }
+        for(LazyObject obj:ParseModes.objects(DATA,hashing().setDeferDepth(1))){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testHashesStored() throws LazyException{
+        LazyObject obj=new LazyObject(DATA,hashing());
+        LazyNode field=obj.root.child;
+        assertEquals("id".hashCode(),field.hash);
+        assertEquals("name".hashCode(),field.next.hash);
+        // Escaped names are hashed when needed
+        assertEquals(0,field.next.next.hash);
+        assertEquals("a\"b".hashCode(),field.next.next.getFieldHash());
+
+        obj=new LazyObject(ByteBuffer.wrap(DATA.getBytes(StandardCharsets.UTF_8)),hashing());
+        field=obj.root.child.next.next.next;
+        assertEquals(0,field.hash);
+        assertEquals("gr\u00fc\u00dfe".hashCode(),field.getFieldHash());
+        obj=new LazyObject(DATA,hashing());
+        field=obj.root.child.next.next.next;
+        assertEquals("gr\u00fc\u00dfe".hashCode(),field.hash);
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject(DATA,hashing());
+        obj.put("added","value");
+        obj.put("id",43);
+        assertEquals("value",obj.getString(LazyKey.of("added")));
+        assertEquals(43,obj.getInt(ID));
+        obj.remove("name");
+        assertFalse(obj.has(NAME));
+    }
+
+    @Test
+    public void testWideObject() throws LazyException{
+        StringBuilder buf=new StringBuilder("{");
+        for(int i=0;i<100;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append("\"f").append(i).append("\":").append(i);
+        }
+        buf.append("}");
+        LazyObject obj=new LazyObject(buf.toString(),hashing());
+        for(int i=99;i>=0;i--){
+            assertEquals(i,obj.getInt(LazyKey.of("f"+i)));
+        }
+        assertNotNull(obj.root.fieldIndex);
+        assertFalse(obj.has(MISSING));
+    }
+
+    @Test
+    public void testKey(){
+        assertEquals("userId",LazyKey.of("userId").getName());
+        assertEquals("userId",LazyKey.of("userId").toString());
+        assertEquals(LazyKey.of("userId"),LazyKey.of("userId"));
+        assertEquals("userId".hashCode(),LazyKey.of("userId").hashCode());
+        assertFalse(LazyKey.of("userId").equals(LazyKey.of("userid")));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnknownField() throws LazyException{
+        new LazyObject(DATA,hashing()).getString(MISSING);
+    }
+}
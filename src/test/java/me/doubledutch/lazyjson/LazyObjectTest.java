@@ -5,6 +5,7 @@ import org.junit.*;
 import static org.junit.Assert.*;
 import java.util.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 
 public class LazyObjectTest{
     @Test
@@ -478,4 +479,45 @@ public class LazyObjectTest{
         assertEquals("DoubleDutch",user.getString("Company"));
         assertTrue(user.isNull("Department"));
     }
+
+    @Test
+    public void utf8SourceTest() throws LazyException{
+        String str="{\"foo\":\"bar\",\"n\u00e6vn\":\"bl\u00e5b\u00e6r\",\"esc\":\"a\\n\u00f8\\u00e5\",\"i\":-42,\"d\":3.25,\"o\":{\"t\":true}}";
+        byte[] data=("  "+str+"  ").getBytes(StandardCharsets.UTF_8);
+        LazyObject obj=new LazyObject(data,2,data.length-4);
+        assertEquals("bar",obj.getString("foo"));
+        assertEquals("bl\u00e5b\u00e6r",obj.getString("n\u00e6vn"));
+        assertEquals("a\n\u00f8\u00e5",obj.getString("esc"));
+        assertEquals(-42,obj.getInt("i"));
+        assertEquals(-42l,obj.getLong("i"));
+        assertEquals(3.25,obj.getDouble("d"),0);
+        assertTrue(obj.getJSONObject("o").getBoolean("t"));
+        assertFalse(obj.has("fo"));
+        assertFalse(obj.has("n\u00e6v"));
+        assertTrue(obj.keySet().contains("n\u00e6vn"));
+        assertEquals(str,obj.toString());
+        assertEquals(new LazyObject(str),obj);
+    }
+
+    @Test
+    public void utf8ModifyTest() throws LazyException{
+        byte[] data="{\"foo\":\"\u00e6\u00f8\u00e5\"}".getBytes(StandardCharsets.UTF_8);
+        LazyObject obj=new LazyObject(data,0,data.length);
+        obj.put("bar",9);
+        assertEquals("{\"foo\":\"\u00e6\u00f8\u00e5\",\"bar\":9}",obj.toString());
+    }
+
+    @Test
+    public void utf8ElementTest() throws LazyException{
+        byte[] data=" [1,2]".getBytes(StandardCharsets.UTF_8);
+        LazyElement elm=LazyElement.parse(data,0,data.length);
+        assertEquals(LazyType.ARRAY,elm.getType());
+        assertEquals(2,elm.length());
+    }
+
+    @Test(expected=LazyException.class)
+    public void utf8BadDataTest() throws LazyException{
+        byte[] data="{\"foo\":-f}".getBytes(StandardCharsets.UTF_8);
+        new LazyObject(data,0,data.length);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+public class LazyParallelReaderTest{
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool(){
+        pool=new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownPool(){
+        pool.shutdown();
+    }
+
+    private static String lines(int count){
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<count;i++){
+            if(i%3==0){
+                buf.append("[").append(i).append(",\"x\"]\n");
+            }else{
+                buf.append("{\"id\":").append(i).append(",\"name\":\"user ").append(i).append("\"}\n");
+            }
+        }
+        return buf.toString();
+    }
+
+    private static int id(LazyElement el) throws LazyException{
+        if(el instanceof LazyArray){
+            return ((LazyArray)el).getInt(0);
+        }
+        return ((LazyObject)el).getInt("id");
+    }
+
+    @Test
+    public void testOrder() throws LazyException{
+        ByteBuffer buf=ByteBuffer.wrap(lines(10000).getBytes(StandardCharsets.UTF_8));
+        LazyParallelReader reader=new LazyParallelReader(buf,null,pool,100);
+        int count=0;
+        while(reader.hasNext()){
+            LazyElement el=reader.next();
+            assertEquals(count,id(el));
+            if(count%3!=0){
+                assertEquals("user "+count,((LazyObject)el).getString("name"));
+            }
+            count++;
+        }
+        assertEquals(10000,count);
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testHandler() throws LazyException{
+        ByteBuffer buf=ByteBuffer.wrap(lines(2000).getBytes(StandardCharsets.UTF_8));
+        final List<Integer> ids=new ArrayList<Integer>();
+        new LazyParallelReader(buf,new LazyParserOptions().setTape(true),pool,64).read(new LazyParallelReader.Handler(){
+            public void handle(LazyElement element){
+                ids.add(id(element));
+            }
+        });
+        assertEquals(2000,ids.size());
+        for(int i=0;i<ids.size();i++){
+            assertEquals(i,(int)ids.get(i));
+        }
+    }
+
+    @Test
+    public void testBlankLines() throws LazyException{
+        String str="\n{\"a\":1}\r\n  \n\t\n[2]\r\n{\"a\":3}";
+        LazyParallelReader reader=new LazyParallelReader(ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8)),null,pool,4);
+        assertEquals(1,((LazyObject)reader.next()).getInt("a"));
+        assertEquals(2,((LazyArray)reader.next()).getInt(0));
+        assertEquals(3,((LazyObject)reader.next()).getInt("a"));
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testFileRegions() throws Exception{
+        File file=File.createTempFile("lazyjson",".ndjson");
+        file.deleteOnExit();
+        FileOutputStream out=new FileOutputStream(file);
+        out.write(lines(5000).getBytes(StandardCharsets.UTF_8));
+        out.close();
+        LazyParallelReader reader=new LazyParallelReader(file,null,pool,500,4096);
+        int count=0;
+        while(reader.hasNext()){
+            assertEquals(count,id(reader.next()));
+            count++;
+        }
+        assertEquals(5000,count);
+    }
+
+    @Test(expected=NoSuchElementException.class)
+    public void testEmpty() throws LazyException{
+        LazyParallelReader reader=new LazyParallelReader(ByteBuffer.wrap(new byte[0]));
+        assertFalse(reader.hasNext());
+        reader.next();
+    }
+
+    @Test
+    public void testBadLine() throws LazyException{
+        String str=lines(500)+"{\"id\":500,}\n"+lines(10);
+        LazyParallelReader reader=new LazyParallelReader(ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8)),null,pool,128);
+        int count=0;
+        try{
+            while(reader.hasNext()){
+                reader.next();
+                count++;
+            }
+            fail();
+        }catch(LazyException e){
+            // All lines before the bad line have been returned
+            assertTrue(count<=500);
+        }
+    }
+}
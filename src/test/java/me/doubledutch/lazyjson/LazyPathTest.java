@@ -0,0 +1,118 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.math.BigInteger;
+
+public class LazyPathTest{
+    private static final String DATA="{\"order\":{\"id\":\"o1\",\"items\":[{\"sku\":\"a\",\"price\":1.5},{\"sku\":\"b\",\"price\":2},{\"sku\":\"c\",\"price\":3.25,\"tags\":[true,null]}]},"
+                                    +"\"a/b\":1,\"m~n\":2,\"\":3,\"7\":\"seven\",\"big\":123456789012345678901234567890}";
+
+    private void check(LazyObject obj){
+        assertEquals("o1",LazyPath.compile("/order/id").getString(obj));
+        assertEquals("o1",LazyPath.compile("order.id").getString(obj));
+        assertEquals(3.25,LazyPath.compile("/order/items/2/price").getDouble(obj),0);
+        assertEquals(3.25,LazyPath.compile("order.items[2].price").getDouble(obj),0);
+        assertEquals(3.25,LazyPath.compile("order.items.2.price").getDouble(obj),0);
+        assertEquals(2,LazyPath.compile("order.items[1].price").getInt(obj));
+        assertEquals(2L,LazyPath.compile("order.items[1].price").getLong(obj));
+        assertTrue(LazyPath.compile("order.items[2].tags[0]").getBoolean(obj));
+        assertTrue(LazyPath.compile("order.items[2].tags[1]").isNull(obj));
+        assertTrue(LazyPath.compile("/order/items/0/sku").stringEquals(obj,"a"));
+        assertEquals(LazyType.ARRAY,LazyPath.compile("/order/items").getType(obj));
+        assertEquals(3,LazyPath.compile("/order/items").getJSONArray(obj).length());
+        assertEquals("b",LazyPath.compile("/order/items/1").getJSONObject(obj).getString("sku"));
+        assertEquals(1,LazyPath.compile("/a~1b").getInt(obj));
+        assertEquals(2,LazyPath.compile("/m~0n").getInt(obj));
+        assertEquals(3,LazyPath.compile("/").getInt(obj));
+        assertEquals("seven",LazyPath.compile("/7").getString(obj));
+        assertEquals(new BigInteger("123456789012345678901234567890"),LazyPath.compile("big").getBigInteger(obj));
+        assertEquals(LazyType.OBJECT,LazyPath.compile("").getType(obj));
+
+        assertFalse(LazyPath.compile("/order/items/3").has(obj));
+        assertFalse(LazyPath.compile("/order/items/-").has(obj));
+        assertFalse(LazyPath.compile("/order/items/01").has(obj));
+        assertFalse(LazyPath.compile("/order/items/x").has(obj));
+        assertFalse(LazyPath.compile("/order/id/x").has(obj));
+        assertFalse(LazyPath.compile("order.missing").has(obj));
+        assertEquals("none",LazyPath.compile("order.missing").optString(obj,"none"));
+        assertEquals(-1,LazyPath.compile("order.items[9].price").optInt(obj,-1));
+        assertEquals(-1L,LazyPath.compile("order.items[2].tags[1]").optLong(obj,-1L));
+        assertEquals(0.5,LazyPath.compile("order.id.x").optDouble(obj,0.5),0);
+        assertTrue(LazyPath.compile("order.items[2].tags[1]").optBoolean(obj,true));
+    }
+
+    @Test
+    public void testSources() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testArrayRoot() throws LazyException{
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<100;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append("{\"v\":").append(i).append("}");
+        }
+        buf.append("]");
+        LazyArray array=new LazyArray(buf.toString());
+        assertEquals(5,LazyPath.compile("[5].v").getInt(array));
+        assertEquals(99,LazyPath.compile("/99/v").getInt(array));
+        assertNotNull(array.root.childIndex);
+        assertEquals(42,LazyPath.compile("42.v").getInt(array));
+        assertFalse(LazyPath.compile("[100]").has(array));
+        assertFalse(LazyPath.compile("v").has(array));
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject(DATA);
+        obj.getJSONObject("order").put("id","o2");
+        obj.getJSONObject("order").getJSONArray("items").put(new LazyObject("{\"sku\":\"d\"}"));
+        assertEquals("o2",LazyPath.compile("order.id").getString(obj));
+        assertEquals("d",LazyPath.compile("order.items[3].sku").getString(obj));
+    }
+
+    @Test
+    public void testToString(){
+        assertEquals("order.items[2]",LazyPath.compile("order.items[2]").toString());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissing() throws LazyException{
+        LazyPath.compile("order.missing").getString(new LazyObject(DATA));
+    }
+
+    @Test
+    public void testBooleans() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":{\"b\":\"TRUE\",\"c\":null,\"d\":1}}");
+        assertTrue(LazyPath.compile("a.b").getBoolean(obj));
+        assertTrue(LazyPath.compile("a.b").optBoolean(obj,false));
+        assertTrue(LazyPath.compile("a.c").optBoolean(obj,true));
+        assertTrue(LazyPath.compile("a.x").optBoolean(obj,true));
+        try{
+            LazyPath.compile("a.d").optBoolean(obj,true);
+            fail();
+        }catch(LazyException e){
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadEscape(){
+        LazyPath.compile("/a~2");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEmptyName(){
+        LazyPath.compile("a..b");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testBadIndex(){
+        LazyPath.compile("a[x]");
+    }
+}
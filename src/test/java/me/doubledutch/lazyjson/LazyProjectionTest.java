@@ -0,0 +1,120 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+
+public class LazyProjectionTest{
+    private static final String EVENT="{\"type\":\"click\",\"user\":{\"id\":42,\"name\":\"Bob\",\"tags\":[\"a\",{\"b\":[1,2]}]},"
+            +"\"event\":{\"ts\":1234567890123,\"meta\":{\"x\":\"}]\\\"[{\"}},\"items\":[{\"sku\":\"A1\",\"qty\":2},{\"qty\":3},{\"sku\":\"B2\",\"price\":1.5}],\"flag\":true}";
+
+    @Test
+    public void testFieldPaths() throws LazyException{
+        LazyObject obj=new LazyObject(EVENT,new LazyParserOptions().setProjection("user.id","event.ts"));
+        assertEquals(2,obj.length());
+        assertFalse(obj.has("type"));
+        assertFalse(obj.has("items"));
+        assertEquals(1,obj.getJSONObject("user").length());
+        assertEquals(42,obj.getJSONObject("user").getInt("id"));
+        assertFalse(obj.getJSONObject("user").has("name"));
+        assertEquals(1234567890123l,obj.getJSONObject("event").getLong("ts"));
+        assertFalse(obj.getJSONObject("event").has("meta"));
+        // The raw source is still returned as is
+        assertEquals(EVENT,obj.toString());
+    }
+
+    @Test
+    public void testArrayElements() throws LazyException{
+        LazyObject obj=new LazyObject(EVENT,new LazyParserOptions().setProjection("items[*].sku","flag"));
+        assertEquals(2,obj.length());
+        assertTrue(obj.getBoolean("flag"));
+        LazyArray items=obj.getJSONArray("items");
+        assertEquals(3,items.length());
+        assertEquals("A1",items.getJSONObject(0).getString("sku"));
+        assertEquals(0,items.getJSONObject(1).length());
+        assertEquals("B2",items.getJSONObject(2).getString("sku"));
+        assertFalse(items.getJSONObject(2).has("price"));
+    }
+
+    @Test
+    public void testFullSubtree() throws LazyException{
+        LazyObject obj=new LazyObject(EVENT,new LazyParserOptions().setProjection("user","user.id"));
+        assertEquals(1,obj.length());
+        LazyObject user=obj.getJSONObject("user");
+        assertEquals(3,user.length());
+        assertEquals("Bob",user.getString("name"));
+        assertEquals(2,user.getJSONArray("tags").getJSONObject(1).getJSONArray("b").getInt(1));
+    }
+
+    @Test
+    public void testRootArray() throws LazyException{
+        String str="[{\"id\":1,\"x\":[1,2,3]},{\"id\":2,\"x\":\"y\"},3,\"z\",[4]]";
+        LazyArray arr=new LazyArray(str,new LazyParserOptions().setProjection("[*].id"));
+        assertEquals(5,arr.length());
+        assertEquals(1,arr.getJSONObject(0).getInt("id"));
+        assertEquals(1,arr.getJSONObject(0).length());
+        assertEquals(2,arr.getJSONObject(1).getInt("id"));
+        assertEquals(3,arr.getInt(2));
+        arr=new LazyArray(str,new LazyParserOptions().setProjection("foo"));
+        assertEquals(0,arr.length());
+    }
+
+    @Test
+    public void testEscapedFieldName() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\\u0062\":1,\"ab\\n\":2,\"c\":3}",new LazyParserOptions().setProjection("ab"));
+        assertEquals(1,obj.length());
+        assertEquals(1,obj.getInt("ab"));
+    }
+
+    @Test
+    public void testOptionCombinations() throws LazyException{
+        byte[] data=EVENT.getBytes(StandardCharsets.UTF_8);
+        LazyParserOptions[] options=new LazyParserOptions[]{
+            new LazyParserOptions().setProjection("user.id","items[*].sku"),
+            new LazyParserOptions().setProjection("user.id","items[*].sku").setTape(true),
+            new LazyParserOptions().setProjection("user.id","items[*].sku").setStructuralIndex(true),
+            new LazyParserOptions().setProjection("user.id","items[*].sku").setStructuralIndex(true).setTape(true)
+        };
+        for(LazyParserOptions opt:options){
+            LazyObject obj=new LazyObject(data,0,data.length,opt);
+            assertEquals(2,obj.length());
+            assertEquals(42,obj.getJSONObject("user").getInt("id"));
+            assertEquals("B2",obj.getJSONArray("items").getJSONObject(2).getString("sku"));
+            obj=new LazyObject(EVENT,opt);
+            assertEquals(2,obj.length());
+            assertEquals(42,obj.getJSONObject("user").getInt("id"));
+            assertEquals("A1",obj.getJSONArray("items").getJSONObject(0).getString("sku"));
+        }
+    }
+
+    @Test
+    public void testGetProjection() throws LazyException{
+        LazyParserOptions opt=new LazyParserOptions();
+        assertNull(opt.getProjection());
+        opt.setProjection("a.b","c[*]");
+        assertEquals(2,opt.getProjection().length);
+        assertEquals("c[*]",opt.getProjection()[1]);
+        opt.setProjection((String[])null);
+        assertNull(opt.getProjection());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadPath() throws LazyException{
+        new LazyParserOptions().setProjection("a..b");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadArrayPath() throws LazyException{
+        new LazyParserOptions().setProjection("a[0]");
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadProjectedData() throws LazyException{
+        new LazyObject("{\"a\":{\"b\":[1,}}",new LazyParserOptions().setProjection("a.b"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testMissingSkippedValue() throws LazyException{
+        new LazyObject("{\"a\":,\"b\":1}",new LazyParserOptions().setProjection("b"));
+    }
+}
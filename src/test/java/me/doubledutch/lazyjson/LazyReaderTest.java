@@ -0,0 +1,133 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+public class LazyReaderTest{
+    // Returns a single character per read to force documents to span reads
+    private static class TrickleReader extends Reader{
+        private final String str;
+        private int index=0;
+
+        public TrickleReader(String str){
+            this.str=str;
+        }
+
+        public int read(char[] cbuf,int off,int len){
+            if(index==str.length()){
+                return -1;
+            }
+            cbuf[off]=str.charAt(index++);
+            return 1;
+        }
+
+        public void close(){}
+    }
+
+    @Test
+    public void testNDJSON() throws Exception{
+        String str="{\"foo\":1}\n[1,2,3]\n\n{\"bar\":\"baz\"}\r\n";
+        LazyReader reader=new LazyReader(new StringReader(str));
+        LazyElement el=reader.next();
+        assertEquals(LazyType.OBJECT,el.getType());
+        assertEquals(1,((LazyObject)el).getInt("foo"));
+        el=reader.next();
+        assertEquals(LazyType.ARRAY,el.getType());
+        assertEquals(3,((LazyArray)el).getInt(2));
+        el=reader.next();
+        assertEquals("baz",((LazyObject)el).getString("bar"));
+        assertEquals("{\"bar\":\"baz\"}",el.toString());
+        assertNull(reader.next());
+        assertNull(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testConcatenated() throws Exception{
+        String str="{}[1]{\"a\":\"}]\\\"{\"} [{\"b\":[]}]";
+        LazyReader reader=new LazyReader(new TrickleReader(str));
+        assertEquals(0,reader.next().length());
+        assertEquals(1,((LazyArray)reader.next()).getInt(0));
+        assertEquals("}]\"{",((LazyObject)reader.next()).getString("a"));
+        assertEquals(0,((LazyArray)reader.next()).getJSONObject(0).getJSONArray("b").length());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testInputStream() throws Exception{
+        String str="{\"\u00e6\u00f8\u00e5\":\"\u4e2d\u6587\"}\n{\"x\":[1.5]}\n";
+        LazyReader reader=new LazyReader(new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("\u4e2d\u6587",((LazyObject)reader.next()).getString("\u00e6\u00f8\u00e5"));
+        assertEquals(1.5,((LazyObject)reader.next()).getJSONArray("x").getDouble(0),0);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testChannel() throws Exception{
+        String str="[1]\n[2]\n[3]";
+        LazyReader reader=new LazyReader(Channels.newChannel(new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8))));
+        for(int i=1;i<=3;i++){
+            assertEquals(i,((LazyArray)reader.next()).getInt(0));
+        }
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testLargeDocuments() throws Exception{
+        StringBuilder buf=new StringBuilder();
+        for(int d=0;d<5;d++){
+            buf.append("{\"id\":"+d+",\"data\":[");
+            for(int i=0;i<20000;i++){
+                if(i>0)buf.append(',');
+                buf.append("\"v"+i+"\"");
+            }
+            buf.append("]}\n");
+        }
+        String str=buf.toString();
+        LazyReader reader=new LazyReader(new StringReader(str));
+        LazyReader byteReader=new LazyReader(new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_8)),new LazyParserOptions().setTape(true));
+        for(int d=0;d<5;d++){
+            LazyObject obj=(LazyObject)reader.next();
+            assertEquals(d,obj.getInt("id"));
+            assertEquals("v19999",obj.getJSONArray("data").getString(19999));
+            obj=(LazyObject)byteReader.next();
+            assertEquals(d,obj.getInt("id"));
+            assertEquals("v19999",obj.getJSONArray("data").getString(19999));
+        }
+        assertNull(reader.next());
+        assertNull(byteReader.next());
+    }
+
+    @Test
+    public void testElementsAreIndependent() throws Exception{
+        LazyReader reader=new LazyReader(new StringReader("{\"a\":1}{\"a\":2}"));
+        LazyObject first=(LazyObject)reader.next();
+        LazyObject second=(LazyObject)reader.next();
+        assertEquals(1,first.getInt("a"));
+        assertEquals(2,second.getInt("a"));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTruncated() throws Exception{
+        LazyReader reader=new LazyReader(new StringReader("{\"a\":1}\n{\"a\":"));
+        reader.next();
+        reader.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadDocument() throws Exception{
+        LazyReader reader=new LazyReader(new StringReader("{\"a\":1}\n{\"a\":1,}"));
+        reader.next();
+        reader.next();
+    }
+
+    @Test(expected=LazyException.class)
+    public void testNotAnElement() throws Exception{
+        LazyReader reader=new LazyReader(new StringReader("{\"a\":1}\n42\n"));
+        reader.next();
+        reader.next();
+    }
+}
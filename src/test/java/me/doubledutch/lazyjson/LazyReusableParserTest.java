@@ -0,0 +1,157 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class LazyReusableParserTest{
+    @Test
+    public void testSequence() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        for(int i=0;i<100;i++){
+            LazyObject obj=(LazyObject)parser.parse("{\"id\":"+i+",\"name\":\"user "+i+"\",\"tags\":[\"a\",{\"b\":"+i+"}]}");
+            assertEquals(i,obj.getInt("id"));
+            assertEquals("user "+i,obj.getString("name"));
+            assertEquals(i,obj.getJSONArray("tags").getJSONObject(1).getInt("b"));
+            assertEquals(3,obj.length());
+            parser.release();
+        }
+    }
+
+    @Test
+    public void testRecycledNodes() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        LazyElement first=parser.parse("{\"foo\":[1,2,3]}");
+        LazyNode root=first.root;
+        parser.release();
+        assertNull(first.root);
+        LazyElement second=parser.parse("{\"bar\":true}");
+        assertSame(first,second);
+        assertTrue(second.root==root || second.root.child==root);
+        assertTrue(((LazyObject)second).getBoolean("bar"));
+        assertEquals("{\"bar\":true}",second.toString());
+    }
+
+    @Test
+    public void testSharedValueNotRecycled() throws LazyException{
+        LazyObject other=new LazyObject("{\"list\":[{\"x\":1},{\"y\":2}]}");
+        LazyReusableParser parser=new LazyReusableParser();
+        LazyObject first=(LazyObject)parser.parse("{\"foo\":1}");
+        first.put("shared",other.getJSONArray("list").getJSONObject(0));
+        parser.release();
+        parser.parse("{\"a\":{\"b\":[1,2,3]},\"c\":\"d\"}");
+        assertEquals("{\"list\":[{\"x\":1},{\"y\":2}]}",other.toString());
+        assertEquals(2,other.getJSONArray("list").length());
+    }
+
+    @Test
+    public void testUnreleased() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        LazyObject first=(LazyObject)parser.parse("{\"foo\":\"first\"}");
+        LazyObject second=(LazyObject)parser.parse("{\"foo\":\"second\"}");
+        assertNotSame(first,second);
+        assertEquals("first",first.getString("foo"));
+        assertEquals("second",second.getString("foo"));
+        assertEquals("{\"foo\":\"first\"}",first.toString());
+    }
+
+    @Test
+    public void testObjectsAndArrays() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        LazyArray array=(LazyArray)parser.parse("[1,2,3]");
+        assertEquals(2,array.getInt(1));
+        parser.release();
+        LazyObject obj=(LazyObject)parser.parse("{\"a\":1}");
+        assertEquals(1,obj.getInt("a"));
+        parser.release();
+        LazyArray again=(LazyArray)parser.parse("[4,5]");
+        assertSame(array,again);
+        assertEquals(2,again.length());
+        assertEquals(5,again.getInt(1));
+        parser.release();
+    }
+
+    @Test
+    public void testBytes() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        byte[] data="  {\"name\":\"J\u00f6rg\"}[1,2]".getBytes(StandardCharsets.UTF_8);
+        LazyObject obj=(LazyObject)parser.parse(data,0,18);
+        assertEquals("J\u00f6rg",obj.getString("name"));
+        parser.release();
+        LazyArray array=(LazyArray)parser.parse(data,18,5);
+        assertEquals(2,array.getInt(1));
+        parser.release();
+        array=(LazyArray)parser.parse(ByteBuffer.wrap(data,18,5));
+        assertEquals(1,array.getInt(0));
+        parser.release();
+    }
+
+    @Test
+    public void testChars() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        char[] data="xx[true,false]".toCharArray();
+        LazyArray array=(LazyArray)parser.parse(data,2,12);
+        assertFalse(array.getBoolean(1));
+        parser.release();
+    }
+
+    @Test
+    public void testGrowBuffer() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<2000;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append("[[").append(i).append("]]");
+        }
+        buf.append("]");
+        LazyArray array=(LazyArray)parser.parse(buf.toString());
+        assertEquals(1999,array.getJSONArray(1999).getJSONArray(0).getInt(0));
+        parser.release();
+        array=(LazyArray)parser.parse("[7]");
+        assertEquals(7,array.getInt(0));
+        parser.release();
+    }
+
+    @Test
+    public void testErrorRecovery() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser();
+        try{
+            parser.parse("{\"foo\":[1,2}");
+            fail();
+        }catch(LazyException e){
+        }
+        LazyObject obj=(LazyObject)parser.parse("{\"foo\":[1,2]}");
+        assertEquals(2,obj.getJSONArray("foo").length());
+        parser.release();
+        parser.release();
+    }
+
+    @Test
+    public void testOptions() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser(new LazyParserOptions().setTape(true));
+        for(int i=0;i<10;i++){
+            LazyObject obj=(LazyObject)parser.parse("{\"a\":{\"b\":["+i+"]}}");
+            assertEquals(i,obj.getJSONObject("a").getJSONArray("b").getInt(0));
+            parser.release();
+        }
+    }
+
+    @Test
+    public void testLocal() throws Exception{
+        final LazyReusableParser parser=LazyReusableParser.local();
+        assertSame(parser,LazyReusableParser.local());
+        final LazyReusableParser[] other=new LazyReusableParser[1];
+        Thread thread=new Thread(){
+            public void run(){
+                other[0]=LazyReusableParser.local();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(parser,other[0]);
+    }
+}
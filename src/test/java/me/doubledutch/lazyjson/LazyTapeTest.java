@@ -0,0 +1,85 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.*;
+
+public class LazyTapeTest{
+    private static final LazyParserOptions TAPE=new LazyParserOptions().setTape(true);
+
+    @Test
+    public void testReadValues() throws LazyException{
+        String str="{\"foo\":\"bar\",\"baz\":[1,2.5,true,false,null,{\"a\":\"b\\n\"}],\"obj\":{\"x\":{\"y\":42}}}";
+        LazyObject obj=new LazyObject(str,TAPE);
+        assertEquals("bar",obj.getString("foo"));
+        LazyArray arr=obj.getJSONArray("baz");
+        assertEquals(6,arr.length());
+        assertEquals(1,arr.getInt(0));
+        assertEquals(2.5,arr.getDouble(1),0);
+        assertTrue(arr.getBoolean(2));
+        assertFalse(arr.getBoolean(3));
+        assertTrue(arr.isNull(4));
+        assertEquals("b\n",arr.getJSONObject(5).getString("a"));
+        assertEquals(42,obj.getJSONObject("obj").getJSONObject("x").getInt("y"));
+        assertEquals(str,obj.toString());
+        assertEquals(new LazyObject(str),obj);
+    }
+
+    @Test
+    public void testLazyExpansion() throws LazyException{
+        String str="{\"a\":{\"b\":{\"c\":1}},\"d\":[[1],[2]]}";
+        LazyObject obj=new LazyObject(str,TAPE);
+        // Only the first level has been created
+        LazyNode a=obj.root.child.child;
+        assertEquals(LazyNode.OBJECT,a.type);
+        assertNull(a.child);
+        assertNotNull(a.tape);
+        LazyObject inner=obj.getJSONObject("a");
+        assertNotNull(a.child);
+        assertNull(a.tape);
+        assertNull(a.child.child.child);
+        assertEquals(1,inner.getJSONObject("b").getInt("c"));
+        assertEquals(2,obj.getJSONArray("d").getJSONArray(1).getInt(0));
+    }
+
+    @Test
+    public void testEmptyContainers() throws LazyException{
+        LazyArray arr=new LazyArray("[{},[],{\"a\":[]}]",TAPE);
+        assertEquals(3,arr.length());
+        assertEquals(0,arr.getJSONObject(0).length());
+        assertEquals(0,arr.getJSONArray(1).length());
+        assertEquals(0,arr.getJSONObject(2).getJSONArray("a").length());
+    }
+
+    @Test
+    public void testModify() throws LazyException{
+        LazyObject obj=new LazyObject("{\"foo\":{\"bar\":1},\"baz\":[1,2]}",TAPE);
+        obj.getJSONObject("foo").put("test",true);
+        obj.getJSONArray("baz").put(3);
+        assertEquals("{\"foo\":{\"bar\":1,\"test\":true},\"baz\":[1,2,3]}",obj.toString());
+    }
+
+    @Test
+    public void testDeepNesting() throws LazyException{
+        StringBuilder buf=new StringBuilder();
+        for(int i=0;i<200;i++)buf.append("[");
+        buf.append("\"deep\"");
+        for(int i=0;i<200;i++)buf.append("]");
+        LazyArray arr=new LazyArray(buf.toString(),TAPE);
+        for(int i=0;i<199;i++){
+            arr=arr.getJSONArray(0);
+        }
+        assertEquals("deep",arr.getString(0));
+    }
+
+    @Test
+    public void testTemplate() throws LazyException{
+        String str="{\"foo\":{\"bar\":1},\"baz\":[1,\"a\"]}";
+        assertEquals(new LazyObject(str).extractTemplate(),new LazyObject(str,TAPE).extractTemplate());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadData() throws LazyException{
+        new LazyArray("[1,{\"a\":}]",TAPE);
+    }
+}
@@ -0,0 +1,127 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelArrayTest{
+    private static ForkJoinPool pool;
+    private static String data;
+
+    @BeforeClass
+    public static void createPool(){
+        pool=new ForkJoinPool(4);
+        // Large enough to be split into several batches
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<40000;i++){
+            if(i>0){
+                buf.append(",\n");
+            }
+            if(i%4==0){
+                buf.append("[").append(i).append(",\"a,]\\\"b\"]");
+            }else if(i%4==1){
+                buf.append(i);
+            }else{
+                buf.append("{\"id\":").append(i).append(",\"name\":\"user ").append(i).append(" {[,:]}\",\"tags\":[\"x\",\"y\"]}");
+            }
+        }
+        buf.append("]");
+        data=buf.toString();
+    }
+
+    @AfterClass
+    public static void shutdownPool(){
+        pool.shutdown();
+    }
+
+    private static int id(LazyArray array,int index) throws LazyException{
+        if(index%4==0){
+            return array.getJSONArray(index).getInt(0);
+        }else if(index%4==1){
+            return array.getInt(index);
+        }
+        return array.getJSONObject(index).getInt("id");
+    }
+
+    private void check(LazyArray array) throws LazyException{
+        assertEquals(40000,array.length());
+        assertEquals(39999,id(array,39999));
+        assertEquals(0,id(array,0));
+        for(int i=0;i<40000;i+=997){
+            assertEquals(i,id(array,i));
+        }
+        assertEquals("a,]\"b",array.getJSONArray(20000).getString(1));
+        assertEquals("user 30002 {[,:]}",array.getJSONObject(30002).getString("name"));
+        assertEquals(data,array.toString());
+    }
+
+    @Test
+    public void testCharSource() throws LazyException{
+        check(new LazyArray(data,new LazyParserOptions().setParallel(pool)));
+    }
+
+    @Test
+    public void testByteSource() throws LazyException{
+        byte[] raw=data.getBytes(StandardCharsets.UTF_8);
+        check(new LazyArray(ByteBuffer.wrap(raw),new LazyParserOptions().setParallel(pool)));
+    }
+
+    @Test
+    public void testTape() throws LazyException{
+        check(new LazyArray(data,new LazyParserOptions().setParallel(pool).setTape(true).setStructuralIndex(true)));
+    }
+
+    @Test
+    public void testMatchesSequential() throws LazyException{
+        LazyArray parallel=new LazyArray(data,new LazyParserOptions().setParallel(pool));
+        LazyArray sequential=new LazyArray(data);
+        assertTrue(parallel.equals(sequential));
+    }
+
+    @Test
+    public void testModify() throws LazyException{
+        LazyArray array=new LazyArray(data,new LazyParserOptions().setParallel(pool));
+        array.remove(0);
+        assertEquals(39999,array.length());
+        assertEquals(1,array.getInt(0));
+        array.put(0,"first");
+        assertEquals("first",array.getString(0));
+        array.put(-1);
+        assertEquals(-1,array.getInt(40000));
+    }
+
+    @Test
+    public void testSmallArray() throws LazyException{
+        LazyArray array=new LazyArray("[1,2,3]",new LazyParserOptions().setParallel(pool));
+        assertEquals(3,array.length());
+        assertEquals(2,array.getInt(1));
+    }
+
+    @Test
+    public void testObjectRoot() throws LazyException{
+        LazyObject obj=new LazyObject("{\"list\":"+data+"}",new LazyParserOptions().setParallel(pool));
+        assertEquals(40000,obj.getJSONArray("list").length());
+    }
+
+    @Test(expected=LazyException.class)
+    public void testBadElement() throws LazyException{
+        new LazyArray(data.replace("user 30002","user\" 30002"),new LazyParserOptions().setParallel(pool));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingComma() throws LazyException{
+        new LazyArray(data.substring(0,data.length()-1)+",]",new LazyParserOptions().setParallel(pool));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testUnterminated() throws LazyException{
+        new LazyArray(data.substring(0,data.length()-1),new LazyParserOptions().setParallel(pool));
+    }
+
+    @Test(expected=LazyException.class)
+    public void testTrailingData() throws LazyException{
+        new LazyArray(data+"x",new LazyParserOptions().setParallel(pool));
+    }
+}
@@ -0,0 +1,87 @@
+package me.doubledutch.lazyjson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses the same document in every mode the parser supports, for tests of
+ * behaviour that must not depend on how a document was read.
+ */
+final class ParseModes{
+    private ParseModes(){
+    }
+
+    // One set of options per parser mode, each starting from the given
+    // options. Projections and parallel parsing are not carried over.
+    private static LazyParserOptions[] options(LazyParserOptions base){
+        return new LazyParserOptions[]{
+            copy(base),
+            copy(base).setTape(true),
+            copy(base).setDeferDepth(0),
+            copy(base).setTape(true).setDeferDepth(0),
+            copy(base).setStructuralIndex(true),
+            copy(base).setValueCache(true),
+            copy(base).setKeyHashing(true)
+        };
+    }
+
+    private static LazyParserOptions copy(LazyParserOptions base){
+        return new LazyParserOptions()
+                .setTape(base.isTape())
+                .setStructuralIndex(base.isStructuralIndex())
+                .setDeferDepth(base.getDeferDepth())
+                .setKeyHashing(base.isKeyHashing())
+                .setValueCache(base.isValueCache());
+    }
+
+    /**
+     * Parses the given document in every mode, from a string, a heap buffer,
+     * a direct buffer and a buffer sliced out of a larger array.
+     */
+    static LazyElement[] elements(String json) throws LazyException{
+        return elements(json,new LazyParserOptions());
+    }
+
+    /**
+     * Parses the given document in every mode, with the given options
+     * turned on for all of them.
+     */
+    static LazyElement[] elements(String json,LazyParserOptions base) throws LazyException{
+        byte[] raw=json.getBytes(StandardCharsets.UTF_8);
+        LazyParserOptions[] modes=options(base);
+        LazyElement[] result=new LazyElement[modes.length*4];
+        int index=0;
+        for(LazyParserOptions options:modes){
+            result[index++]=LazyElement.parse(json,options);
+            result[index++]=LazyElement.parse(ByteBuffer.wrap(raw),options);
+            ByteBuffer direct=ByteBuffer.allocateDirect(raw.length);
+            direct.put(raw);
+            direct.flip();
+            result[index++]=LazyElement.parse(direct,options);
+            byte[] padded=new byte[raw.length+4];
+            System.arraycopy(raw,0,padded,4,raw.length);
+            result[index++]=LazyElement.parse(ByteBuffer.wrap(padded,4,raw.length).slice(),options);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the given object in every mode.
+     */
+    static LazyObject[] objects(String json) throws LazyException{
+        return objects(json,new LazyParserOptions());
+    }
+
+    /**
+     * Parses the given object in every mode, with the given options turned
+     * on for all of them.
+     */
+    static LazyObject[] objects(String json,LazyParserOptions base) throws LazyException{
+        LazyElement[] elements=elements(json,base);
+        LazyObject[] result=new LazyObject[elements.length];
+        for(int i=0;i<elements.length;i++){
+            result[i]=(LazyObject)elements[i];
+        }
+        return result;
+    }
+}
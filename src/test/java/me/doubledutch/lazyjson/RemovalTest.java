@@ -0,0 +1,202 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RemovalTest{
+    @Test
+    public void testRemoveLastField() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\":1,\"b\":2,\"c\":3}");
+        obj.remove("c");
+        obj.put("d",4);
+        assertEquals("{\"a\":1,\"b\":2,\"d\":4}",obj.toString());
+        assertEquals(3,obj.length());
+        obj.remove("a");
+        obj.remove("d");
+        obj.put("e",5);
+        assertEquals("{\"b\":2,\"e\":5}",obj.toString());
+        obj.remove("b");
+        obj.remove("e");
+        assertEquals(0,obj.length());
+        assertEquals("{}",obj.toString());
+        obj.put("f",6);
+        assertEquals("{\"f\":6}",obj.toString());
+        assertEquals(1,obj.length());
+    }
+
+    @Test
+    public void testSharedLength() throws LazyException{
+        LazyObject obj=new LazyObject("{\"inner\":{\"a\":1,\"b\":2}}");
+        LazyObject first=obj.getJSONObject("inner");
+        LazyObject second=obj.getJSONObject("inner");
+        assertEquals(2,first.length());
+        assertEquals(2,second.length());
+        second.put("c",3);
+        assertEquals(3,first.length());
+        first.remove("a");
+        assertEquals(2,second.length());
+
+        LazyArray array=new LazyArray("[[1,2,3]]");
+        LazyArray a=array.getJSONArray(0);
+        LazyArray b=array.getJSONArray(0);
+        assertEquals(3,a.length());
+        b.put(4);
+        b.remove(0);
+        b.put(0,"x");
+        assertEquals(4,a.length());
+    }
+
+    @Test
+    public void testRemoveSharedChild() throws LazyException{
+        LazyObject docA=new LazyObject("{\"a\":{\"x\":1},\"b\":2}");
+        LazyObject docB=new LazyObject("{\"c\":3}");
+        LazyArray list=new LazyArray("[0,1]");
+        LazyObject sub=docA.getJSONObject("a");
+        docB.put("s",sub);
+        list.put(1,sub);
+        assertEquals("[0,{\"x\":1},1]",list.toString());
+        docA.remove("a");
+        assertEquals("{\"b\":2}",docA.toString());
+        assertEquals("{\"c\":3,\"s\":{\"x\":1}}",docB.toString());
+        list.remove(1);
+        assertEquals("[0,1]",list.toString());
+        assertEquals(2,list.length());
+        sub.put("y",2);
+        assertEquals("{\"c\":3,\"s\":{\"x\":1,\"y\":2}}",docB.toString());
+        docB.remove("s");
+        assertEquals("{\"c\":3}",docB.toString());
+        assertEquals("{\"b\":2}",docA.toString());
+        assertEquals("[0,1]",list.toString());
+        assertEquals("{\"x\":1,\"y\":2}",sub.toString());
+
+        // A value removed from one array can be put in another one
+        LazyArray first=new LazyArray("[[1],2]");
+        LazyArray second=new LazyArray("[3]");
+        LazyArray inner=first.getJSONArray(0);
+        first.remove(0);
+        second.put(0,inner);
+        inner.put(4);
+        assertEquals("[2]",first.toString());
+        assertEquals("[[1,4],3]",second.toString());
+        second.remove(0);
+        assertEquals("[3]",second.toString());
+        assertEquals(1,second.length());
+    }
+
+    @Test
+    public void testDuplicateNames() throws LazyException{
+        StringBuilder buf=new StringBuilder("{\"dup\":1");
+        for(int i=0;i<40;i++){
+            buf.append(",\"f").append(i).append("\":").append(i);
+        }
+        buf.append(",\"dup\":2}");
+        LazyObject obj=new LazyObject(buf.toString());
+        assertEquals(1,obj.getInt("dup"));
+        obj.remove("dup");
+        assertEquals(2,obj.getInt("dup"));
+        obj.remove("dup");
+        assertFalse(obj.has("dup"));
+        assertEquals(40,obj.length());
+    }
+
+    @Test
+    public void testWideObject() throws LazyException{
+        Random random=new Random(7);
+        StringBuilder buf=new StringBuilder("{");
+        Map<String,Integer> model=new LinkedHashMap<String,Integer>();
+        for(int i=0;i<200;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append("\"k").append(i).append("\":").append(i);
+            model.put("k"+i,i);
+        }
+        buf.append("}");
+        LazyObject obj=new LazyObject(buf.toString());
+        assertEquals(0,obj.getInt("k0"));
+        for(int n=0;n<2000;n++){
+            String key="k"+random.nextInt(300);
+            if(random.nextBoolean()){
+                obj.remove(key);
+                model.remove(key);
+            }else{
+                obj.put(key,n);
+                model.put(key,n);
+            }
+            assertEquals(model.size(),obj.length());
+        }
+        assertNotNull(obj.root.fieldIndex);
+        for(int i=0;i<300;i++){
+            String key="k"+i;
+            assertEquals(model.containsKey(key),obj.has(key));
+            if(model.containsKey(key)){
+                assertEquals((int)model.get(key),obj.getInt(key));
+            }
+        }
+        LazyObject copy=new LazyObject(obj.toString());
+        assertEquals(model.size(),copy.length());
+        List<String> keys=new ArrayList<String>();
+        Iterator<String> it=copy.keys();
+        while(it.hasNext()){
+            keys.add(it.next());
+        }
+        assertEquals(new ArrayList<String>(model.keySet()),keys);
+    }
+
+    private void checkArray(LazyArray array,List<Integer> model,Random random) throws LazyException{
+        for(int n=0;n<2000;n++){
+            int op=random.nextInt(3);
+            if(op==0 && model.size()>0){
+                int index=random.nextInt(model.size());
+                array.remove(index);
+                model.remove(index);
+            }else if(op==1){
+                int index=random.nextInt(model.size()+1);
+                array.put(index,n);
+                model.add(index,n);
+            }else{
+                array.put(n);
+                model.add(n);
+            }
+            assertEquals(model.size(),array.length());
+        }
+        for(int i=0;i<model.size();i++){
+            assertEquals((int)model.get(i),array.getInt(i));
+        }
+        LazyArray copy=new LazyArray(array.toString());
+        assertEquals(model.size(),copy.length());
+        for(int i=0;i<model.size();i++){
+            assertEquals((int)model.get(i),copy.getInt(i));
+        }
+        if(model.size()>0){
+            assertSame(array.root.lastChild.next,null);
+            assertEquals((int)model.get(model.size()-1),new LazyArray("["+array.root.lastChild.getStringValue()+"]").getInt(0));
+        }
+    }
+
+    @Test
+    public void testArrays() throws LazyException{
+        Random random=new Random(11);
+        checkArray(new LazyArray("[1,2,3]"),new ArrayList<Integer>(java.util.Arrays.asList(1,2,3)),random);
+        StringBuilder buf=new StringBuilder("[");
+        List<Integer> model=new ArrayList<Integer>();
+        for(int i=0;i<100;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append(i);
+            model.add(i);
+        }
+        buf.append("]");
+        LazyArray wide=new LazyArray(buf.toString());
+        wide.getInt(50);
+        assertNotNull(wide.root.childIndex);
+        checkArray(wide,model,random);
+    }
+}
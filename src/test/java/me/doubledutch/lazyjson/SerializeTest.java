@@ -6,6 +6,8 @@ import static org.junit.Assert.*;
 import java.util.List;
 import java.util.ArrayList;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class SerializeTest{
     @Test
@@ -27,4 +29,65 @@ public class SerializeTest{
         // System.out.println(raw.length+" vs "+str.length());
         */
     }
+
+    @Test
+    public void testSpliceCleanSubtrees() throws LazyException{
+        String str="{\"a\":{ \"x\" : [1, 2,3] },\"b\":\"q\\\"s\",\"c\":[ {\"d\":1.5e3} , null ]}";
+        LazyObject obj=new LazyObject(str);
+        obj.put("e",42);
+        assertEquals("{\"a\":{ \"x\" : [1, 2,3] },\"b\":\"q\\\"s\",\"c\":[ {\"d\":1.5e3} , null ],\"e\":42}",obj.toString());
+        LazyObject out=new LazyObject(obj.toString());
+        assertEquals("q\"s",out.getString("b"));
+        assertEquals(1500.0,out.getJSONArray("c").getJSONObject(0).getDouble("d"),0);
+    }
+
+    @Test
+    public void testNestedModification() throws LazyException{
+        String str="{\"a\":{\"b\":{\"c\":1},\"keep\":[true, false]},\"z\":{ }}";
+        LazyObject obj=new LazyObject(str);
+        obj.getJSONObject("a").getJSONObject("b").put("d","x");
+        assertEquals("{\"a\":{\"b\":{\"c\":1,\"d\":\"x\"},\"keep\":[true, false]},\"z\":{ }}",obj.toString());
+        assertEquals("{\"c\":1,\"d\":\"x\"}",obj.getJSONObject("a").getJSONObject("b").toString());
+        assertEquals("[true, false]",obj.getJSONObject("a").getJSONArray("keep").toString());
+    }
+
+    @Test
+    public void testEscapedFieldName() throws LazyException{
+        LazyObject obj=new LazyObject("{\"a\\\"b\":1}");
+        obj.put("c",true);
+        LazyObject out=new LazyObject(obj.toString());
+        assertEquals(1,out.getInt("a\"b"));
+        assertTrue(out.getBoolean("c"));
+    }
+
+    @Test
+    public void testArrayModification() throws LazyException{
+        LazyArray array=new LazyArray("[ {\"a\": 1}, [2, 3], \"s\" ]");
+        array.put(false);
+        array.put(LazyObject.NULL);
+        array.getJSONArray(1).put(4);
+        assertEquals("[{\"a\": 1},[2,3,4],\"s\",false,null]",array.toString());
+    }
+
+    @Test
+    public void testOtherSources() throws LazyException{
+        String str="{\"name\":\"\u00e9t\u00e9\",\"list\":[1, 2]}";
+        LazyObject bytes=new LazyObject(ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8)));
+        bytes.put("n",1);
+        assertEquals("{\"name\":\"\u00e9t\u00e9\",\"list\":[1, 2],\"n\":1}",bytes.toString());
+        LazyObject tape=new LazyObject(str,new LazyParserOptions().setTape(true));
+        tape.put("n",1);
+        assertEquals("{\"name\":\"\u00e9t\u00e9\",\"list\":[1, 2],\"n\":1}",tape.toString());
+        LazyObject deferred=new LazyObject(str,new LazyParserOptions().setDeferDepth(0));
+        deferred.put("n",1);
+        assertEquals("{\"name\":\"\u00e9t\u00e9\",\"list\":[1, 2],\"n\":1}",deferred.toString());
+    }
+
+    @Test
+    public void testAttachedElement() throws LazyException{
+        LazyObject obj=new LazyObject();
+        obj.put("inner",new LazyObject("{ \"x\" :1}"));
+        obj.put("list",new LazyArray("[1 ,2]"));
+        assertEquals("{\"inner\":{ \"x\" :1},\"list\":[1 ,2]}",obj.toString());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+
+public class StringCompareTest{
+    private static final String DATA="{\"type\":\"click\",\"escaped\":\"a\\\"b\",\"unicode\":\"gr\u00fc\u00dfe \ud83d\ude00!\",\"empty\":\"\",\"number\":42,\"nothing\":null,\"list\":[\"x\",\"click\"]}";
+
+    @Test
+    public void testEquals() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            assertTrue(obj.stringEquals("type","click"));
+            assertFalse(obj.stringEquals("type","clic"));
+            assertFalse(obj.stringEquals("type","clicks"));
+            assertFalse(obj.stringEquals("type","Click"));
+            assertTrue(obj.stringEquals(LazyKey.of("type"),"click"));
+            assertTrue(obj.stringEquals("escaped","a\"b"));
+            assertFalse(obj.stringEquals("escaped","a\\\"b"));
+            assertTrue(obj.stringEquals("unicode","gr\u00fc\u00dfe \ud83d\ude00!"));
+            assertFalse(obj.stringEquals("unicode","gr\u00fc\u00dfe \ud83d\ude01!"));
+            assertFalse(obj.stringEquals("unicode","gr\u00fc\u00dfe"));
+            assertTrue(obj.stringEquals("empty",""));
+            assertTrue(obj.stringEquals("number","42"));
+            assertTrue(obj.stringEquals("nothing",null));
+            assertFalse(obj.stringEquals("type",null));
+            assertFalse(obj.stringEquals("missing","click"));
+            assertTrue(obj.getJSONArray("list").stringEquals(1,"click"));
+            assertFalse(obj.getJSONArray("list").stringEquals(2,"click"));
+        }
+    }
+
+    @Test
+    public void testStartsWith() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            assertTrue(obj.startsWith("type","cl"));
+            assertTrue(obj.startsWith("type",""));
+            assertTrue(obj.startsWith("type","click"));
+            assertFalse(obj.startsWith("type","clicks"));
+            assertFalse(obj.startsWith("type","x"));
+            assertTrue(obj.startsWith(LazyKey.of("escaped"),"a\""));
+            assertTrue(obj.startsWith("unicode","gr\u00fc"));
+            assertTrue(obj.startsWith("unicode","gr\u00fc\u00dfe \ud83d"));
+            assertFalse(obj.startsWith("unicode","gr\u00fc\u00dfe \ud83e"));
+            assertFalse(obj.startsWith("nothing",""));
+            assertFalse(obj.startsWith("missing",""));
+            assertTrue(obj.getJSONArray("list").startsWith(0,"x"));
+        }
+    }
+
+    @Test
+    public void testCharSequence() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            assertEquals("click",obj.getCharSequence("type").toString());
+            assertEquals(5,obj.getCharSequence(LazyKey.of("type")).length());
+            assertEquals('l',obj.getCharSequence("type").charAt(1));
+            assertEquals("li",obj.getCharSequence("type").subSequence(1,3).toString());
+            assertEquals("a\"b",obj.getCharSequence("escaped").toString());
+            assertEquals("gr\u00fc\u00dfe \ud83d\ude00!",obj.getCharSequence("unicode").toString());
+            assertEquals("",obj.getCharSequence("empty").toString());
+            assertNull(obj.getCharSequence("nothing"));
+            assertEquals("x",obj.getJSONArray("list").getCharSequence(0).toString());
+        }
+    }
+
+    @Test
+    public void testView() throws LazyException{
+        LazyObject obj=new LazyObject(DATA);
+        assertTrue(obj.getCharSequence("type") instanceof CharBuffer);
+        CharBuffer view=(CharBuffer)obj.getCharSequence("type");
+        assertTrue(view.isReadOnly());
+        try{
+            view.put('x');
+            fail();
+        }catch(ReadOnlyBufferException e){
+        }
+        assertEquals("click",obj.getString("type"));
+        obj.put("added","value");
+        assertTrue(obj.stringEquals("added","value"));
+        assertTrue(obj.startsWith("added","val"));
+        assertEquals("value",obj.getCharSequence("added").toString());
+    }
+
+    @Test
+    public void testInvalidUTF8() throws LazyException{
+        byte[] data={'[','"','a',(byte)0xC0,(byte)0xAF,'"',',','"',(byte)0xE2,(byte)0x82,'"',']'};
+        LazyArray array=new LazyArray(ByteBuffer.wrap(data));
+        assertTrue(array.stringEquals(0,array.getString(0)));
+        assertTrue(array.stringEquals(1,array.getString(1)));
+        assertFalse(array.stringEquals(0,"a/"));
+    }
+
+    @Test
+    public void testCursor() throws LazyException{
+        LazyCursor cursor=new LazyCursor(new LazyObject(DATA));
+        int count=0;
+        while(cursor.next()){
+            if(cursor.getType()==LazyType.STRING && cursor.stringEquals("click")){
+                count++;
+            }
+            if(cursor.getType()==LazyType.STRING && cursor.startsWith("gr")){
+                count++;
+            }
+        }
+        assertEquals(2,count);
+    }
+}
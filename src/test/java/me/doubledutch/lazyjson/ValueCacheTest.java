@@ -0,0 +1,114 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ValueCacheTest{
+    private static final String DATA="{\"int\":-123,\"long\":9876543210,\"float\":2.75,\"string\":\"abc\",\"escaped\":\"a\\nb\",\"numeric\":\"42\",\"list\":[1,2.5,\"x\"],\"inner\":{\"v\":7}}";
+
+    private static LazyParserOptions caching(){
+        return new LazyParserOptions().setValueCache(true);
+    }
+
+    private void check(LazyObject obj) throws LazyException{
+        for(int i=0;i<3;i++){
+            assertEquals(-123,obj.getInt("int"));
+            assertEquals(-123L,obj.getLong("int"));
+            assertEquals(-123.0,obj.getDouble("int"),0);
+            assertEquals("-123",obj.getString("int"));
+            assertEquals(9876543210L,obj.getLong("long"));
+            assertEquals((int)9876543210L,obj.getInt("long"));
+            assertEquals(2.75,obj.getDouble("float"),0);
+            assertEquals(2,obj.getInt("float"));
+            assertEquals(2L,obj.getLong("float"));
+            assertEquals("abc",obj.getString("string"));
+            assertEquals("a\nb",obj.getString("escaped"));
+            assertEquals(42,obj.getInt("numeric"));
+            assertEquals(42L,obj.getLong("numeric"));
+            assertEquals(2.5,obj.getJSONArray("list").getDouble(1),0);
+            assertEquals("x",obj.getJSONArray("list").getString(2));
+            assertEquals(7,obj.getJSONObject("inner").getInt("v"));
+        }
+    }
+
+    @Test
+    public void testCached() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA,caching())){
+            check(obj);
+        }
+    }
+
+    @Test
+    public void testUncached() throws LazyException{
+        for(LazyObject obj:ParseModes.objects(DATA)){
+            check(obj);
+        }
+        LazyObject obj=new LazyObject(DATA);
+        obj.getLong("long");
+        obj.getString("string");
+        LazyNode field=obj.root.child;
+        assertEquals(0,field.next.child.cached);
+        assertNull(field.next.next.next.child.cachedString);
+    }
+
+    @Test
+    public void testValuesKept() throws LazyException{
+        LazyObject obj=new LazyObject(DATA,caching());
+        String str=obj.getString("string");
+        assertSame(str,obj.getString("string"));
+        obj.getLong("long");
+        LazyNode value=obj.root.child.next.child;
+        assertTrue(value.cache);
+        assertEquals(9876543210L,value.cachedValue);
+    }
+
+    @Test
+    public void testModified() throws LazyException{
+        LazyObject obj=new LazyObject(DATA,caching());
+        assertEquals(-123,obj.getInt("int"));
+        assertEquals("abc",obj.getString("string"));
+        obj.put("int",5);
+        obj.put("string","def");
+        assertEquals(5,obj.getInt("int"));
+        assertEquals("def",obj.getString("string"));
+        LazyArray list=obj.getJSONArray("list");
+        assertEquals(1,list.getInt(0));
+        list.remove(0);
+        assertEquals(2.5,list.getDouble(0),0);
+    }
+
+    @Test
+    public void testReusedNodes() throws LazyException{
+        LazyReusableParser parser=new LazyReusableParser(caching());
+        assertEquals(1,((LazyArray)parser.parse("[1,\"a\"]")).getInt(0));
+        parser.release();
+        LazyArray array=(LazyArray)parser.parse("[2,\"b\"]");
+        assertEquals(2,array.getInt(0));
+        assertEquals("b",array.getString(1));
+    }
+
+    // Expand every token below the given one and check that all of them
+    // were created with the value cache turned on
+    private void checkFlags(LazyNode token) throws LazyException{
+        assertTrue(token.cache);
+        token.expand();
+        LazyNode pointer=token.child;
+        while(pointer!=null){
+            checkFlags(pointer);
+            pointer=pointer.next;
+        }
+    }
+
+    @Test
+    public void testTapeDeferCache() throws LazyException{
+        String str="{\"a\":{\"b\":{\"c\":[1,{\"d\":2.5}]}},\"x\":\"y\"}";
+        for(int depth=0;depth<4;depth++){
+            LazyObject obj=new LazyObject(str,caching().setTape(true).setDeferDepth(depth));
+            checkFlags(obj.root);
+            LazyObject inner=obj.getJSONObject("a").getJSONObject("b").getJSONArray("c").getJSONObject(1);
+            assertEquals(2.5,inner.getDouble("d"),0);
+            assertEquals(2.5,inner.getDouble("d"),0);
+            assertTrue(inner.root.child.child.cached!=0);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.doubledutch.lazyjson;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.BufferOverflowException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class WriteToTest{
+    private static final String DATA="{\"name\":\"caf\u00e9 \ud83d\ude00\",\"list\":[1, 2.5, true, null],\"inner\":{ \"k\" : \"\\\"v\\\"\" }}";
+
+    private static String large(){
+        StringBuilder buf=new StringBuilder("[");
+        for(int i=0;i<2000;i++){
+            if(i>0){
+                buf.append(",");
+            }
+            buf.append("{\"id\":").append(i).append(",\"text\":\"\u00fcber \u4e2d\u6587 \ud83d\ude00\"}");
+        }
+        buf.append("]");
+        return buf.toString();
+    }
+
+    private void check(LazyElement element) throws Exception{
+        String expected=element.toString();
+        byte[] bytes=expected.getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder builder=new StringBuilder();
+        element.writeTo(builder);
+        assertEquals(expected,builder.toString());
+
+        StringWriter writer=new StringWriter();
+        element.writeTo(writer);
+        assertEquals(expected,writer.toString());
+
+        StringBuffer other=new StringBuffer();
+        element.writeTo((Appendable)other);
+        assertEquals(expected,other.toString());
+
+        ByteArrayOutputStream stream=new ByteArrayOutputStream();
+        element.writeTo(stream);
+        assertArrayEquals(bytes,stream.toByteArray());
+
+        ByteBuffer heap=ByteBuffer.allocate(bytes.length+10);
+        heap.position(3);
+        element.writeTo(heap);
+        assertEquals(bytes.length+3,heap.position());
+        assertArrayEquals(bytes,Arrays.copyOfRange(heap.array(),3,3+bytes.length));
+
+        ByteBuffer direct=ByteBuffer.allocateDirect(bytes.length);
+        element.writeTo(direct);
+        assertFalse(direct.hasRemaining());
+        direct.flip();
+        byte[] copy=new byte[bytes.length];
+        direct.get(copy);
+        assertArrayEquals(bytes,copy);
+    }
+
+    @Test
+    public void testUnmodified() throws Exception{
+        for(LazyElement element:ParseModes.elements(DATA)){
+            check(element);
+        }
+        for(LazyElement element:ParseModes.elements(large())){
+            check(element);
+        }
+    }
+
+    @Test
+    public void testModified() throws Exception{
+        LazyObject obj=new LazyObject(DATA);
+        obj.put("added","\u00e9\ud83d\ude00 \"quoted\"");
+        obj.getJSONObject("inner").put("n",7);
+        check(obj);
+        assertEquals("\u00e9\ud83d\ude00 \"quoted\"",new LazyObject(obj.toString()).getString("added"));
+
+        LazyArray array=new LazyArray(ByteBuffer.wrap(large().getBytes(StandardCharsets.UTF_8)));
+        array.getJSONObject(5).put("x","\u4e2d");
+        array.put(false);
+        check(array);
+    }
+
+    @Test(expected=BufferOverflowException.class)
+    public void testOverflow() throws Exception{
+        LazyObject obj=new LazyObject(DATA);
+        obj.writeTo(ByteBuffer.allocate(10));
+    }
+}